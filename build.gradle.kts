@@ -5,6 +5,7 @@ plugins {
     `maven-publish`
     id("net.researchgate.release") version "2.8.1"
     id("org.cadixdev.licenser") version "0.5.1"
+    id("me.champeau.jmh") version "0.6.4"
 }
 
 java {
@@ -31,6 +32,17 @@ dependencies {
     annotationProcessor("com.google.auto.value:auto-value:$autoValueVersion")
 
     compileOnly("com.techshroom", "jsr305-plus", "0.0.1")
+
+    testImplementation("org.junit.jupiter:junit-jupiter:5.7.2")
+}
+
+tasks.test {
+    useJUnitPlatform()
+}
+
+jmh {
+    jmhVersion.set("1.29")
+    profilers.add("gc")
 }
 
 configure<LicenseExtension> {
@@ -0,0 +1,54 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reports the bus transactions each benchmark operation performs, next to
+ * its time and allocations.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class BusCounters {
+
+    private long transactions;
+    private long operations;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        transactions = 0;
+        operations = 0;
+    }
+
+    void record(long transactions) {
+        this.transactions += transactions;
+        operations++;
+    }
+
+    public double transactionsPerOp() {
+        return operations == 0 ? 0 : (double) transactions / operations;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.benchmark;
+
+import com.armabot.lidar.arcompat.PololuI2c;
+import com.armabot.lidar.arcompat.RegisterFile;
+
+/**
+ * Register files holding just enough state for each driver's paths to run
+ * to completion, with every measurement always ready.
+ */
+final class Presets {
+
+    static final byte ADDRESS = 0x29;
+
+    static RegisterFile vl53l0x() {
+        RegisterFile file = new RegisterFile(PololuI2c.Addressing.EIGHT_BIT) {
+            @Override
+            protected byte readRegister(int reg) {
+                switch (reg) {
+                    // SYSRANGE_START, the start bit is cleared immediately
+                    case 0x00:
+                        return 0;
+                    // RESULT_INTERRUPT_STATUS, always ready
+                    case 0x13:
+                        return 0x07;
+                    // SPAD info is always ready
+                    case 0x83:
+                        return 0x01;
+                    default:
+                        return super.readRegister(reg);
+                }
+            }
+        };
+        // 5 aperture SPADs
+        file.set(0x92, 0x85);
+        // RESULT_RANGE_STATUS: range valid, 1234mm
+        file.set(0x14, 11 << 3);
+        file.set16Bit(0x1E, 1234);
+        return file;
+    }
+
+    static RegisterFile vl53l1x() {
+        RegisterFile file = new RegisterFile(PololuI2c.Addressing.SIXTEEN_BIT);
+        // IDENTIFICATION__MODEL_ID
+        file.set16Bit(0x010F, 0xEACC);
+        // FIRMWARE__SYSTEM_STATUS, booted
+        file.set(0x00E5, 0x01);
+        // OSC_MEASURED__FAST_OSC__FREQUENCY, needed for the macro period
+        file.set16Bit(0x0006, 0x0100);
+        // RESULT__OSC_CALIBRATE_VAL
+        file.set16Bit(0x00DE, 10);
+        // RESULT__RANGE_STATUS: range valid, 1234mm
+        file.set(0x0089, 9);
+        file.set16Bit(0x0096, 1234);
+        return file;
+    }
+
+    static RegisterFile vl6180x() {
+        RegisterFile file = new RegisterFile(PololuI2c.Addressing.SIXTEEN_BIT) {
+            @Override
+            protected byte readRegister(int reg) {
+                // SYSTEM__FRESH_OUT_OF_RESET, so each initialize() takes the full path
+                if (reg == 0x016) {
+                    return 1;
+                }
+                return super.readRegister(reg);
+            }
+        };
+        // IDENTIFICATION__MODEL_ID
+        file.set(0x000, 0xB4);
+        // RESULT__INTERRUPT_STATUS_GPIO, range and ambient new sample ready
+        file.set(0x04F, 0x24);
+        // RESULT__RANGE_VAL
+        file.set(0x062, 123);
+        return file;
+    }
+
+    private Presets() {
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.benchmark;
+
+import com.armabot.lidar.api.Error;
+import com.armabot.lidar.arcompat.MemoryI2cTransport;
+import com.armabot.lidar.arcompat.RoboRioPort;
+import com.armabot.lidar.impl.vl53l1x.Vl53l1xI2c;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of the VL53L1X driver, on an in-memory bus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Vl53l1xBenchmark {
+
+    private MemoryI2cTransport transport;
+    private Vl53l1xI2c sensor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        transport = new MemoryI2cTransport();
+        transport.attach(RoboRioPort.ONBOARD, Presets.ADDRESS, Presets.vl53l1x());
+        sensor = new Vl53l1xI2c(RoboRioPort.ONBOARD, transport);
+        Optional<Error<?>> error = sensor.initialize();
+        if (error.isPresent()) {
+            throw new IllegalStateException("Failed to initialize: " + error.get());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sensor.close();
+    }
+
+    @Benchmark
+    public int read(BusCounters counters) {
+        long before = transport.getTransactionCount();
+        int result = sensor.read();
+        counters.record(transport.getTransactionCount() - before);
+        return result;
+    }
+
+    @Benchmark
+    public void setMeasurementTimingBudget(BusCounters counters) {
+        long before = transport.getTransactionCount();
+        sensor.setMeasurementTimingBudget(50_000);
+        counters.record(transport.getTransactionCount() - before);
+    }
+
+    @Benchmark
+    public Optional<Error<?>> initialize(BusCounters counters) {
+        long before = transport.getTransactionCount();
+        Optional<Error<?>> result = sensor.initialize();
+        counters.record(transport.getTransactionCount() - before);
+        return result;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.api;
+
+/**
+ * When a sensor signals a measurement, through its interrupt output and its
+ * data ready status. Modes other than {@link #NEW_SAMPLE_READY} compare the
+ * range to a low and a high threshold, so idle sensors do not need to be read.
+ */
+public enum InterruptMode {
+    /**
+     * Signal every measurement.
+     */
+    NEW_SAMPLE_READY,
+    /**
+     * Signal when the range is below the low threshold.
+     */
+    LEVEL_LOW,
+    /**
+     * Signal when the range is above the high threshold.
+     */
+    LEVEL_HIGH,
+    /**
+     * Signal when the range is below the low threshold, or above the high
+     * threshold.
+     */
+    OUT_OF_WINDOW,
+    /**
+     * Signal when the range is between the low and high thresholds.
+     */
+    IN_WINDOW,
+}
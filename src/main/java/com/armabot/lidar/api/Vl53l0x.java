@@ -21,10 +21,14 @@
 package com.armabot.lidar.api;
 
 
+import com.armabot.lidar.arcompat.InterruptLine;
 import com.armabot.lidar.arcompat.PololuI2c;
+import com.armabot.lidar.impl.vl53l0x.RangingData;
+import com.armabot.lidar.impl.vl53l0x.Vl53l0xCalibration;
 import com.armabot.lidar.impl.vl53l0x.Vl53l0xI2c;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -73,6 +77,21 @@ public interface Vl53l0x extends AutoCloseable {
      */
     Optional<Error<?>> initialize();
 
+    /**
+     * Initialize using a calibration saved from an earlier
+     * {@link #initialize()} of the same module, instead of measuring it again.
+     *
+     * @return {@link Optional#empty()} if the module is initialized
+     * @see #getCalibration()
+     */
+    Optional<Error<?>> initialize(Vl53l0xCalibration calibration);
+
+    /**
+     * @return the calibration found or restored by the last initialization,
+     * if there was one
+     */
+    Optional<Vl53l0xCalibration> getCalibration();
+
     @Override
     void close();
 
@@ -94,10 +113,87 @@ public interface Vl53l0x extends AutoCloseable {
 
     boolean dataReady();
 
+    /**
+     * Wait until there is data available. This blocks on the
+     * {@linkplain #setInterruptLine(InterruptLine) interrupt line} if there
+     * is one, otherwise it polls {@link #dataReady()}.
+     *
+     * @return {@code true} if there is data, {@code false} if the timeout
+     * elapsed first
+     */
+    boolean awaitDataReady(long timeout, TimeUnit unit);
+
+    /**
+     * Use {@code line}, connected to the sensor's GPIO1 output, to detect
+     * data instead of polling a status register over I2C. The line is not
+     * closed by this sensor.
+     */
+    void setInterruptLine(InterruptLine line);
+
+    /**
+     * Go back to polling the status register to detect data.
+     */
+    void clearInterruptLine();
+
+    /**
+     * Sets when the sensor signals a measurement. In modes other than
+     * {@link InterruptMode#NEW_SAMPLE_READY}, {@link #dataReady()} is only
+     * {@code true} for measurements that pass the thresholds.
+     *
+     * <p>
+     * The thresholds have a resolution of 2 mm, up to 8190 mm.
+     * {@link InterruptMode#IN_WINDOW} is not supported by the VL53L0X.
+     * </p>
+     *
+     * @param mode the interrupt mode
+     * @param lowMillimeters the low threshold, ignored for {@link InterruptMode#NEW_SAMPLE_READY}
+     * @param highMillimeters the high threshold, ignored for {@link InterruptMode#NEW_SAMPLE_READY}
+     */
+    void setInterruptMode(InterruptMode mode, int lowMillimeters, int highMillimeters);
+
+    /**
+     * @return the current interrupt mode
+     */
+    InterruptMode getInterruptMode();
+
     int readRangeContinuousMillimeters();
 
+    /**
+     * Reads the full measurement into {@code data}, if there is
+     * {@linkplain #dataReady() data ready}.
+     *
+     * @throws IllegalStateException if there is no data ready
+     */
+    void readRangeContinuous(RangingData data);
+
+    /**
+     * Reads the full measurement into {@code data}, if there is one.
+     * Checking for data is part of the same transaction, so this does not
+     * need a separate {@link #dataReady()} call.
+     *
+     * @return if there was data ready
+     */
+    boolean readRangeContinuousIfReady(RangingData data);
+
     int readRangeSingleMillimeters();
 
+    /**
+     * Starts a single-shot measurement, and polls for its result on the
+     * {@linkplain com.armabot.lidar.arcompat.I2cBus#getExecutor() bus executor},
+     * so the caller is not blocked, and one thread can have measurements in
+     * flight on many sensors.
+     *
+     * <p>
+     * Only one measurement per sensor can be in flight: while one is, this
+     * returns a future failed with an {@link IllegalStateException}. The
+     * measurement changes the sensor's state on the executor thread, so
+     * nothing else may use this sensor until the future completes.
+     * </p>
+     *
+     * @return the result of {@link #readRangeSingleMillimeters()}, once it is ready
+     */
+    CompletableFuture<Integer> readRangeSingleMillimetersAsync();
+
     /**
      * Sets the timeout for a response from the VL53L0X unit.
      */
@@ -20,8 +20,10 @@
 
 package com.armabot.lidar.api;
 
+import com.armabot.lidar.arcompat.InterruptLine;
 import com.armabot.lidar.arcompat.PololuI2c;
 import com.armabot.lidar.impl.vl53l1x.DistanceMode;
+import com.armabot.lidar.impl.vl53l1x.RangingData;
 import com.armabot.lidar.impl.vl53l1x.Vl53l1xI2c;
 
 import java.util.Optional;
@@ -113,11 +115,61 @@ public interface Vl53l1x extends AutoCloseable {
      */
     int read();
 
+    /**
+     * Reads the next measurement into {@code data}, without allocating.
+     *
+     * <p>
+     * You should verify that this data is valid by checking
+     * {@linkplain #timeoutOccurred() if a timeout has occurred}
+     * </p>
+     *
+     * @param data the record to fill
+     */
+    void read(RangingData data);
+
     /**
      * @return if there is data available
      */
     boolean dataReady();
 
+    /**
+     * Wait until there is data available. This blocks on the
+     * {@linkplain #setInterruptLine(InterruptLine) interrupt line} if there
+     * is one, otherwise it polls {@link #dataReady()}.
+     *
+     * @return {@code true} if there is data, {@code false} if the timeout
+     * elapsed first
+     */
+    boolean awaitDataReady(long timeout, TimeUnit unit);
+
+    /**
+     * Use {@code line}, connected to the sensor's GPIO1 output, to detect
+     * data instead of polling a status register over I2C. The line is not
+     * closed by this sensor.
+     */
+    void setInterruptLine(InterruptLine line);
+
+    /**
+     * Go back to polling the status register to detect data.
+     */
+    void clearInterruptLine();
+
+    /**
+     * Sets when the sensor signals a measurement. In modes other than
+     * {@link InterruptMode#NEW_SAMPLE_READY}, {@link #dataReady()} is only
+     * {@code true} for measurements that pass the thresholds.
+     *
+     * @param mode the interrupt mode
+     * @param lowMillimeters the low threshold, ignored for {@link InterruptMode#NEW_SAMPLE_READY}
+     * @param highMillimeters the high threshold, ignored for {@link InterruptMode#NEW_SAMPLE_READY}
+     */
+    void setInterruptMode(InterruptMode mode, int lowMillimeters, int highMillimeters);
+
+    /**
+     * @return the current interrupt mode
+     */
+    InterruptMode getInterruptMode();
+
     /**
      * Sets the timeout for a response from the VL53L1X unit.
      */
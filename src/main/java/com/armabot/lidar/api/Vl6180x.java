@@ -21,10 +21,12 @@
 package com.armabot.lidar.api;
 
 
+import com.armabot.lidar.arcompat.InterruptLine;
 import com.armabot.lidar.arcompat.PololuI2c;
 import com.armabot.lidar.impl.vl6180x.Vl6180xI2c;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -49,6 +51,21 @@ public interface Vl6180x extends AutoCloseable {
         }
     }
 
+    /**
+     * What the on-chip history buffer records.
+     */
+    enum HistoryMode {
+        DISABLED,
+        /**
+         * The last 16 range results.
+         */
+        RANGE,
+        /**
+         * The last 8 ambient results.
+         */
+        AMBIENT
+    }
+
     byte DEFAULT_ADDRESS = 0x29;
 
     /**
@@ -107,6 +124,36 @@ public interface Vl6180x extends AutoCloseable {
 
     int readAmbientSingle();
 
+    /**
+     * Like {@link #readRangeSingle()}, but polls for the result on the
+     * {@linkplain com.armabot.lidar.arcompat.I2cBus#getExecutor() bus executor}
+     * instead of blocking the caller.
+     *
+     * <p>
+     * Only one range or ambient measurement per sensor can be in flight:
+     * while one is, this returns a future failed with an
+     * {@link IllegalStateException}. The measurement changes the sensor's
+     * state on the executor thread, so nothing else may use this sensor
+     * until the future completes.
+     * </p>
+     */
+    CompletableFuture<Short> readRangeSingleAsync();
+
+    default CompletableFuture<Integer> readRangeSingleMillimetersAsync() {
+        return readRangeSingleAsync().thenApply(range -> getScaling().amount() * range);
+    }
+
+    /**
+     * Like {@link #readAmbientSingle()}, but polls for the result on the
+     * {@linkplain com.armabot.lidar.arcompat.I2cBus#getExecutor() bus executor}
+     * instead of blocking the caller.
+     *
+     * <p>
+     * The same restrictions as {@link #readRangeSingleAsync()} apply.
+     * </p>
+     */
+    CompletableFuture<Integer> readAmbientSingleAsync();
+
     void startRangeContinuous(int period);
 
     void startAmbientContinuous(int period);
@@ -117,6 +164,35 @@ public interface Vl6180x extends AutoCloseable {
 
     boolean dataReadyRange();
 
+    /**
+     * Wait until there is range data available. This blocks on the
+     * {@linkplain #setInterruptLine(InterruptLine) interrupt line} if there
+     * is one, otherwise it polls {@link #dataReadyRange()}.
+     *
+     * @return {@code true} if there is data, {@code false} if the timeout
+     * elapsed first
+     */
+    boolean awaitDataReadyRange(long timeout, TimeUnit unit);
+
+    /**
+     * Sets when the sensor signals a range measurement. In modes other than
+     * {@link InterruptMode#NEW_SAMPLE_READY}, {@link #dataReadyRange()} is
+     * only {@code true} for measurements that pass the thresholds.
+     *
+     * <p>
+     * The thresholds are stored in the current {@linkplain #getScaling() scaling},
+     * so set the scaling first. {@link InterruptMode#IN_WINDOW} is not
+     * supported by the VL6180X.
+     * </p>
+     *
+     * @param mode the interrupt mode
+     * @param lowMillimeters the low threshold, ignored for {@link InterruptMode#NEW_SAMPLE_READY}
+     * @param highMillimeters the high threshold, ignored for {@link InterruptMode#NEW_SAMPLE_READY}
+     */
+    void setRangeInterruptMode(InterruptMode mode, int lowMillimeters, int highMillimeters);
+
+    InterruptMode getRangeInterruptMode();
+
     /**
      * Read range data, if there is {@linkplain #dataReadyRange() data ready}.
      *
@@ -135,6 +211,37 @@ public interface Vl6180x extends AutoCloseable {
 
     boolean dataReadyAmbient();
 
+    /**
+     * Wait until there is ambient data available.
+     *
+     * @see #awaitDataReadyRange(long, TimeUnit)
+     */
+    boolean awaitDataReadyAmbient(long timeout, TimeUnit unit);
+
+    /**
+     * Use {@code line}, connected to the sensor's GPIO1 output, to detect
+     * data instead of polling a status register over I2C. The line is not
+     * closed by this sensor.
+     */
+    void setInterruptLine(InterruptLine line);
+
+    /**
+     * Go back to polling the status register to detect data.
+     */
+    void clearInterruptLine();
+
+    /**
+     * Sets when the sensor signals an ambient measurement.
+     *
+     * @param mode the interrupt mode
+     * @param low the low threshold, in raw ambient counts
+     * @param high the high threshold, in raw ambient counts
+     * @see #setRangeInterruptMode(InterruptMode, int, int)
+     */
+    void setAmbientInterruptMode(InterruptMode mode, int low, int high);
+
+    InterruptMode getAmbientInterruptMode();
+
     /**
      * Read ambient data, if there is {@linkplain #dataReadyAmbient() data ready}.
      *
@@ -142,6 +249,46 @@ public interface Vl6180x extends AutoCloseable {
      */
     int readAmbientContinuous();
 
+    /**
+     * Sets what the on-chip history buffer records, and clears it.
+     *
+     * <p>
+     * With history enabled, continuous measurements accumulate on the
+     * sensor, and can be read many at a time with
+     * {@link #readRangeHistory(short[])} or {@link #readAmbientHistory(int[])}.
+     * </p>
+     */
+    void setHistoryMode(HistoryMode mode);
+
+    HistoryMode getHistoryMode();
+
+    /**
+     * Read the range results recorded since the last call, in one transaction.
+     * Values are raw, like {@link #readRangeContinuous()}. Read at least every
+     * 16 measurements to not miss any.
+     *
+     * <p>
+     * The sensor does not count new results, so the count is estimated from
+     * the measurement period and checked against the previous read.
+     * </p>
+     *
+     * @param out where to put the results, oldest first; must hold 16
+     * @return the number of results put in {@code out}
+     * @throws IllegalStateException if the history mode is not {@link HistoryMode#RANGE}
+     */
+    int readRangeHistory(short[] out);
+
+    /**
+     * Read the ambient results recorded since the last call, in one transaction.
+     * Read at least every 8 measurements to not miss any.
+     *
+     * @param out where to put the results, oldest first; must hold 8
+     * @return the number of results put in {@code out}
+     * @throws IllegalStateException if the history mode is not {@link HistoryMode#AMBIENT}
+     * @see #readRangeHistory(short[])
+     */
+    int readAmbientHistory(int[] out);
+
     /**
      * Sets the timeout for a response from the VL6180X unit.
      */
@@ -0,0 +1,109 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Every register of a {@link Register} enum, {@linkplain Register#on(PololuI2c) bound}
+ * to a single {@link PololuI2c} up front. Unlike {@link Register#on(PololuI2c)},
+ * looking up a binding here does not allocate.
+ *
+ * <p>
+ * Some registers may be shadowed: while {@linkplain #setShadowingEnabled(boolean) enabled},
+ * their bindings remember the last value read or written, and serve reads
+ * from memory instead of the bus. This is only correct for registers the
+ * device never changes by itself, and only as long as every other write to
+ * them goes through these bindings. Anything else, such as a reset or a
+ * {@link RegisterScript} not sent through {@link #run(RegisterScript)}, must be
+ * followed by {@link #invalidateShadows()}.
+ * Reads served from a shadow do not update {@link PololuI2c#wasLastOpSuccessful()}.
+ * </p>
+ *
+ * @param <R> the register enum
+ */
+public final class BoundRegisters<R extends Enum<R> & Register> {
+
+    public static <R extends Enum<R> & Register> BoundRegisters<R> bind(Class<R> type, PololuI2c i2c) {
+        return bind(type, i2c, EnumSet.noneOf(type));
+    }
+
+    public static <R extends Enum<R> & Register> BoundRegisters<R> bind(Class<R> type, PololuI2c i2c,
+                                                                        Set<R> shadowed) {
+        ShadowedRegisterBinding.Shadows shadows = new ShadowedRegisterBinding.Shadows();
+        R[] registers = type.getEnumConstants();
+        Register.Bound[] bound = new Register.Bound[registers.length];
+        for (R register : registers) {
+            bound[register.ordinal()] = shadowed.contains(register)
+                    ? new ShadowedRegisterBinding(register.address(), i2c, shadows)
+                    : register.on(i2c);
+        }
+        return new BoundRegisters<>(i2c, bound, shadows);
+    }
+
+    private final PololuI2c i2c;
+    private final Register.Bound[] bound;
+    private final ShadowedRegisterBinding.Shadows shadows;
+
+    private BoundRegisters(PololuI2c i2c, Register.Bound[] bound, ShadowedRegisterBinding.Shadows shadows) {
+        this.i2c = i2c;
+        this.bound = bound;
+        this.shadows = shadows;
+    }
+
+    public Register.Bound get(R register) {
+        return bound[register.ordinal()];
+    }
+
+    public boolean isShadowingEnabled() {
+        return shadows.enabled;
+    }
+
+    /**
+     * Sets whether shadowed registers serve reads from memory. Disabled by
+     * default.
+     */
+    public void setShadowingEnabled(boolean enabled) {
+        shadows.invalidate();
+        shadows.enabled = enabled;
+    }
+
+    /**
+     * Forget every shadowed value, so the next read of each goes to the bus.
+     */
+    public void invalidateShadows() {
+        shadows.invalidate();
+    }
+
+    /**
+     * Run {@code script} on the bound device, then
+     * {@linkplain #invalidateShadows() invalidate} the shadows it may have
+     * bypassed.
+     *
+     * @return {@code true} if every write was successful
+     */
+    public boolean run(RegisterScript script) {
+        boolean success = script.runOn(i2c);
+        invalidateShadows();
+        return success;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import edu.wpi.first.hal.I2CJNI;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Transport backed by {@link I2CJNI}. The buffers given to it must be direct.
+ */
+public enum HalI2cTransport implements I2cTransport {
+    INSTANCE;
+
+    @Override
+    public void initialize(Port port) {
+        I2CJNI.i2CInitialize(port.value());
+    }
+
+    @Override
+    public boolean write(Port port, byte address, ByteBuffer data, int size) {
+        return I2CJNI.i2CWrite(port.value(), address, data, (byte) size) >= 0;
+    }
+
+    @Override
+    public boolean read(Port port, byte address, ByteBuffer out, int size) {
+        return I2CJNI.i2CRead(port.value(), address, out, (byte) size) >= 0;
+    }
+
+    @Override
+    public boolean transaction(Port port, byte address,
+                               ByteBuffer tx, int txSize,
+                               ByteBuffer rx, int rxSize) {
+        return I2CJNI.i2CTransaction(port.value(), address,
+                tx, (byte) txSize,
+                rx, (byte) rxSize) >= 0;
+    }
+
+    @Override
+    public void close(Port port) {
+        I2CJNI.i2CClose(port.value());
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import edu.wpi.first.hal.DIOJNI;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.hal.InterruptJNI;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link InterruptLine} on a RoboRIO DIO channel, backed by {@link DIOJNI}
+ * and {@link InterruptJNI}. Waiting blocks in the HAL until an edge, rather
+ * than polling.
+ */
+public class HalInterruptLine implements InterruptLine {
+
+    // the analog trigger type for a plain digital source
+    private static final int NO_ANALOG_TRIGGER = 0;
+    // the HAL wait is not interruptible, so wait at most this long before checking
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final int dioHandle;
+    private final int interruptHandle;
+
+    public HalInterruptLine(int channel) {
+        this.dioHandle = DIOJNI.initializeDIOPort(HAL.getPort((byte) channel), true);
+        this.interruptHandle = InterruptJNI.initializeInterrupts(true);
+        InterruptJNI.requestInterrupts(interruptHandle, dioHandle, NO_ANALOG_TRIGGER);
+        InterruptJNI.setInterruptUpSourceEdge(interruptHandle, true, true);
+    }
+
+    @Override
+    public boolean get() {
+        return DIOJNI.getDIO(dioHandle);
+    }
+
+    @Override
+    public boolean await(boolean level, long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        // edges from before the level check are kept, so one between the
+        // check and the wait is not lost; a stale one just loops again
+        while (get() != level) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            InterruptJNI.waitForInterrupt(interruptHandle, Math.min(remaining, MAX_WAIT_NANOS) / 1e9, false);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        InterruptJNI.cleanInterrupts(interruptHandle);
+        DIOJNI.freeDIOPort(dioHandle);
+    }
+}
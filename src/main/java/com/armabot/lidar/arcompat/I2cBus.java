@@ -0,0 +1,176 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import com.armabot.lidar.util.Preconditions;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One I2C port, shared by every {@link Wire} using it through the same
+ * {@link I2cTransport}.
+ *
+ * <p>
+ * The port is initialized when the first user {@linkplain #acquire(I2cTransport, Port) acquires}
+ * it, and closed when the last one {@linkplain #release() releases} it, so
+ * closing one sensor does not close the port under the others.
+ * </p>
+ *
+ * <p>
+ * Every transaction holds the port's {@linkplain #getLock() lock}, so sensors
+ * on one port can be used from several threads. Operations made of several
+ * transactions may hold it for longer, since it is reentrant. Different ports
+ * have different locks, and run in parallel.
+ * </p>
+ *
+ * <p>
+ * Each bus also has an {@linkplain #getExecutor() executor}, for
+ * asynchronous operations on its sensors. It is shut down with the port.
+ * </p>
+ */
+public final class I2cBus {
+
+    private static final Map<Key, I2cBus> BUSES = new HashMap<>();
+
+    /**
+     * Get the bus for {@code port}, initializing it if this is the first user.
+     * Each call must be matched by a call to {@link #release()}.
+     */
+    public static I2cBus acquire(I2cTransport transport, Port port) {
+        synchronized (BUSES) {
+            I2cBus bus = BUSES.computeIfAbsent(new Key(transport, port.value()),
+                    k -> new I2cBus(transport, port));
+            if (bus.users == 0) {
+                transport.initialize(port);
+            }
+            bus.users++;
+            return bus;
+        }
+    }
+
+    private final I2cTransport transport;
+    private final Port port;
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by BUSES
+    private int users;
+    // guarded by BUSES
+    private ScheduledExecutorService executor;
+
+    private I2cBus(I2cTransport transport, Port port) {
+        this.transport = transport;
+        this.port = port;
+    }
+
+    public I2cTransport getTransport() {
+        return transport;
+    }
+
+    public Port getPort() {
+        return port;
+    }
+
+    /**
+     * @return the lock held for every transaction on this bus
+     */
+    public ReentrantLock getLock() {
+        return lock;
+    }
+
+    /**
+     * Get the executor for asynchronous operations on this bus. It runs one
+     * task at a time, on a daemon thread created on first use, so tasks
+     * should be short and never block waiting for a sensor. Schedule a
+     * follow-up task instead.
+     *
+     * @return the executor, which is shut down when the bus is closed
+     */
+    public ScheduledExecutorService getExecutor() {
+        synchronized (BUSES) {
+            Preconditions.checkState(users > 0, "Bus already released");
+            if (executor == null) {
+                executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "I2C bus " + port.value());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * @return the number of users that acquired this bus and did not release it
+     */
+    public int getUsers() {
+        synchronized (BUSES) {
+            return users;
+        }
+    }
+
+    /**
+     * Release one use of this bus, closing the port if it was the last.
+     */
+    public void release() {
+        synchronized (BUSES) {
+            Preconditions.checkState(users > 0, "Bus already released");
+            users--;
+            if (users == 0) {
+                BUSES.remove(new Key(transport, port.value()));
+                if (executor != null) {
+                    executor.shutdownNow();
+                    executor = null;
+                }
+                transport.close(port);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final I2cTransport transport;
+        private final int port;
+
+        private Key(I2cTransport transport, int port) {
+            this.transport = transport;
+            this.port = port;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return transport == key.transport && port == key.port;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(transport) + port;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A target attached to a {@link MemoryI2cTransport}.
+ *
+ * <p>
+ * As with {@link I2cTransport}, buffers are accessed with absolute indices
+ * starting at {@code 0}.
+ * </p>
+ */
+public interface I2cDevice {
+
+    /**
+     * Receive the first {@code size} bytes of {@code data}.
+     *
+     * @return {@code true} to acknowledge the write
+     */
+    boolean write(ByteBuffer data, int size);
+
+    /**
+     * Send {@code size} bytes into {@code out}.
+     *
+     * @return {@code true} to acknowledge the read
+     */
+    boolean read(ByteBuffer out, int size);
+
+}
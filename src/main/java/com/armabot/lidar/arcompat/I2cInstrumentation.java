@@ -0,0 +1,63 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+/**
+ * Observes the bus operations of a {@link PololuI2c}, such as a register
+ * read or write, as they complete.
+ *
+ * <p>
+ * It is called on the thread that made the operation, while the bus may
+ * still be locked, so it must be quick and must not block. The default,
+ * {@link #NONE}, is recognized by {@link PololuI2c}, which then does not
+ * even read the clock.
+ * </p>
+ */
+@FunctionalInterface
+public interface I2cInstrumentation {
+
+    /**
+     * The register of an operation that does not address one, such as a
+     * plain {@link PololuI2c#request(int)}.
+     */
+    int NO_REGISTER = -1;
+
+    /**
+     * Instrumentation that ignores everything.
+     */
+    I2cInstrumentation NONE = (port, address, register, transactions, bytesWritten, bytesRead, success,
+                               durationNanos) -> {
+    };
+
+    /**
+     * Called when an operation completes.
+     *
+     * @param register the register addressed, or {@link #NO_REGISTER}
+     * @param transactions the number of bus transactions it took
+     * @param bytesWritten the bytes sent, including the register address
+     * @param bytesRead the bytes received
+     * @param success if every transaction was acknowledged
+     * @param durationNanos the time it took, including waiting for the bus lock
+     */
+    void operationCompleted(Port port, byte address, int register, int transactions,
+                            int bytesWritten, int bytesRead, boolean success, long durationNanos);
+
+}
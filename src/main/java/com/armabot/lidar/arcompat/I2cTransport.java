@@ -0,0 +1,77 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The layer that actually moves bytes for {@link Wire}.
+ *
+ * <p>
+ * {@link HalI2cTransport} talks to real hardware through the HAL, and
+ * {@link MemoryI2cTransport} serves in-memory devices so that drivers can be
+ * run off-robot. {@link RecordingI2cTransport} logs the traffic of another
+ * transport, and {@link ReplayI2cTransport} plays such a log back.
+ * </p>
+ *
+ * <p>
+ * Buffers are always accessed with absolute indices starting at {@code 0},
+ * their position and limit are left to the caller.
+ * </p>
+ */
+public interface I2cTransport {
+
+    /**
+     * Prepare {@code port} for use.
+     */
+    void initialize(Port port);
+
+    /**
+     * Write the first {@code size} bytes of {@code data} to {@code address}.
+     *
+     * @return {@code true} if the write was successful
+     */
+    boolean write(Port port, byte address, ByteBuffer data, int size);
+
+    /**
+     * Read {@code size} bytes from {@code address} into {@code out}.
+     *
+     * @return {@code true} if the read was successful
+     */
+    boolean read(Port port, byte address, ByteBuffer out, int size);
+
+    /**
+     * Write the first {@code txSize} bytes of {@code tx} to {@code address},
+     * then read {@code rxSize} bytes into {@code rx}, without releasing the bus
+     * in between.
+     *
+     * @return {@code true} if the transaction was successful
+     */
+    boolean transaction(Port port, byte address,
+                        ByteBuffer tx, int txSize,
+                        ByteBuffer rx, int rxSize);
+
+    /**
+     * Release {@code port}.
+     */
+    void close(Port port);
+
+}
@@ -0,0 +1,54 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A digital input connected to a sensor's interrupt output, such as GPIO1 on
+ * the VL53L0X, VL53L1X and VL6180X. These drive the line low while a
+ * measurement or threshold event is pending.
+ */
+public interface InterruptLine extends AutoCloseable {
+
+    /**
+     * @return the current level of the line, {@code true} for high
+     */
+    boolean get();
+
+    /**
+     * Wait until the line is at {@code level}. Returns immediately if it
+     * already is.
+     *
+     * <p>
+     * If the calling thread is interrupted while waiting, this stops waiting
+     * and returns {@code false}, as if the timeout elapsed, and leaves the
+     * thread's interrupt status set.
+     * </p>
+     *
+     * @return {@code true} if the line reached {@code level}, {@code false}
+     * if the timeout elapsed or the thread was interrupted first
+     */
+    boolean await(boolean level, long timeout, TimeUnit unit);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,113 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import com.armabot.lidar.util.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transport that routes transactions to in-memory {@link I2cDevice devices},
+ * such as a {@link RegisterFile}. Addresses with no device attached do not
+ * acknowledge.
+ *
+ * <p>
+ * This never touches the HAL, so drivers using it can be run and profiled
+ * anywhere.
+ * </p>
+ */
+public class MemoryI2cTransport implements I2cTransport {
+
+    private static final int ADDRESS_COUNT = 128;
+
+    private final Map<Integer, I2cDevice[]> ports = new ConcurrentHashMap<>();
+    private final AtomicLong transactionCount = new AtomicLong();
+
+    /**
+     * Attach {@code device} at {@code address} on {@code port}, replacing any
+     * device already there.
+     */
+    public void attach(Port port, byte address, I2cDevice device) {
+        Preconditions.checkArgument(address >= 0, "Address must be positive");
+        ports.computeIfAbsent(port.value(), k -> new I2cDevice[ADDRESS_COUNT])[address] = device;
+    }
+
+    public void detach(Port port, byte address) {
+        Preconditions.checkArgument(address >= 0, "Address must be positive");
+        I2cDevice[] devices = ports.get(port.value());
+        if (devices != null) {
+            devices[address] = null;
+        }
+    }
+
+    /**
+     * @return the number of bus transactions performed so far
+     */
+    public long getTransactionCount() {
+        return transactionCount.get();
+    }
+
+    public void resetTransactionCount() {
+        transactionCount.set(0);
+    }
+
+    private I2cDevice device(Port port, byte address) {
+        I2cDevice[] devices = ports.get(port.value());
+        if (devices == null || address < 0) {
+            return null;
+        }
+        return devices[address];
+    }
+
+    @Override
+    public void initialize(Port port) {
+    }
+
+    @Override
+    public boolean write(Port port, byte address, ByteBuffer data, int size) {
+        transactionCount.incrementAndGet();
+        I2cDevice device = device(port, address);
+        return device != null && device.write(data, size);
+    }
+
+    @Override
+    public boolean read(Port port, byte address, ByteBuffer out, int size) {
+        transactionCount.incrementAndGet();
+        I2cDevice device = device(port, address);
+        return device != null && device.read(out, size);
+    }
+
+    @Override
+    public boolean transaction(Port port, byte address,
+                               ByteBuffer tx, int txSize,
+                               ByteBuffer rx, int rxSize) {
+        transactionCount.incrementAndGet();
+        I2cDevice device = device(port, address);
+        return device != null && device.write(tx, txSize) && device.read(rx, rxSize);
+    }
+
+    @Override
+    public void close(Port port) {
+    }
+}
@@ -20,8 +20,12 @@
 
 package com.armabot.lidar.arcompat;
 
+import com.armabot.lidar.trace.Tracer;
 import com.armabot.lidar.util.Preconditions;
 
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Pololu's APIs for Arduino use extended I2C protocol frequently. This class
  * implements those using {@link Wire}.
@@ -29,19 +33,33 @@ import com.armabot.lidar.util.Preconditions;
 public class PololuI2c implements AutoCloseable {
 
     public enum Addressing {
-        EIGHT_BIT {
+        EIGHT_BIT(Byte.BYTES) {
             @Override
             void writeAddress(int address, Wire wire) {
                 wire.write((short) address);
             }
         },
-        SIXTEEN_BIT {
+        SIXTEEN_BIT(Short.BYTES) {
             @Override
             void writeAddress(int address, Wire wire) {
                 wire.writeShort(address);
             }
         },
         ;
+
+        private final int bytes;
+
+        Addressing(int bytes) {
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return the number of bytes used to send a register address
+         */
+        public int bytes() {
+            return bytes;
+        }
+
          abstract void writeAddress(int address, Wire wire);
     }
 
@@ -49,6 +67,10 @@ public class PololuI2c implements AutoCloseable {
         return new PololuI2c(new Wire(port), addressing);
     }
 
+    public static PololuI2c create(Port port, I2cTransport transport, Addressing addressing) {
+        return new PololuI2c(new Wire(port, transport), addressing);
+    }
+
     private enum Status {
         UNSET(null), SUCCESS(true), FAILURE(false);
 
@@ -59,10 +81,16 @@ public class PololuI2c implements AutoCloseable {
         }
     }
 
+    // the start time of an operation that is not being timed
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
     private final Wire wire;
     private final Addressing addressing;
     private byte address = -1;
     private Status lastStatus = Status.UNSET;
+    private boolean repeatedStart = true;
+    private I2cInstrumentation instrumentation = I2cInstrumentation.NONE;
+    private Tracer tracer = Tracer.NONE;
 
     private PololuI2c(Wire wire, Addressing addressing) {
         this.wire = wire;
@@ -89,6 +117,67 @@ public class PololuI2c implements AutoCloseable {
         this.address = address;
     }
 
+    /**
+     * @return if register reads are done as one combined transaction
+     */
+    public boolean isRepeatedStart() {
+        return repeatedStart;
+    }
+
+    /**
+     * Sets whether register reads send the register address and read the
+     * value in one combined transaction, using a repeated start. This is the
+     * default, and halves the transactions needed for a read.
+     *
+     * <p>
+     * Disable this for devices that need a stop after the register address.
+     * </p>
+     */
+    public void setRepeatedStart(boolean repeatedStart) {
+        this.repeatedStart = repeatedStart;
+    }
+
+    public I2cInstrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * Sets the instrumentation told about every operation, such as a register
+     * read or write. Defaults to {@link I2cInstrumentation#NONE}.
+     */
+    public void setInstrumentation(I2cInstrumentation instrumentation) {
+        this.instrumentation = Objects.requireNonNull(instrumentation, "instrumentation");
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Sets the tracer that records a span for every operation, and for every
+     * call to the transport under it. Drivers record their own methods to the
+     * same tracer. Defaults to {@link Tracer#NONE}.
+     */
+    public void setTracer(Tracer tracer) {
+        this.tracer = Objects.requireNonNull(tracer, "tracer");
+        wire.setTracer(tracer);
+    }
+
+    private long startTiming() {
+        return instrumentation == I2cInstrumentation.NONE && !tracer.isEnabled() ? NOT_TIMED : System.nanoTime();
+    }
+
+    private boolean completed(long start, String name, int register, int transactions,
+                              int bytesWritten, int bytesRead, boolean success) {
+        if (start != NOT_TIMED) {
+            instrumentation.operationCompleted(wire.getPort(), address, register, transactions,
+                    bytesWritten, bytesRead, success, System.nanoTime() - start);
+            tracer.end(start, Tracer.CATEGORY_REGISTER, name, address,
+                    register == I2cInstrumentation.NO_REGISTER ? Tracer.NO_VALUE : register);
+        }
+        return success;
+    }
+
     public boolean wasLastOpSuccessful() {
         Preconditions.checkState(lastStatus != Status.UNSET, "No operation performed yet");
         return lastStatus.value;
@@ -100,70 +189,110 @@ public class PololuI2c implements AutoCloseable {
     }
 
     public boolean endTransmission() {
-        boolean success = wire.endTransmission();
+        return recordStatus(wire.endTransmission());
+    }
+
+    private boolean recordStatus(boolean success) {
         lastStatus = success ? Status.SUCCESS : Status.FAILURE;
         return success;
     }
 
     public boolean writeReg(short reg, short value) {
+        long start = startTiming();
         beginTransmission();
         addressing.writeAddress(reg, wire);
         wire.write(value);
-        return endTransmission();
+        return completed(start, "writeReg",
+                reg & 0xFFFF, 1, addressing.bytes + Byte.BYTES, 0, endTransmission());
     }
 
     public boolean writeReg16Bit(short reg, int value) {
+        long start = startTiming();
         beginTransmission();
         addressing.writeAddress(reg, wire);
         wire.writeShort(value);
-        return endTransmission();
+        return completed(start, "writeReg16Bit",
+                reg & 0xFFFF, 1, addressing.bytes + Short.BYTES, 0, endTransmission());
     }
 
     public boolean writeReg32Bit(short reg, long value) {
+        long start = startTiming();
         beginTransmission();
         addressing.writeAddress(reg, wire);
         wire.writeInt(value);
-        return endTransmission();
+        return completed(start, "writeReg32Bit",
+                reg & 0xFFFF, 1, addressing.bytes + Integer.BYTES, 0, endTransmission());
     }
 
     public boolean writeRegMulti(short reg, byte[] value) {
+        long start = startTiming();
         beginTransmission();
         addressing.writeAddress(reg, wire);
         wire.write(value);
-        return endTransmission();
+        return completed(start, "writeRegMulti",
+                reg & 0xFFFF, 1, addressing.bytes + value.length, 0, endTransmission());
     }
 
     public void askForRegValue(short reg) {
+        long start = startTiming();
         beginTransmission();
         addressing.writeAddress(reg, wire);
-        endTransmission();
+        completed(start, "askForRegValue", reg & 0xFFFF, 1, addressing.bytes, 0, endTransmission());
     }
 
     public void request(int amount) {
-        wire.requestFrom(getAddress(), (byte) amount, false);
+        long start = startTiming();
+        boolean success = recordStatus(wire.requestFrom(getAddress(), (byte) amount, false));
+        completed(start, "request", I2cInstrumentation.NO_REGISTER, 1, 0, amount, success);
+    }
+
+    /**
+     * Read {@code amount} bytes starting at {@code reg} into the receive
+     * buffer of the {@link #getWire() Wire}.
+     *
+     * @return {@code true} if successfully read
+     * @see #setRepeatedStart(boolean)
+     */
+    public boolean requestRegValue(short reg, int amount) {
+        long start = startTiming();
+        if (repeatedStart) {
+            beginTransmission();
+            addressing.writeAddress(reg, wire);
+            boolean success = recordStatus(wire.requestFrom(getAddress(), (byte) amount, true));
+            return completed(start, "requestRegValue", reg & 0xFFFF, 1, addressing.bytes, amount, success);
+        }
+        // keep other users of the bus from getting between the two halves
+        ReentrantLock lock = wire.getBus().getLock();
+        lock.lock();
+        try {
+            beginTransmission();
+            addressing.writeAddress(reg, wire);
+            boolean asked = wire.endTransmission();
+            boolean read = wire.requestFrom(getAddress(), (byte) amount, false);
+            return completed(start, "requestRegValue",
+                    reg & 0xFFFF, 2, addressing.bytes, amount, recordStatus(asked && read));
+        } finally {
+            lock.unlock();
+        }
     }
 
     public short readReg(short reg) {
-        askForRegValue(reg);
-        request(Byte.BYTES);
+        requestRegValue(reg, Byte.BYTES);
         return wire.read();
     }
 
     public int readReg16Bit(short reg) {
-        askForRegValue(reg);
-        request(Short.BYTES);
+        requestRegValue(reg, Short.BYTES);
         return wire.readShort();
     }
 
     public long readReg32Bit(short reg) {
-        askForRegValue(reg);
-        request(Integer.BYTES);
+        requestRegValue(reg, Integer.BYTES);
         return wire.readInt();
     }
 
     public void readRegMulti(short reg, byte[] out) {
-        askForRegValue(reg);
-        request(out.length);
+        requestRegValue(reg, out.length);
         wire.read(out);
     }
 }
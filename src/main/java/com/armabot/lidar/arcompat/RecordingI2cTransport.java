@@ -0,0 +1,195 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Transport that passes every transaction through to another, and appends
+ * it to a log file that {@link ReplayI2cTransport} can serve again later.
+ *
+ * <p>
+ * The log is written through a memory mapping, a segment at a time, so
+ * recording a transaction only copies a few dozen bytes, and does not
+ * allocate or make a system call. The kernel writes the pages back to disk
+ * in its own time, so a log survives the process dying; call
+ * {@link #flush()} to also have it survive the system going down. Until
+ * {@linkplain #close() closed}, the file may end in up to a segment of
+ * zeros, which readers ignore.
+ * </p>
+ */
+public class RecordingI2cTransport implements I2cTransport, AutoCloseable {
+
+    private static final int SEGMENT_BYTES = 1 << 20;
+
+    /**
+     * Start recording to {@code log}, replacing any file there, the
+     * transactions passed to {@code delegate}.
+     */
+    public static RecordingI2cTransport create(I2cTransport delegate, Path log) throws IOException {
+        FileChannel channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return new RecordingI2cTransport(delegate, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private final I2cTransport delegate;
+    private final FileChannel channel;
+    private final long originNanos;
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private long recordCount;
+    private boolean closed;
+
+    private RecordingI2cTransport(I2cTransport delegate, FileChannel channel) throws IOException {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.channel = channel;
+        this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_BYTES);
+        this.originNanos = System.nanoTime();
+        segment.putInt(TrafficLog.MAGIC);
+        segment.putInt(TrafficLog.VERSION);
+        segment.putLong(System.currentTimeMillis());
+    }
+
+    public I2cTransport getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return the number of transactions recorded so far
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void initialize(Port port) {
+        delegate.initialize(port);
+    }
+
+    @Override
+    public boolean write(Port port, byte address, ByteBuffer data, int size) {
+        long start = System.nanoTime();
+        boolean success = delegate.write(port, address, data, size);
+        append(TrafficLog.WRITE, port, address, success, start, data, size, data, 0);
+        return success;
+    }
+
+    @Override
+    public boolean read(Port port, byte address, ByteBuffer out, int size) {
+        long start = System.nanoTime();
+        boolean success = delegate.read(port, address, out, size);
+        append(TrafficLog.READ, port, address, success, start, out, 0, out, size);
+        return success;
+    }
+
+    @Override
+    public boolean transaction(Port port, byte address,
+                               ByteBuffer tx, int txSize,
+                               ByteBuffer rx, int rxSize) {
+        long start = System.nanoTime();
+        boolean success = delegate.transaction(port, address, tx, txSize, rx, rxSize);
+        append(TrafficLog.TRANSACTION, port, address, success, start, tx, txSize, rx, rxSize);
+        return success;
+    }
+
+    @Override
+    public void close(Port port) {
+        delegate.close(port);
+    }
+
+    private synchronized void append(byte kind, Port port, byte address, boolean success, long start,
+                                     ByteBuffer tx, int txSize, ByteBuffer rx, int rxSize) {
+        if (closed) {
+            return;
+        }
+        long duration = System.nanoTime() - start;
+        if (segment.remaining() < TrafficLog.RECORD_HEADER_BYTES + txSize + rxSize) {
+            nextSegment();
+        }
+        segment.put(kind);
+        segment.put((byte) port.value());
+        segment.put(address);
+        segment.put((byte) (success ? 1 : 0));
+        segment.put((byte) txSize);
+        segment.put((byte) rxSize);
+        segment.putLong(start - originNanos);
+        segment.putInt((int) Math.min(duration, Integer.MAX_VALUE));
+        for (int i = 0; i < txSize; i++) {
+            segment.put(tx.get(i));
+        }
+        for (int i = 0; i < rxSize; i++) {
+            segment.put(rx.get(i));
+        }
+        recordCount++;
+    }
+
+    private void nextSegment() {
+        // map the next segment right where this one stopped, so the log stays contiguous
+        segmentStart += segment.position();
+        try {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, SEGMENT_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to extend the traffic log", e);
+        }
+    }
+
+    /**
+     * Write the log through to the disk.
+     */
+    public synchronized void flush() {
+        if (!closed) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Stop recording, and trim the log to the recorded transactions.
+     * Transactions still pass through to the delegate afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        segment.force();
+        long size = segmentStart + segment.position();
+        try {
+            channel.truncate(size);
+        } catch (IOException e) {
+            // some platforms refuse to truncate a mapped file, the trailing zeros are harmless
+        } finally {
+            channel.close();
+        }
+    }
+}
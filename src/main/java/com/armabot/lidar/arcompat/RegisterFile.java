@@ -0,0 +1,127 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An {@link I2cDevice} that behaves like a plain bank of registers, using the
+ * same extended protocol as {@link PololuI2c}: every write starts with the
+ * register address, and reads continue from the last address written,
+ * auto-incrementing as they go.
+ *
+ * <p>
+ * Subclasses may override {@link #readRegister(int)} and
+ * {@link #writeRegister(int, byte)} to model device behavior.
+ * </p>
+ */
+public class RegisterFile implements I2cDevice {
+
+    private final PololuI2c.Addressing addressing;
+    private final byte[] registers;
+    private final int mask;
+    private int pointer;
+
+    public RegisterFile(PololuI2c.Addressing addressing) {
+        this.addressing = addressing;
+        this.registers = new byte[1 << (Byte.SIZE * addressing.bytes())];
+        this.mask = registers.length - 1;
+    }
+
+    public PololuI2c.Addressing getAddressing() {
+        return addressing;
+    }
+
+    /**
+     * Get a register directly, bypassing any device behavior.
+     */
+    public short get(int reg) {
+        return (short) Byte.toUnsignedInt(registers[reg & mask]);
+    }
+
+    public int get16Bit(int reg) {
+        return (get(reg) << 8) | get(reg + 1);
+    }
+
+    /**
+     * Set a register directly, bypassing any device behavior.
+     */
+    public void set(int reg, int value) {
+        registers[reg & mask] = (byte) value;
+    }
+
+    public void set16Bit(int reg, int value) {
+        set(reg, value >>> 8);
+        set(reg + 1, value);
+    }
+
+    public void set32Bit(int reg, long value) {
+        set16Bit(reg, (int) (value >>> 16));
+        set16Bit(reg + 2, (int) value);
+    }
+
+    /**
+     * Set every register to zero, bypassing any device behavior.
+     */
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    protected byte readRegister(int reg) {
+        return registers[reg];
+    }
+
+    protected void writeRegister(int reg, byte value) {
+        registers[reg] = value;
+    }
+
+    @Override
+    public boolean write(ByteBuffer data, int size) {
+        int addressBytes = addressing.bytes();
+        if (size < addressBytes) {
+            return false;
+        }
+        int reg = 0;
+        for (int i = 0; i < addressBytes; i++) {
+            reg = (reg << 8) | Byte.toUnsignedInt(data.get(i));
+        }
+        reg &= mask;
+        for (int i = addressBytes; i < size; i++) {
+            writeRegister(reg, data.get(i));
+            reg = (reg + 1) & mask;
+        }
+        // a write with no data only moves the pointer, for a following read
+        pointer = reg;
+        return true;
+    }
+
+    @Override
+    public boolean read(ByteBuffer out, int size) {
+        int reg = pointer;
+        for (int i = 0; i < size; i++) {
+            out.put(i, readRegister(reg));
+            reg = (reg + 1) & mask;
+        }
+        pointer = reg;
+        return true;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import com.armabot.lidar.util.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An ordered table of register writes, such as an initialization sequence.
+ *
+ * <p>
+ * When built, runs of writes to consecutive registers are merged into
+ * auto-increment multi-byte writes, as large as the {@link Wire} buffer
+ * allows. Writes are never reordered, and {@linkplain Builder#select(int, int) select}
+ * steps are always sent on their own, so a page select like {@code 0xFF}
+ * still separates the writes around it.
+ * </p>
+ */
+public final class RegisterScript {
+
+    public static Builder builder(PololuI2c.Addressing addressing) {
+        return new Builder(addressing);
+    }
+
+    public static final class Builder {
+
+        private final PololuI2c.Addressing addressing;
+        private final List<int[]> steps = new ArrayList<>();
+
+        private Builder(PololuI2c.Addressing addressing) {
+            this.addressing = addressing;
+        }
+
+        private Builder step(int reg, int value, boolean select) {
+            Preconditions.checkArgument(0 <= reg && reg < (1 << (Byte.SIZE * addressing.bytes())),
+                    "reg out of range: 0x%x", reg);
+            steps.add(new int[]{reg, value & 0xFF, select ? 1 : 0});
+            return this;
+        }
+
+        public Builder write(int reg, int value) {
+            return step(reg, value, false);
+        }
+
+        public Builder write(Register reg, int value) {
+            return write(reg.address(), value);
+        }
+
+        public Builder write16Bit(int reg, int value) {
+            return write(reg, value >>> 8).write(reg + 1, value);
+        }
+
+        public Builder write16Bit(Register reg, int value) {
+            return write16Bit(reg.address(), value);
+        }
+
+        /**
+         * Add a write that must be its own transaction, such as a page select.
+         */
+        public Builder select(int reg, int value) {
+            return step(reg, value, true);
+        }
+
+        public RegisterScript build() {
+            int maxData = Wire.BUFFER_LENGTH - addressing.bytes();
+            short[] registers = new short[steps.size()];
+            byte[][] values = new byte[steps.size()][];
+            int count = 0;
+            int i = 0;
+            while (i < steps.size()) {
+                int[] start = steps.get(i);
+                int end = i + 1;
+                if (start[2] == 0) {
+                    while (end < steps.size() && end - i < maxData) {
+                        int[] next = steps.get(end);
+                        if (next[2] != 0 || next[0] != start[0] + (end - i)) {
+                            break;
+                        }
+                        end++;
+                    }
+                }
+                byte[] data = new byte[end - i];
+                for (int k = i; k < end; k++) {
+                    data[k - i] = (byte) steps.get(k)[1];
+                }
+                registers[count] = (short) start[0];
+                values[count] = data;
+                count++;
+                i = end;
+            }
+            return new RegisterScript(addressing,
+                    Arrays.copyOf(registers, count), Arrays.copyOf(values, count), steps.size());
+        }
+    }
+
+    private final PololuI2c.Addressing addressing;
+    private final short[] registers;
+    private final byte[][] values;
+    private final int writeCount;
+
+    private RegisterScript(PololuI2c.Addressing addressing, short[] registers, byte[][] values, int writeCount) {
+        this.addressing = addressing;
+        this.registers = registers;
+        this.values = values;
+        this.writeCount = writeCount;
+    }
+
+    public PololuI2c.Addressing getAddressing() {
+        return addressing;
+    }
+
+    /**
+     * @return the number of single-register writes in this script
+     */
+    public int writeCount() {
+        return writeCount;
+    }
+
+    /**
+     * @return the number of transactions needed to run this script
+     */
+    public int transactionCount() {
+        return registers.length;
+    }
+
+    /**
+     * Run every write in this script on {@code i2c}, in order.
+     *
+     * @return {@code true} if every write was successful
+     */
+    public boolean runOn(PololuI2c i2c) {
+        boolean success = true;
+        for (int i = 0; i < registers.length; i++) {
+            byte[] value = values[i];
+            if (value.length == 1) {
+                success &= i2c.writeReg(registers[i], value[0]);
+            } else {
+                success &= i2c.writeRegMulti(registers[i], value);
+            }
+        }
+        return success;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import com.armabot.lidar.util.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport that serves transactions from a log written by
+ * {@link RecordingI2cTransport}, in order, without waiting, so a recording
+ * can be replayed through a driver far faster than it was made. Only the
+ * driver's own pauses between polls take real time.
+ *
+ * <p>
+ * Each transaction must match the next one in the log: its kind, port,
+ * address, written bytes and read length. The recorded status is returned,
+ * and any recorded bytes are read. If the driver does anything else, it has
+ * diverged from the recording, and an {@link IllegalStateException}
+ * describes where. Drivers that act on the time, rather than just on what
+ * they read, such as one that times out or predicts when data is ready, may
+ * diverge when replayed faster.
+ * </p>
+ */
+public class ReplayI2cTransport implements I2cTransport {
+
+    /**
+     * Map {@code log} for replay.
+     */
+    public static ReplayI2cTransport open(Path log) throws IOException {
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Preconditions.checkArgument(size <= Integer.MAX_VALUE, "Log too large to replay: %s bytes", size);
+            // the mapping stays valid after the channel is closed
+            return new ReplayI2cTransport(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    private final MappedByteBuffer log;
+    private final long startEpochMillis;
+    private int position;
+    private long replayCount;
+    private long lastStartNanos;
+
+    private ReplayI2cTransport(MappedByteBuffer log) {
+        Preconditions.checkArgument(log.limit() >= TrafficLog.HEADER_BYTES
+                && log.getInt(0) == TrafficLog.MAGIC, "Not a traffic log");
+        int version = log.getInt(Integer.BYTES);
+        Preconditions.checkArgument(version == TrafficLog.VERSION, "Unsupported log version: %s", version);
+        this.log = log;
+        this.startEpochMillis = log.getLong(Integer.BYTES * 2);
+        this.position = TrafficLog.HEADER_BYTES;
+    }
+
+    /**
+     * @return when the recording started, in milliseconds since the epoch
+     */
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /**
+     * @return the number of transactions replayed since the start
+     */
+    public synchronized long getReplayCount() {
+        return replayCount;
+    }
+
+    /**
+     * @return when the last replayed transaction started, relative to the
+     * start of the recording
+     */
+    public synchronized long getRecordedTime(TimeUnit unit) {
+        return unit.convert(lastStartNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return if there are transactions left to replay
+     */
+    public synchronized boolean hasRemaining() {
+        return position + TrafficLog.RECORD_HEADER_BYTES <= log.limit() && log.get(position) != TrafficLog.END;
+    }
+
+    /**
+     * Go back to the start of the log.
+     */
+    public synchronized void rewind() {
+        position = TrafficLog.HEADER_BYTES;
+        replayCount = 0;
+        lastStartNanos = 0;
+    }
+
+    @Override
+    public void initialize(Port port) {
+    }
+
+    @Override
+    public boolean write(Port port, byte address, ByteBuffer data, int size) {
+        return replay(TrafficLog.WRITE, port, address, data, size, data, 0);
+    }
+
+    @Override
+    public boolean read(Port port, byte address, ByteBuffer out, int size) {
+        return replay(TrafficLog.READ, port, address, out, 0, out, size);
+    }
+
+    @Override
+    public boolean transaction(Port port, byte address,
+                               ByteBuffer tx, int txSize,
+                               ByteBuffer rx, int rxSize) {
+        return replay(TrafficLog.TRANSACTION, port, address, tx, txSize, rx, rxSize);
+    }
+
+    @Override
+    public void close(Port port) {
+    }
+
+    private synchronized boolean replay(byte kind, Port port, byte address,
+                                        ByteBuffer tx, int txSize, ByteBuffer rx, int rxSize) {
+        if (!hasRemaining()) {
+            throw new IllegalStateException("Log ended after " + replayCount + " transactions, at a "
+                    + TrafficLog.kindName(kind) + " to 0x" + Integer.toHexString(address));
+        }
+        int at = position;
+        int recordedTxSize = Byte.toUnsignedInt(log.get(at + 4));
+        int recordedRxSize = Byte.toUnsignedInt(log.get(at + 5));
+        int txAt = at + TrafficLog.RECORD_HEADER_BYTES;
+        boolean matches = log.get(at) == kind
+                && log.get(at + 1) == (byte) port.value()
+                && log.get(at + 2) == address
+                && recordedTxSize == txSize
+                && recordedRxSize == rxSize;
+        for (int i = 0; matches && i < txSize; i++) {
+            matches = log.get(txAt + i) == tx.get(i);
+        }
+        if (!matches) {
+            throw new IllegalStateException("Transaction " + replayCount + " diverged from the log: expected "
+                    + describe(log.get(at), log.get(at + 1), log.get(at + 2), log, txAt, recordedTxSize, recordedRxSize)
+                    + ", got " + describe(kind, (byte) port.value(), address, tx, 0, txSize, rxSize));
+        }
+        int rxAt = txAt + txSize;
+        for (int i = 0; i < rxSize; i++) {
+            rx.put(i, log.get(rxAt + i));
+        }
+        lastStartNanos = log.getLong(at + 6);
+        position = rxAt + rxSize;
+        replayCount++;
+        return log.get(at + 3) != 0;
+    }
+
+    private static String describe(byte kind, byte port, byte address,
+                                   ByteBuffer tx, int txAt, int txSize, int rxSize) {
+        StringBuilder builder = new StringBuilder(TrafficLog.kindName(kind))
+                .append(" on port ").append(port)
+                .append(" to 0x").append(Integer.toHexString(address))
+                .append(" [");
+        for (int i = 0; i < txSize; i++) {
+            builder.append(i == 0 ? "" : " ").append(String.format("%02X", tx.get(txAt + i)));
+        }
+        return builder.append("] reading ").append(rxSize).toString();
+    }
+}
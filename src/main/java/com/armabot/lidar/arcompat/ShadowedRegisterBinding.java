@@ -0,0 +1,129 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+/**
+ * A write-through binding that remembers the last value read or written, and
+ * serves reads of the same width from memory while its shadow is valid.
+ */
+class ShadowedRegisterBinding extends RegisterBinding {
+
+    /**
+     * State shared by every shadowed binding of one device.
+     */
+    static final class Shadows {
+        boolean enabled;
+        int generation;
+
+        void invalidate() {
+            generation++;
+        }
+    }
+
+    private final PololuI2c i2c;
+    private final Shadows shadows;
+    private long value;
+    private int width;
+    private int generation;
+
+    ShadowedRegisterBinding(short reg, PololuI2c i2c, Shadows shadows) {
+        super(reg, i2c);
+        this.i2c = i2c;
+        this.shadows = shadows;
+    }
+
+    private boolean hasShadow(int width) {
+        return shadows.enabled && this.width == width && generation == shadows.generation;
+    }
+
+    private void shadow(boolean valid, long value, int width) {
+        if (valid && shadows.enabled) {
+            this.value = value;
+            this.width = width;
+            this.generation = shadows.generation;
+        } else {
+            this.width = 0;
+        }
+    }
+
+    @Override
+    public boolean write(short value) {
+        boolean success = super.write(value);
+        shadow(success, value & 0xFF, Byte.BYTES);
+        return success;
+    }
+
+    @Override
+    public boolean write16Bit(int value) {
+        boolean success = super.write16Bit(value);
+        shadow(success, value & 0xFFFF, Short.BYTES);
+        return success;
+    }
+
+    @Override
+    public boolean write32Bit(long value) {
+        boolean success = super.write32Bit(value);
+        shadow(success, value & 0xFFFFFFFFL, Integer.BYTES);
+        return success;
+    }
+
+    @Override
+    public boolean writeMulti(byte[] value) {
+        width = 0;
+        return super.writeMulti(value);
+    }
+
+    @Override
+    public short read() {
+        if (hasShadow(Byte.BYTES)) {
+            return (short) value;
+        }
+        short read = super.read();
+        shadow(i2c.wasLastOpSuccessful(), read, Byte.BYTES);
+        return read;
+    }
+
+    @Override
+    public int read16Bit() {
+        if (hasShadow(Short.BYTES)) {
+            return (int) value;
+        }
+        int read = super.read16Bit();
+        shadow(i2c.wasLastOpSuccessful(), read, Short.BYTES);
+        return read;
+    }
+
+    @Override
+    public long read32Bit() {
+        if (hasShadow(Integer.BYTES)) {
+            return value;
+        }
+        long read = super.read32Bit();
+        shadow(i2c.wasLastOpSuccessful(), read, Integer.BYTES);
+        return read;
+    }
+
+    @Override
+    public void readMulti(byte[] result) {
+        width = 0;
+        super.readMulti(result);
+    }
+}
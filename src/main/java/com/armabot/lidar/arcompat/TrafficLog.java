@@ -0,0 +1,78 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+/**
+ * The binary format shared by {@link RecordingI2cTransport} and
+ * {@link ReplayI2cTransport}. Everything is big-endian.
+ *
+ * <p>
+ * The log starts with a header: the {@link #MAGIC magic number}, the
+ * {@link #VERSION version}, and the wall-clock time the recording started,
+ * in milliseconds since the epoch, as a {@code long}. It is followed by one
+ * record per transaction:
+ * </p>
+ * <pre>
+ * byte kind         1 = write, 2 = read, 3 = write then read
+ * byte port
+ * byte address
+ * byte status       1 if acknowledged
+ * byte txSize
+ * byte rxSize
+ * long startNanos   since the recording started
+ * int  durationNanos
+ * byte[txSize] tx
+ * byte[rxSize] rx
+ * </pre>
+ * <p>
+ * The log ends at the first kind of {@code 0}, or the end of the file.
+ * </p>
+ */
+final class TrafficLog {
+
+    static final int MAGIC = 0x4932434C; // "I2CL"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = Integer.BYTES * 2 + Long.BYTES;
+
+    static final byte END = 0;
+    static final byte WRITE = 1;
+    static final byte READ = 2;
+    static final byte TRANSACTION = 3;
+
+    static final int RECORD_HEADER_BYTES = 6 + Long.BYTES + Integer.BYTES;
+    static final int MAX_RECORD_BYTES = RECORD_HEADER_BYTES + Wire.BUFFER_LENGTH * 2;
+
+    static String kindName(int kind) {
+        switch (kind) {
+            case WRITE:
+                return "write";
+            case READ:
+                return "read";
+            case TRANSACTION:
+                return "transaction";
+            default:
+                return "unknown (" + kind + ")";
+        }
+    }
+
+    private TrafficLog() {
+    }
+}
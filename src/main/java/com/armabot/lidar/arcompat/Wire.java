@@ -20,8 +20,8 @@
 
 package com.armabot.lidar.arcompat;
 
+import com.armabot.lidar.trace.Tracer;
 import com.armabot.lidar.util.Preconditions;
-import edu.wpi.first.hal.I2CJNI;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -30,45 +30,86 @@ import java.util.Objects;
 /**
  * Drop-in replacement for Arduino's Wire class. Only works for master mode.
  * <p>
- * Avoids the higher level I2C since Wire is low level too.
+ * Avoids the higher level I2C since Wire is low level too. The bytes are moved
+ * by an {@link I2cTransport}, which is the {@link HalI2cTransport} unless
+ * otherwise specified. The port is shared with other users through an
+ * {@link I2cBus}, and each transaction holds its lock.
  */
 public class Wire implements AutoCloseable {
 
     private final Port port;
+    private final I2cTransport transport;
 
     public Wire(Port port) {
+        this(port, HalI2cTransport.INSTANCE);
+    }
+
+    public Wire(Port port, I2cTransport transport) {
         this.port = Objects.requireNonNull(port, "port");
+        this.transport = Objects.requireNonNull(transport, "transport");
     }
 
     public Port getPort() {
         return port;
     }
 
+    public I2cTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * The most bytes that can be sent or received in one transaction.
+     */
+    public static final int BUFFER_LENGTH = 32;
+
     // Wire works by building the arrays using begin/end transmission wrappers.
-    private static final int BUFFER_LENGTH = 32;
-    private boolean open = false;
+    private I2cBus bus;
     private boolean transmitting = false;
     private ByteBuffer rxBuffer = ByteBuffer.allocateDirect(BUFFER_LENGTH).order(ByteOrder.BIG_ENDIAN);
     private ByteBuffer txBuffer = ByteBuffer.allocateDirect(BUFFER_LENGTH).order(ByteOrder.BIG_ENDIAN);
     private byte txAddress = -1;
+    private Tracer tracer = Tracer.NONE;
 
     /**
-     * Initialize this {@link Wire} object. Essentially just calls
-     * {@link I2CJNI#i2CInitialize(int)}.
+     * Initialize this {@link Wire} object. Essentially just
+     * {@linkplain I2cBus#acquire(I2cTransport, Port) acquires} the bus.
      */
     public void begin() {
         resetRxBuffer();
 
         resetTxBuffer();
 
-        I2CJNI.i2CInitialize(port.value());
-        open = true;
+        if (bus == null) {
+            bus = I2cBus.acquire(transport, port);
+        }
+    }
+
+    /**
+     * @return the bus this is using
+     */
+    public I2cBus getBus() {
+        checkOpen();
+        return bus;
     }
 
     @Override
     public void close() {
-        I2CJNI.i2CClose(port.value());
-        open = false;
+        if (bus != null) {
+            bus.release();
+            bus = null;
+        }
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Sets the tracer that records a span for every call to the
+     * {@link I2cTransport}. Defaults to {@link Tracer#NONE}.
+     */
+    public void setTracer(Tracer tracer) {
+        this.tracer = Objects.requireNonNull(tracer, "tracer");
     }
 
     private void resetRxBuffer() {
@@ -80,7 +121,7 @@ public class Wire implements AutoCloseable {
     }
 
     private void checkOpen() {
-        Preconditions.checkState(open, "Not open, please call begin() first");
+        Preconditions.checkState(bus != null, "Not open, please call begin() first");
     }
 
     /**
@@ -108,7 +149,15 @@ public class Wire implements AutoCloseable {
     public boolean endTransmission() {
         checkOpen();
         checkTransmitting();
-        boolean success = I2CJNI.i2CWrite(port.value(), txAddress, txBuffer, (byte) txBuffer.position()) >= 0;
+        boolean success;
+        bus.getLock().lock();
+        try {
+            long start = tracer.start();
+            success = transport.write(port, txAddress, txBuffer, txBuffer.position());
+            tracer.end(start, Tracer.CATEGORY_BUS, "write", txAddress, Tracer.NO_VALUE);
+        } finally {
+            bus.getLock().unlock();
+        }
 
         resetTxBuffer();
         transmitting = false;
@@ -152,22 +201,48 @@ public class Wire implements AutoCloseable {
         txBuffer.put(data);
     }
 
-    public void requestFrom(byte address, byte amount, boolean continueTransmission) {
+    /**
+     * Read {@code amount} bytes from {@code address} into the receive buffer.
+     *
+     * <p>
+     * If {@code continueTransmission} is set, the current transmission is
+     * sent first as part of the same transaction, using a repeated start
+     * instead of a stop between the write and the read.
+     * </p>
+     *
+     * @return {@code true} if successfully transferred
+     */
+    public boolean requestFrom(byte address, byte amount, boolean continueTransmission) {
         Preconditions.checkArgument(0 <= amount && amount <= BUFFER_LENGTH,
                 "amount must be within buffer bounds");
         checkOpen();
+        resetRxBuffer();
         if (continueTransmission) {
             checkTransmitting();
-            I2CJNI.i2CTransaction(port.value(), address,
-                    txBuffer, (byte) txBuffer.position(),
-                    rxBuffer, amount);
+        }
+        boolean success;
+        bus.getLock().lock();
+        try {
+            long start = tracer.start();
+            if (continueTransmission) {
+                success = transport.transaction(port, address,
+                        txBuffer, txBuffer.position(),
+                        rxBuffer, amount);
+                tracer.end(start, Tracer.CATEGORY_BUS, "transaction", address, Tracer.NO_VALUE);
+            } else {
+                success = transport.read(port, address,
+                        rxBuffer, amount);
+                tracer.end(start, Tracer.CATEGORY_BUS, "read", address, Tracer.NO_VALUE);
+            }
+        } finally {
+            bus.getLock().unlock();
+        }
+        if (continueTransmission) {
             resetTxBuffer();
             transmitting = false;
-        } else {
-            I2CJNI.i2CRead(port.value(), address,
-                    rxBuffer, amount);
         }
         rxBuffer.position(0).limit(amount);
+        return success;
     }
 
     private void checkReadable(int amt) {
@@ -0,0 +1,163 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A single-shot measurement, split into steps that never block, so it can
+ * run {@linkplain #submit(ScheduledExecutorService, long, TimeUnit) asynchronously}
+ * on a bus executor without holding its thread for the whole measurement.
+ *
+ * <p>
+ * Only one measurement may be pending at a time, since a second one would
+ * restart the first. Single shots of one sensor share a pending flag, so
+ * they never overlap either.
+ * </p>
+ *
+ * @param <T> the result type
+ */
+public abstract class SingleShot<T> {
+
+    private static final long MIN_POLL_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    // poll this many times per expected measurement time, once it is over
+    private static final int POLLS_PER_MEASUREMENT = 16;
+
+    private final AtomicBoolean pending;
+
+    protected SingleShot() {
+        this(new AtomicBoolean());
+    }
+
+    /**
+     * @param pending set while a measurement is pending, shared with the
+     * other single shots of the same sensor
+     */
+    protected SingleShot(AtomicBoolean pending) {
+        this.pending = pending;
+    }
+
+    /**
+     * Start the measurement, and its timeout.
+     */
+    protected abstract void start();
+
+    /**
+     * @return if the result is ready to be {@linkplain #finish() read}
+     */
+    protected abstract boolean isReady();
+
+    /**
+     * @return if the timeout started by {@link #start()} has passed
+     */
+    protected abstract boolean isTimedOut();
+
+    /**
+     * Read the result, once it is ready.
+     */
+    protected abstract T finish();
+
+    /**
+     * Record a timeout, and return what the blocking measurement returns for
+     * one.
+     */
+    protected abstract T timedOut();
+
+    /**
+     * Run this measurement on {@code executor}. The first poll is after
+     * {@code expected}, the time the measurement should take, and the next
+     * ones are a fraction of it apart.
+     *
+     * <p>
+     * The future completes with the same value as the blocking measurement,
+     * including on timeout. It completes exceptionally if a step throws, or
+     * if the executor is shut down first. It completes exceptionally with an
+     * {@link IllegalStateException} if another measurement sharing the
+     * pending flag has not completed yet. A measurement is no longer pending
+     * once its future completes, so one can be submitted from a callback on
+     * the previous one. A cancelled measurement stays pending until its next
+     * step runs on the executor.
+     * </p>
+     */
+    public final CompletableFuture<T> submit(ScheduledExecutorService executor, long expected, TimeUnit unit) {
+        long expectedNanos = unit.toNanos(expected);
+        long intervalNanos = Math.max(expectedNanos / POLLS_PER_MEASUREMENT, MIN_POLL_INTERVAL_NANOS);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (!pending.compareAndSet(false, true)) {
+            future.completeExceptionally(new IllegalStateException("A single-shot measurement is already pending"));
+            return future;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (future.isDone()) {
+                        // cancelled before it started
+                        pending.set(false);
+                        return;
+                    }
+                    start();
+                    schedulePoll(executor, future, expectedNanos, intervalNanos);
+                } catch (Throwable t) {
+                    fail(future, t);
+                }
+            });
+        } catch (Throwable t) {
+            fail(future, t);
+        }
+        return future;
+    }
+
+    private void complete(CompletableFuture<T> future, T value) {
+        // cleared first, so callbacks of the future can submit the next measurement
+        pending.set(false);
+        future.complete(value);
+    }
+
+    private void fail(CompletableFuture<T> future, Throwable t) {
+        pending.set(false);
+        future.completeExceptionally(t);
+    }
+
+    private void schedulePoll(ScheduledExecutorService executor, CompletableFuture<T> future,
+                              long delayNanos, long intervalNanos) {
+        executor.schedule(() -> {
+            try {
+                if (future.isDone()) {
+                    // cancelled, stop touching the sensor before letting another measurement start
+                    pending.set(false);
+                    return;
+                }
+                if (isReady()) {
+                    complete(future, finish());
+                } else if (isTimedOut()) {
+                    complete(future, timedOut());
+                } else {
+                    schedulePoll(executor, future, intervalNanos, intervalNanos);
+                }
+            } catch (Throwable t) {
+                fail(future, t);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+}
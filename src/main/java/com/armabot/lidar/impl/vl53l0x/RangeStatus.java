@@ -0,0 +1,67 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl53l0x;
+
+/**
+ * The device range status of a measurement, as reported in {@link RangingData}.
+ * These are the {@code VL53L0X_DEVICEERROR_*} codes from ST's API.
+ */
+public enum RangeStatus {
+    NONE,
+    VCSEL_CONTINUITY_TEST_FAILURE,
+    VCSEL_WATCHDOG_TEST_FAILURE,
+    NO_VHV_VALUE_FOUND,
+    /**
+     * No target was found in the minimum range.
+     */
+    MSRC_NO_TARGET,
+    /**
+     * The signal to noise ratio is too low.
+     */
+    SNR_CHECK,
+    RANGE_PHASE_CHECK,
+    SIGMA_THRESHOLD_CHECK,
+    TCC,
+    PHASE_CONSISTENCY,
+    MIN_CLIP,
+    /**
+     * The measurement completed normally.
+     */
+    RANGE_COMPLETE,
+    ALGO_UNDERFLOW,
+    ALGO_OVERFLOW,
+    RANGE_IGNORE_THRESHOLD,
+    UNKNOWN,
+    ;
+
+    private static final RangeStatus[] VALUES = values();
+
+    /**
+     * @return if the range can be used
+     */
+    public boolean isValid() {
+        return this == RANGE_COMPLETE;
+    }
+
+    static RangeStatus fromDeviceRangeStatus(int deviceRangeStatus) {
+        return deviceRangeStatus < UNKNOWN.ordinal() ? VALUES[deviceRangeStatus] : UNKNOWN;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl53l0x;
+
+import com.armabot.lidar.util.Preconditions;
+import com.armabot.lidar.util.WaitStrategy;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-shot ranging on many sensors at once.
+ *
+ * <p>
+ * {@link Vl53l0xI2c#readRangeSingleMillimeters()} waits a whole timing budget
+ * for each sensor in turn. A batch starts a measurement on every sensor
+ * first, then reads each one as soon as it is ready, so the whole batch
+ * takes about one timing budget. The sensors may be on different buses, but
+ * sensors on the same bus must have different addresses, and no sensor may
+ * be in a batch twice.
+ * </p>
+ *
+ * <p>
+ * A batch is not thread-safe, and its sensors must not be used by anything
+ * else while it is reading them.
+ * </p>
+ */
+public final class Vl53l0xBatch {
+
+    private final Vl53l0xI2c[] sensors;
+    private final boolean[] done;
+    private final WaitStrategy wait = WaitStrategy.create();
+
+    public Vl53l0xBatch(List<Vl53l0xI2c> sensors) {
+        Preconditions.checkArgument(!sensors.isEmpty(), "No sensors");
+        this.sensors = sensors.toArray(new Vl53l0xI2c[0]);
+        for (int i = 0; i < this.sensors.length; i++) {
+            Vl53l0xI2c sensor = this.sensors[i];
+            Preconditions.checkArgument(sensor != null, "Sensor %s is null", i);
+            for (int j = 0; j < i; j++) {
+                Preconditions.checkArgument(!sameDevice(this.sensors[j], sensor),
+                        "Sensors %s and %s have the same port and address", j, i);
+            }
+        }
+        this.done = new boolean[this.sensors.length];
+    }
+
+    private static boolean sameDevice(Vl53l0xI2c a, Vl53l0xI2c b) {
+        // one bus per transport and port
+        return a.getI2c().getWire().getBus() == b.getI2c().getWire().getBus()
+                && a.getAddress() == b.getAddress();
+    }
+
+    public int size() {
+        return sensors.length;
+    }
+
+    /**
+     * @return the strategy used to wait for the sensors, and its poll counters
+     */
+    public WaitStrategy getWaitStrategy() {
+        return wait;
+    }
+
+    /**
+     * Take one single-shot measurement on every sensor. Each range is the
+     * same as {@link Vl53l0xI2c#readRangeSingleMillimeters()} would give,
+     * including {@code 65535} and the timeout flag of the sensor if it timed
+     * out.
+     *
+     * @param ranges receives the range of each sensor, in the order they were
+     * given in
+     */
+    public void readRangeSingleMillimeters(int[] ranges) {
+        Preconditions.checkArgument(ranges.length >= sensors.length,
+                "ranges too short: %s < %s", ranges.length, sensors.length);
+        long budgetMicrosec = 0;
+        for (int i = 0; i < sensors.length; i++) {
+            sensors[i].startRangeSingle();
+            done[i] = false;
+            budgetMicrosec = Math.max(budgetMicrosec, sensors[i].measurementTimingBudgetMicrosec);
+        }
+        if (budgetMicrosec > 0) {
+            wait.tune(budgetMicrosec, TimeUnit.MICROSECONDS);
+        }
+
+        int remaining = sensors.length;
+        wait.begin();
+        while (true) {
+            for (int i = 0; i < sensors.length; i++) {
+                if (done[i]) {
+                    continue;
+                }
+                Vl53l0xI2c sensor = sensors[i];
+                if (sensor.isRangeSingleReady()) {
+                    ranges[i] = sensor.readRangeContinuousMillimeters();
+                } else if (sensor.currentlyTimedOut()) {
+                    sensor.setTimeoutFlag();
+                    ranges[i] = 65535;
+                } else {
+                    continue;
+                }
+                done[i] = true;
+                remaining--;
+            }
+            if (remaining == 0) {
+                return;
+            }
+            wait.idle();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl53l0x;
+
+import com.armabot.lidar.util.Preconditions;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * What {@link Vl53l0xI2c#initialize()} finds out about one particular
+ * sensor: the stop variable, the reference SPADs, and the VHV and phase
+ * calibration results. Restoring it with
+ * {@link Vl53l0xI2c#initialize(Vl53l0xCalibration)} skips the slow steps of
+ * finding them again, such as after a brown-out.
+ *
+ * <p>
+ * It is only valid for the sensor it came from. The VHV calibration also
+ * depends on temperature, so a full initialization should be done now and
+ * then, such as once before every match.
+ * </p>
+ */
+public final class Vl53l0xCalibration {
+
+    private static final short MAGIC = 0x4C30; // "L0"
+    private static final byte VERSION = 1;
+    static final int SPAD_MAP_BYTES = 6;
+    /**
+     * The length of the {@linkplain #toBytes() serialized form}.
+     */
+    public static final int BYTES = Short.BYTES + 3 + SPAD_MAP_BYTES + 2 + Integer.BYTES;
+
+    /**
+     * Read the {@linkplain #toBytes() serialized form}.
+     *
+     * @throws IllegalArgumentException if {@code bytes} is not a valid calibration
+     */
+    public static Vl53l0xCalibration fromBytes(byte[] bytes) {
+        Preconditions.checkArgument(bytes.length == BYTES, "Expected %s bytes, got %s", BYTES, bytes.length);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Preconditions.checkArgument(buffer.getShort() == MAGIC, "Not a VL53L0X calibration");
+        byte version = buffer.get();
+        Preconditions.checkArgument(version == VERSION, "Unsupported calibration version: %s", version);
+        short stopVariable = (short) Byte.toUnsignedInt(buffer.get());
+        int spadInfo = Byte.toUnsignedInt(buffer.get());
+        byte[] refSpadMap = new byte[SPAD_MAP_BYTES];
+        buffer.get(refSpadMap);
+        short vhvSettings = (short) Byte.toUnsignedInt(buffer.get());
+        short phaseCal = (short) Byte.toUnsignedInt(buffer.get());
+        Preconditions.checkArgument(buffer.getInt() == (int) checksum(bytes), "Calibration checksum mismatch");
+        return new Vl53l0xCalibration(stopVariable, (short) (spadInfo & 0x7F), (spadInfo & 0x80) != 0, refSpadMap,
+                vhvSettings, phaseCal);
+    }
+
+    public static Vl53l0xCalibration load(Path file) throws IOException {
+        return fromBytes(Files.readAllBytes(file));
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, BYTES - Integer.BYTES);
+        return crc.getValue();
+    }
+
+    private final short stopVariable;
+    private final short spadCount;
+    private final boolean spadIsAperture;
+    private final byte[] refSpadMap;
+    private final short vhvSettings;
+    private final short phaseCal;
+
+    Vl53l0xCalibration(short stopVariable, short spadCount, boolean spadIsAperture, byte[] refSpadMap,
+                       short vhvSettings, short phaseCal) {
+        Preconditions.checkArgument(refSpadMap.length == SPAD_MAP_BYTES, "refSpadMap must be %s bytes",
+                SPAD_MAP_BYTES);
+        this.stopVariable = stopVariable;
+        this.spadCount = spadCount;
+        this.spadIsAperture = spadIsAperture;
+        this.refSpadMap = refSpadMap.clone();
+        this.vhvSettings = vhvSettings;
+        this.phaseCal = phaseCal;
+    }
+
+    public short getStopVariable() {
+        return stopVariable;
+    }
+
+    public short getSpadCount() {
+        return spadCount;
+    }
+
+    public boolean isSpadAperture() {
+        return spadIsAperture;
+    }
+
+    /**
+     * @return the reference SPADs enabled, one bit each
+     */
+    public byte[] getRefSpadMap() {
+        return refSpadMap.clone();
+    }
+
+    public short getVhvSettings() {
+        return vhvSettings;
+    }
+
+    public short getPhaseCal() {
+        return phaseCal;
+    }
+
+    /**
+     * @return the calibration in {@link #BYTES} bytes, with a checksum
+     */
+    public byte[] toBytes() {
+        byte[] bytes = new byte[BYTES];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.putShort(MAGIC);
+        buffer.put(VERSION);
+        buffer.put((byte) stopVariable);
+        buffer.put((byte) ((spadIsAperture ? 0x80 : 0) | (spadCount & 0x7F)));
+        buffer.put(refSpadMap);
+        buffer.put((byte) vhvSettings);
+        buffer.put((byte) phaseCal);
+        buffer.putInt((int) checksum(bytes));
+        return bytes;
+    }
+
+    public void save(Path file) throws IOException {
+        Files.write(file, toBytes());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Vl53l0xCalibration)) {
+            return false;
+        }
+        Vl53l0xCalibration that = (Vl53l0xCalibration) o;
+        return stopVariable == that.stopVariable
+                && spadCount == that.spadCount
+                && spadIsAperture == that.spadIsAperture
+                && Arrays.equals(refSpadMap, that.refSpadMap)
+                && vhvSettings == that.vhvSettings
+                && phaseCal == that.phaseCal;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toBytes());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder map = new StringBuilder();
+        for (byte b : refSpadMap) {
+            map.append(String.format("%02X", b));
+        }
+        return "Vl53l0xCalibration{stopVariable=" + stopVariable
+                + ", spadCount=" + spadCount
+                + ", spadIsAperture=" + spadIsAperture
+                + ", refSpadMap=" + map
+                + ", vhvSettings=" + vhvSettings
+                + ", phaseCal=" + phaseCal
+                + "}";
+    }
+}
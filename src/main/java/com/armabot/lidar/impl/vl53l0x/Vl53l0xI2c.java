@@ -21,14 +21,27 @@
 package com.armabot.lidar.impl.vl53l0x;
 
 import com.armabot.lidar.api.Error;
+import com.armabot.lidar.api.InterruptMode;
 import com.armabot.lidar.api.Vl53l0x;
+import com.armabot.lidar.arcompat.BoundRegisters;
+import com.armabot.lidar.arcompat.HalI2cTransport;
+import com.armabot.lidar.arcompat.I2cTransport;
+import com.armabot.lidar.arcompat.InterruptLine;
 import com.armabot.lidar.arcompat.PololuI2c;
 import com.armabot.lidar.arcompat.Port;
 import com.armabot.lidar.arcompat.Register;
+import com.armabot.lidar.arcompat.RegisterScript;
+import com.armabot.lidar.arcompat.Wire;
+import com.armabot.lidar.impl.SingleShot;
+import com.armabot.lidar.trace.Tracer;
 import com.armabot.lidar.util.Preconditions;
+import com.armabot.lidar.util.WaitStrategy;
 
+import java.util.EnumSet;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static com.armabot.lidar.impl.vl53l0x.Calculations.calcMacroPeriod;
@@ -49,11 +62,13 @@ import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.PRE_RANGE_CONFIG_VALID_P
 import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.PRE_RANGE_CONFIG_VALID_PHASE_LOW;
 import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.PRE_RANGE_CONFIG_VCSEL_PERIOD;
 import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.RESULT_INTERRUPT_STATUS;
-import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.RESULT_RANGE_STATUS;
 import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.SYSRANGE_START;
 import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.SYSTEM_INTERMEASUREMENT_PERIOD;
 import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.SYSTEM_INTERRUPT_CLEAR;
+import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.SYSTEM_INTERRUPT_CONFIG_GPIO;
 import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.SYSTEM_SEQUENCE_CONFIG;
+import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.SYSTEM_THRESH_HIGH;
+import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.SYSTEM_THRESH_LOW;
 import static com.armabot.lidar.util.Preconditions.checkArgument;
 import static com.armabot.lidar.util.Preconditions.checkState;
 
@@ -65,15 +80,70 @@ import static com.armabot.lidar.util.Preconditions.checkState;
 // The original library is licensed under the terms in LICENSE-vl53l0x.txt
 public class Vl53l0xI2c implements Vl53l0x {
 
+    // the interrupt status, then the 12 byte result block
+    private static final int RESULT_BURST_LENGTH = 13;
+
+    // Configuration registers that only change when we write them
+    private static final Set<Vl53l0xReg> SHADOWED_REGISTERS = EnumSet.of(
+            SYSTEM_SEQUENCE_CONFIG,
+            MSRC_CONFIG_TIMEOUT_MACROP,
+            PRE_RANGE_CONFIG_VCSEL_PERIOD,
+            PRE_RANGE_CONFIG_TIMEOUT_MACROP_HI,
+            FINAL_RANGE_CONFIG_VCSEL_PERIOD,
+            FINAL_RANGE_CONFIG_TIMEOUT_MACROP_HI,
+            FINAL_RANGE_CONFIG_MIN_COUNT_RATE_RTN_LIMIT,
+            OSC_CALIBRATE_VAL
+    );
+
     private final PololuI2c i2c;
+    private final BoundRegisters<Vl53l0xReg> registers;
+    private final RangingData results = new RangingData();
+    private final WaitStrategy wait = WaitStrategy.create();
+    private final SingleShot<Integer> rangeSingle = new SingleShot<Integer>() {
+        @Override
+        protected void start() {
+            startRangeSingle();
+        }
+
+        @Override
+        protected boolean isReady() {
+            return isRangeSingleReady();
+        }
+
+        @Override
+        protected boolean isTimedOut() {
+            return currentlyTimedOut();
+        }
+
+        @Override
+        protected Integer finish() {
+            return readRangeContinuousMillimeters();
+        }
+
+        @Override
+        protected Integer timedOut() {
+            setTimeoutFlag();
+            return 65535;
+        }
+    };
+    private InterruptMode interruptMode = InterruptMode.NEW_SAMPLE_READY;
+    // null when polling the status register
+    private InterruptLine interruptLine;
     private long timeout;
     private long timeoutStart;
     private boolean didTimeout;
     short stopVariable;
+    // null until initialized
+    Vl53l0xCalibration calibration;
     long measurementTimingBudgetMicrosec;
 
     public Vl53l0xI2c(Port port) {
-        this.i2c = PololuI2c.create(port, PololuI2c.Addressing.EIGHT_BIT);
+        this(port, HalI2cTransport.INSTANCE);
+    }
+
+    public Vl53l0xI2c(Port port, I2cTransport transport) {
+        this.i2c = PololuI2c.create(port, transport, PololuI2c.Addressing.EIGHT_BIT);
+        this.registers = BoundRegisters.bind(Vl53l0xReg.class, i2c, SHADOWED_REGISTERS);
         i2c.setAddress(Vl53l0x.DEFAULT_ADDRESS);
     }
 
@@ -92,13 +162,42 @@ public class Vl53l0xI2c implements Vl53l0x {
         if (address == getAddress()) {
             return;
         }
-        Vl53l0xReg.I2C_SLAVE_DEVICE_ADDRESS.on(i2c).write((byte) (address & 0x7F));
+        reg(Vl53l0xReg.I2C_SLAVE_DEVICE_ADDRESS).write((byte) (address & 0x7F));
         i2c.setAddress(address);
     }
 
     @Override
     public Optional<Error<?>> initialize() {
-        return new Vl53l0xInit(this).initialize();
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            registers.invalidateShadows();
+            interruptMode = InterruptMode.NEW_SAMPLE_READY;
+            this.calibration = null;
+            return new Vl53l0xInit(this).initialize();
+        } finally {
+            tracer.end(span, "Vl53l0x.initialize");
+        }
+    }
+
+    @Override
+    public Optional<Error<?>> initialize(Vl53l0xCalibration calibration) {
+        Objects.requireNonNull(calibration, "calibration");
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            registers.invalidateShadows();
+            interruptMode = InterruptMode.NEW_SAMPLE_READY;
+            this.calibration = null;
+            return new Vl53l0xInit(this).initialize(calibration);
+        } finally {
+            tracer.end(span, "Vl53l0x.initialize");
+        }
+    }
+
+    @Override
+    public Optional<Vl53l0xCalibration> getCalibration() {
+        return Optional.ofNullable(calibration);
     }
 
     @Override
@@ -106,19 +205,52 @@ public class Vl53l0xI2c implements Vl53l0x {
         return i2c;
     }
 
+    Register.Bound reg(Vl53l0xReg register) {
+        return registers.get(register);
+    }
+
+    /**
+     * @return the strategy used to wait for the sensor, and its poll counters
+     */
+    public WaitStrategy getWaitStrategy() {
+        return wait;
+    }
+
+    boolean runScript(RegisterScript script) {
+        return registers.run(script);
+    }
+
+    /**
+     * @return if configuration registers are shadowed in memory
+     */
+    public boolean isShadowingEnabled() {
+        return registers.isShadowingEnabled();
+    }
+
+    /**
+     * Sets whether configuration registers are shadowed in memory. When
+     * enabled, writes to them go through to the sensor, but reading them back
+     * is served from memory. This saves bus reads in methods like
+     * {@link #setMeasurementTimingBudget(long)} and {@link #startContinuous(long)}.
+     * The shadows are dropped on {@link #initialize()}.
+     */
+    public void setShadowingEnabled(boolean enabled) {
+        registers.setShadowingEnabled(enabled);
+    }
+
     @Override
     public void setSignalRateLimit(float limitMpcs) {
         checkState(0 <= limitMpcs && limitMpcs <= 511.99, "limitMpcs out of range");
 
         // Q9.7 fixed point format (9 integer bits, 7 fractional bits)
-        FINAL_RANGE_CONFIG_MIN_COUNT_RATE_RTN_LIMIT.on(i2c).write16Bit(
+        reg(FINAL_RANGE_CONFIG_MIN_COUNT_RATE_RTN_LIMIT).write16Bit(
                 (int) (limitMpcs * (1 << 7))
         );
     }
 
     @Override
     public float getSignalRateLimit() {
-        return ((float) FINAL_RANGE_CONFIG_MIN_COUNT_RATE_RTN_LIMIT.on(i2c).read16Bit()) / (1 << 7);
+        return ((float) reg(FINAL_RANGE_CONFIG_MIN_COUNT_RATE_RTN_LIMIT).read16Bit()) / (1 << 7);
     }
 
     private static final int StartOverhead = 1910;
@@ -127,9 +259,9 @@ public class Vl53l0xI2c implements Vl53l0x {
     private static final int TccOverhead = 590;
     private static final int DssOverhead = 690;
     private static final int PreRangeOverhead = 660;
-    private static final int FinalRangeOverhead = 550;
+    static final int FinalRangeOverhead = 550;
 
-    private long initializeBudgetValue(SequenceStepEnables enables, SequenceStepTimeouts timeouts) {
+    static long initializeBudgetValue(SequenceStepEnables enables, SequenceStepTimeouts timeouts) {
         long microsec = StartOverhead + EndOverhead;
 
         if (enables.tcc) {
@@ -187,12 +319,13 @@ public class Vl53l0xI2c implements Vl53l0x {
                 finalRangeTimeoutMclks += timeouts.preRangeMclks;
             }
 
-            FINAL_RANGE_CONFIG_TIMEOUT_MACROP_HI.on(i2c)
+            reg(FINAL_RANGE_CONFIG_TIMEOUT_MACROP_HI)
                     .write16Bit(encodeTimeout(finalRangeTimeoutMclks));
 
             // set_sequence_step_timeout() end
 
             measurementTimingBudgetMicrosec = budgetMicrosec; // store for internal reuse
+            wait.tune(budgetMicrosec, TimeUnit.MICROSECONDS);
         }
     }
 
@@ -207,6 +340,7 @@ public class Vl53l0xI2c implements Vl53l0x {
         }
 
         measurementTimingBudgetMicrosec = budgetMicrosec; // store for internal reuse
+        wait.tune(budgetMicrosec, TimeUnit.MICROSECONDS);
         return budgetMicrosec;
     }
 
@@ -222,28 +356,28 @@ public class Vl53l0xI2c implements Vl53l0x {
                 // "Set phase check limits"
                 switch (periodPclks) {
                     case 12:
-                        PRE_RANGE_CONFIG_VALID_PHASE_HIGH.on(i2c).write((short) 0x18);
+                        reg(PRE_RANGE_CONFIG_VALID_PHASE_HIGH).write((short) 0x18);
                         break;
 
                     case 14:
-                        PRE_RANGE_CONFIG_VALID_PHASE_HIGH.on(i2c).write((short) 0x30);
+                        reg(PRE_RANGE_CONFIG_VALID_PHASE_HIGH).write((short) 0x30);
                         break;
 
                     case 16:
-                        PRE_RANGE_CONFIG_VALID_PHASE_HIGH.on(i2c).write((short) 0x40);
+                        reg(PRE_RANGE_CONFIG_VALID_PHASE_HIGH).write((short) 0x40);
                         break;
 
                     case 18:
-                        PRE_RANGE_CONFIG_VALID_PHASE_HIGH.on(i2c).write((short) 0x50);
+                        reg(PRE_RANGE_CONFIG_VALID_PHASE_HIGH).write((short) 0x50);
                         break;
 
                     default:
                         throw new IllegalArgumentException("Invalid period: " + periodPclks);
                 }
-                PRE_RANGE_CONFIG_VALID_PHASE_LOW.on(i2c).write((short) 0x08);
+                reg(PRE_RANGE_CONFIG_VALID_PHASE_LOW).write((short) 0x08);
 
                 // apply new VCSEL period
-                PRE_RANGE_CONFIG_VCSEL_PERIOD.on(i2c).write(vcselPeriodReg);
+                reg(PRE_RANGE_CONFIG_VCSEL_PERIOD).write(vcselPeriodReg);
 
                 // update timeouts
 
@@ -253,7 +387,7 @@ public class Vl53l0xI2c implements Vl53l0x {
                 long newPreRangeTimeoutMclks =
                         timeoutMicrosecondsToMclks(timeouts.preRangeMicrosec, periodPclks);
 
-                PRE_RANGE_CONFIG_TIMEOUT_MACROP_HI.on(i2c)
+                reg(PRE_RANGE_CONFIG_TIMEOUT_MACROP_HI)
                         .write16Bit(encodeTimeout(newPreRangeTimeoutMclks));
 
                 // set_sequence_step_timeout() end
@@ -264,7 +398,7 @@ public class Vl53l0xI2c implements Vl53l0x {
                 long newMsrcTimeoutMclks =
                         timeoutMicrosecondsToMclks(timeouts.msrcDssTccMicrosec, periodPclks);
 
-                MSRC_CONFIG_TIMEOUT_MACROP.on(i2c)
+                reg(MSRC_CONFIG_TIMEOUT_MACROP)
                         .write((short) ((newMsrcTimeoutMclks > 256) ? 255 : (newMsrcTimeoutMclks - 1)));
 
                 // set_sequence_step_timeout() end
@@ -272,42 +406,42 @@ public class Vl53l0xI2c implements Vl53l0x {
             case VCSEL_PERIOD_FINAL_RANGE:
                 switch (periodPclks) {
                     case 8:
-                        FINAL_RANGE_CONFIG_VALID_PHASE_HIGH.on(i2c).write((short) 0x10);
-                        FINAL_RANGE_CONFIG_VALID_PHASE_LOW.on(i2c).write((short) 0x08);
-                        GLOBAL_CONFIG_VCSEL_WIDTH.on(i2c).write((short) 0x02);
-                        ALGO_PHASECAL_CONFIG_TIMEOUT.on(i2c).write((short) 0x0C);
+                        reg(FINAL_RANGE_CONFIG_VALID_PHASE_HIGH).write((short) 0x10);
+                        reg(FINAL_RANGE_CONFIG_VALID_PHASE_LOW).write((short) 0x08);
+                        reg(GLOBAL_CONFIG_VCSEL_WIDTH).write((short) 0x02);
+                        reg(ALGO_PHASECAL_CONFIG_TIMEOUT).write((short) 0x0C);
                         i2c.writeReg((short) 0xFF, (short) 0x01);
-                        ALGO_PHASECAL_LIM.on(i2c).write((short) 0x30);
+                        reg(ALGO_PHASECAL_LIM).write((short) 0x30);
                         i2c.writeReg((short) 0xFF, (short) 0x00);
                         break;
 
                     case 10:
-                        FINAL_RANGE_CONFIG_VALID_PHASE_HIGH.on(i2c).write((short) 0x28);
-                        FINAL_RANGE_CONFIG_VALID_PHASE_LOW.on(i2c).write((short) 0x08);
-                        GLOBAL_CONFIG_VCSEL_WIDTH.on(i2c).write((short) 0x03);
-                        ALGO_PHASECAL_CONFIG_TIMEOUT.on(i2c).write((short) 0x09);
+                        reg(FINAL_RANGE_CONFIG_VALID_PHASE_HIGH).write((short) 0x28);
+                        reg(FINAL_RANGE_CONFIG_VALID_PHASE_LOW).write((short) 0x08);
+                        reg(GLOBAL_CONFIG_VCSEL_WIDTH).write((short) 0x03);
+                        reg(ALGO_PHASECAL_CONFIG_TIMEOUT).write((short) 0x09);
                         i2c.writeReg((short) 0xFF, (short) 0x01);
-                        ALGO_PHASECAL_LIM.on(i2c).write((short) 0x20);
+                        reg(ALGO_PHASECAL_LIM).write((short) 0x20);
                         i2c.writeReg((short) 0xFF, (short) 0x00);
                         break;
 
                     case 12:
-                        FINAL_RANGE_CONFIG_VALID_PHASE_HIGH.on(i2c).write((short) 0x38);
-                        FINAL_RANGE_CONFIG_VALID_PHASE_LOW.on(i2c).write((short) 0x08);
-                        GLOBAL_CONFIG_VCSEL_WIDTH.on(i2c).write((short) 0x03);
-                        ALGO_PHASECAL_CONFIG_TIMEOUT.on(i2c).write((short) 0x08);
+                        reg(FINAL_RANGE_CONFIG_VALID_PHASE_HIGH).write((short) 0x38);
+                        reg(FINAL_RANGE_CONFIG_VALID_PHASE_LOW).write((short) 0x08);
+                        reg(GLOBAL_CONFIG_VCSEL_WIDTH).write((short) 0x03);
+                        reg(ALGO_PHASECAL_CONFIG_TIMEOUT).write((short) 0x08);
                         i2c.writeReg((short) 0xFF, (short) 0x01);
-                        ALGO_PHASECAL_LIM.on(i2c).write((short) 0x20);
+                        reg(ALGO_PHASECAL_LIM).write((short) 0x20);
                         i2c.writeReg((short) 0xFF, (short) 0x00);
                         break;
 
                     case 14:
-                        FINAL_RANGE_CONFIG_VALID_PHASE_HIGH.on(i2c).write((short) 0x48);
-                        FINAL_RANGE_CONFIG_VALID_PHASE_LOW.on(i2c).write((short) 0x08);
-                        GLOBAL_CONFIG_VCSEL_WIDTH.on(i2c).write((short) 0x03);
-                        ALGO_PHASECAL_CONFIG_TIMEOUT.on(i2c).write((short) 0x07);
+                        reg(FINAL_RANGE_CONFIG_VALID_PHASE_HIGH).write((short) 0x48);
+                        reg(FINAL_RANGE_CONFIG_VALID_PHASE_LOW).write((short) 0x08);
+                        reg(GLOBAL_CONFIG_VCSEL_WIDTH).write((short) 0x03);
+                        reg(ALGO_PHASECAL_CONFIG_TIMEOUT).write((short) 0x07);
                         i2c.writeReg((short) 0xFF, (short) 0x01);
-                        ALGO_PHASECAL_LIM.on(i2c).write((short) 0x20);
+                        reg(ALGO_PHASECAL_LIM).write((short) 0x20);
                         i2c.writeReg((short) 0xFF, (short) 0x00);
                         break;
 
@@ -316,7 +450,7 @@ public class Vl53l0xI2c implements Vl53l0x {
                 }
 
                 // apply new VCSEL period
-                FINAL_RANGE_CONFIG_VCSEL_PERIOD.on(i2c).write(vcselPeriodReg);
+                reg(FINAL_RANGE_CONFIG_VCSEL_PERIOD).write(vcselPeriodReg);
 
                 // update timeouts
 
@@ -335,7 +469,7 @@ public class Vl53l0xI2c implements Vl53l0x {
                     timeoutMicrosecondsToMclks += timeouts.preRangeMclks;
                 }
 
-                FINAL_RANGE_CONFIG_TIMEOUT_MACROP_HI.on(i2c)
+                reg(FINAL_RANGE_CONFIG_TIMEOUT_MACROP_HI)
                         .write16Bit(encodeTimeout(timeoutMicrosecondsToMclks));
 
                 // set_sequence_step_timeout end
@@ -352,17 +486,17 @@ public class Vl53l0xI2c implements Vl53l0x {
         // "Perform the phase calibration. This is needed after changing on vcsel period."
         // VL53L0X_perform_phase_calibration() begin
 
-        short sequence_config = SYSTEM_SEQUENCE_CONFIG.on(i2c).read();
-        SYSTEM_SEQUENCE_CONFIG.on(i2c).write((short) 0x02);
+        short sequence_config = reg(SYSTEM_SEQUENCE_CONFIG).read();
+        reg(SYSTEM_SEQUENCE_CONFIG).write((short) 0x02);
         performSingleRefCalibration((short) 0x0);
-        SYSTEM_SEQUENCE_CONFIG.on(i2c).write(sequence_config);
+        reg(SYSTEM_SEQUENCE_CONFIG).write(sequence_config);
 
         // VL53L0X_perform_phase_calibration() end
     }
 
     @Override
     public short getVcselPulsePeriod(VcselPeriodType type) {
-        Register reg;
+        Vl53l0xReg reg;
         switch (type) {
             case VCSEL_PERIOD_PRE_RANGE:
                 reg = PRE_RANGE_CONFIG_VCSEL_PERIOD;
@@ -373,7 +507,7 @@ public class Vl53l0xI2c implements Vl53l0x {
             default:
                 throw new IllegalStateException("Invalid type: " + type);
         }
-        return decodeVcselPeriod(reg.on(i2c).read());
+        return decodeVcselPeriod(reg(reg).read());
     }
 
     @Override
@@ -391,26 +525,26 @@ public class Vl53l0xI2c implements Vl53l0x {
 
             // VL53L0X_SetInterMeasurementPeriodMilliSeconds() begin
 
-            int oscCalibrateVal = OSC_CALIBRATE_VAL.on(i2c).read16Bit();
+            int oscCalibrateVal = reg(OSC_CALIBRATE_VAL).read16Bit();
 
             if (oscCalibrateVal != 0) {
                 periodMilli *= oscCalibrateVal;
             }
 
-            SYSTEM_INTERMEASUREMENT_PERIOD.on(i2c).write32Bit(periodMilli);
+            reg(SYSTEM_INTERMEASUREMENT_PERIOD).write32Bit(periodMilli);
 
             // VL53L0X_SetInterMeasurementPeriodMilliSeconds() end
 
-            SYSRANGE_START.on(i2c).write((short) 0x04); // VL53L0X_REG_SYSRANGE_MODE_TIMED
+            reg(SYSRANGE_START).write((short) 0x04); // VL53L0X_REG_SYSRANGE_MODE_TIMED
         } else {
             // continuous back-to-back mode
-            SYSRANGE_START.on(i2c).write((short) 0x02); // VL53L0X_REG_SYSRANGE_MODE_BACKTOBACK
+            reg(SYSRANGE_START).write((short) 0x02); // VL53L0X_REG_SYSRANGE_MODE_BACKTOBACK
         }
     }
 
     @Override
     public void stopContinuous() {
-        SYSRANGE_START.on(i2c).write((short) 0x01); // VL53L0X_REG_SYSRANGE_MODE_SINGLESHOT
+        reg(SYSRANGE_START).write((short) 0x01); // VL53L0X_REG_SYSRANGE_MODE_SINGLESHOT
 
         i2c.writeReg((short) 0xFF, (short) 0x01);
         i2c.writeReg((short) 0x00, (short) 0x00);
@@ -421,23 +555,204 @@ public class Vl53l0xI2c implements Vl53l0x {
 
     @Override
     public boolean dataReady() {
-        return (RESULT_INTERRUPT_STATUS.on(i2c).read() & 0x07) == 0;
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            InterruptLine line = interruptLine;
+            if (line != null) {
+                // GPIO1 is set up as active low
+                return !line.get();
+            }
+            return (reg(RESULT_INTERRUPT_STATUS).read() & 0x07) != 0;
+        } finally {
+            tracer.end(span, "Vl53l0x.dataReady");
+        }
+    }
+
+    @Override
+    public boolean awaitDataReady(long timeout, TimeUnit unit) {
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            InterruptLine line = interruptLine;
+            if (line != null) {
+                return line.await(false, timeout, unit);
+            }
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            wait.begin();
+            while (!dataReady()) {
+                if (System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                wait.idle();
+            }
+            return true;
+        } finally {
+            tracer.end(span, "Vl53l0x.awaitDataReady");
+        }
+    }
+
+    @Override
+    public void setInterruptLine(InterruptLine line) {
+        this.interruptLine = Objects.requireNonNull(line, "line");
+    }
+
+    @Override
+    public void clearInterruptLine() {
+        this.interruptLine = null;
+    }
+
+    @Override
+    public void setInterruptMode(InterruptMode mode, int lowMillimeters, int highMillimeters) {
+        // from VL53L0X_SetGpioConfig() and VL53L0X_SetInterruptThresholds()
+        short config;
+        switch (mode) {
+            case NEW_SAMPLE_READY:
+                config = 0x04;
+                break;
+            case LEVEL_LOW:
+                config = 0x01;
+                break;
+            case LEVEL_HIGH:
+                config = 0x02;
+                break;
+            case OUT_OF_WINDOW:
+                config = 0x03;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported mode: " + mode);
+        }
+        if (mode != InterruptMode.NEW_SAMPLE_READY) {
+            checkArgument(0 <= lowMillimeters && lowMillimeters <= highMillimeters && highMillimeters <= 0x1FFE,
+                    "thresholds out of range");
+            // 12-bit thresholds, in units of 2 mm
+            reg(SYSTEM_THRESH_LOW).write16Bit((lowMillimeters >> 1) & 0xFFF);
+            reg(SYSTEM_THRESH_HIGH).write16Bit((highMillimeters >> 1) & 0xFFF);
+        }
+        reg(SYSTEM_INTERRUPT_CONFIG_GPIO).write(config);
+        reg(SYSTEM_INTERRUPT_CLEAR).write((short) 0x01);
+        interruptMode = mode;
+    }
+
+    @Override
+    public InterruptMode getInterruptMode() {
+        return interruptMode;
     }
 
     @Override
     public int readRangeContinuousMillimeters() {
-        checkState(dataReady(), "Data not ready, check dataReady() first.");
-        // assumptions: Linearity Corrective Gain is 1000 (default);
-        // fractional ranging is not enabled
-        int range = i2c.readReg16Bit((short) (RESULT_RANGE_STATUS.address() + 10));
+        checkState(readResultsIfReady(), "Data not ready, check dataReady() first.");
+        return results.rangeMillimeters;
+    }
 
-        SYSTEM_INTERRUPT_CLEAR.on(i2c).write((short) 0x01);
+    @Override
+    public void readRangeContinuous(RangingData data) {
+        checkState(readRangeContinuousIfReady(data), "Data not ready, check dataReady() first.");
+    }
 
-        return range;
+    @Override
+    public boolean readRangeContinuousIfReady(RangingData data) {
+        if (!readResultsIfReady()) {
+            return false;
+        }
+        data.rangeMillimeters = results.rangeMillimeters;
+        data.rangeStatus = results.rangeStatus;
+        data.signalRateMcps = results.signalRateMcps;
+        data.ambientRateMcps = results.ambientRateMcps;
+        data.effectiveSpadCount = results.effectiveSpadCount;
+        data.timestampNanos = results.timestampNanos;
+        return true;
+    }
+
+    /**
+     * Read the interrupt status and the result block in one burst, and if
+     * there was a measurement, clear the interrupt.
+     *
+     * @return if there was a measurement
+     */
+    private boolean readResultsIfReady() {
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            InterruptLine line = interruptLine;
+            if (line != null && line.get()) {
+                return false;
+            }
+            Wire wire = i2c.getWire();
+
+            i2c.requestRegValue(RESULT_INTERRUPT_STATUS.address(), RESULT_BURST_LENGTH);
+            long timestamp = System.nanoTime();
+
+            if ((wire.read() & 0x07) == 0) {
+                return false;
+            }
+
+            // the result block, as read by VL53L0X_GetRangingMeasurementData()
+            results.rangeStatus = RangeStatus.fromDeviceRangeStatus((wire.read() & 0x78) >> 3);
+            // unused
+            wire.read();
+            // 8.8 fixed point
+            results.effectiveSpadCount = wire.readShort() / (float) (1 << 8);
+            // unused
+            wire.readShort();
+            // 9.7 fixed point
+            results.signalRateMcps = wire.readShort() / (float) (1 << 7);
+            results.ambientRateMcps = wire.readShort() / (float) (1 << 7);
+            // assumptions: Linearity Corrective Gain is 1000 (default);
+            // fractional ranging is not enabled
+            results.rangeMillimeters = wire.readShort();
+            results.timestampNanos = timestamp;
+
+            reg(SYSTEM_INTERRUPT_CLEAR).write((short) 0x01);
+
+            return true;
+        } finally {
+            tracer.end(span, "Vl53l0x.readResults");
+        }
     }
 
     @Override
     public int readRangeSingleMillimeters() {
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            startRangeSingle();
+
+            // "Wait until start bit has been cleared"
+            wait.begin();
+            while ((reg(SYSRANGE_START).read() & 0x01) != 0) {
+                if (currentlyTimedOut()) {
+                    setTimeoutFlag();
+                    return 65535;
+                }
+                wait.idle();
+            }
+            startTimeout();
+            wait.begin();
+            while (!dataReady()) {
+                if (currentlyTimedOut()) {
+                    setTimeoutFlag();
+                    return 65535;
+                }
+                wait.idle();
+            }
+
+            return readRangeContinuousMillimeters();
+        } finally {
+            tracer.end(span, "Vl53l0x.readRangeSingleMillimeters");
+        }
+    }
+
+    @Override
+    public CompletableFuture<Integer> readRangeSingleMillimetersAsync() {
+        return rangeSingle.submit(i2c.getWire().getBus().getExecutor(),
+                measurementTimingBudgetMicrosec, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Start a single-shot measurement, and its timeout.
+     */
+    void startRangeSingle() {
         i2c.writeReg((short) 0x80, (short) 0x01);
         i2c.writeReg((short) 0xFF, (short) 0x01);
         i2c.writeReg((short) 0x00, (short) 0x00);
@@ -446,25 +761,17 @@ public class Vl53l0xI2c implements Vl53l0x {
         i2c.writeReg((short) 0xFF, (short) 0x00);
         i2c.writeReg((short) 0x80, (short) 0x00);
 
-        SYSRANGE_START.on(i2c).write((short) 0x01);
-
-        // "Wait until start bit has been cleared"
+        reg(SYSRANGE_START).write((short) 0x01);
         startTimeout();
-        while ((SYSRANGE_START.on(i2c).read() & 0x01) != 0) {
-            if (currentlyTimedOut()) {
-                setTimeoutFlag();
-                return 65535;
-            }
-        }
-        startTimeout();
-        while (!dataReady()) {
-            if (currentlyTimedOut()) {
-                setTimeoutFlag();
-                return 65535;
-            }
-        }
+    }
 
-        return readRangeContinuousMillimeters();
+    /**
+     * @return if the single-shot measurement started by {@link #startRangeSingle()}
+     * is ready to be read
+     */
+    boolean isRangeSingleReady() {
+        // the start bit is cleared before data is ready, so only check it then
+        return dataReady() && (reg(SYSRANGE_START).read() & 0x01) == 0;
     }
 
     @Override
@@ -488,47 +795,55 @@ public class Vl53l0xI2c implements Vl53l0x {
 
 
     Optional<SpadInfo> getSpadInfo() {
-        short tmp;
-
-        i2c.writeReg((short) 0x80, (short) 0x01);
-        i2c.writeReg((short) 0xFF, (short) 0x01);
-        i2c.writeReg((short) 0x00, (short) 0x00);
-
-        i2c.writeReg((short) 0xFF, (short) 0x06);
-        i2c.writeReg((short) 0x83, (short) (i2c.readReg((short) 0x83) | 0x04));
-        i2c.writeReg((short) 0xFF, (short) 0x07);
-        i2c.writeReg((short) 0x81, (short) 0x01);
-
-        i2c.writeReg((short) 0x80, (short) 0x01);
-
-        i2c.writeReg((short) 0x94, (short) 0x6b);
-        i2c.writeReg((short) 0x83, (short) 0x00);
-        startTimeout();
-        while (i2c.readReg((short) 0x83) == 0x00) {
-            if (currentlyTimedOut()) {
-                setTimeoutFlag();
-                return Optional.empty();
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            short tmp;
+
+            i2c.writeReg((short) 0x80, (short) 0x01);
+            i2c.writeReg((short) 0xFF, (short) 0x01);
+            i2c.writeReg((short) 0x00, (short) 0x00);
+
+            i2c.writeReg((short) 0xFF, (short) 0x06);
+            i2c.writeReg((short) 0x83, (short) (i2c.readReg((short) 0x83) | 0x04));
+            i2c.writeReg((short) 0xFF, (short) 0x07);
+            i2c.writeReg((short) 0x81, (short) 0x01);
+
+            i2c.writeReg((short) 0x80, (short) 0x01);
+
+            i2c.writeReg((short) 0x94, (short) 0x6b);
+            i2c.writeReg((short) 0x83, (short) 0x00);
+            startTimeout();
+            wait.begin();
+            while (i2c.readReg((short) 0x83) == 0x00) {
+                if (currentlyTimedOut()) {
+                    setTimeoutFlag();
+                    return Optional.empty();
+                }
+                wait.idle();
             }
-        }
-        i2c.writeReg((short) 0x83, (short) 0x01);
-        tmp = i2c.readReg((short) 0x92);
+            i2c.writeReg((short) 0x83, (short) 0x01);
+            tmp = i2c.readReg((short) 0x92);
 
-        SpadInfo spadInfo = new SpadInfo((short) (tmp & 0x7f), ((tmp >> 7) & 0x01) != 0);
+            SpadInfo spadInfo = new SpadInfo((short) (tmp & 0x7f), ((tmp >> 7) & 0x01) != 0);
 
-        i2c.writeReg((short) 0x81, (short) 0x00);
-        i2c.writeReg((short) 0xFF, (short) 0x06);
-        i2c.writeReg((short) 0x83, (short) (i2c.readReg((short) 0x83) & ~0x04));
-        i2c.writeReg((short) 0xFF, (short) 0x01);
-        i2c.writeReg((short) 0x00, (short) 0x01);
+            i2c.writeReg((short) 0x81, (short) 0x00);
+            i2c.writeReg((short) 0xFF, (short) 0x06);
+            i2c.writeReg((short) 0x83, (short) (i2c.readReg((short) 0x83) & ~0x04));
+            i2c.writeReg((short) 0xFF, (short) 0x01);
+            i2c.writeReg((short) 0x00, (short) 0x01);
 
-        i2c.writeReg((short) 0xFF, (short) 0x00);
-        i2c.writeReg((short) 0x80, (short) 0x00);
+            i2c.writeReg((short) 0xFF, (short) 0x00);
+            i2c.writeReg((short) 0x80, (short) 0x00);
 
-        return Optional.of(spadInfo);
+            return Optional.of(spadInfo);
+        } finally {
+            tracer.end(span, "Vl53l0x.getSpadInfo");
+        }
     }
 
     SequenceStepEnables getSequenceStepEnables() {
-        short sequence_config = SYSTEM_SEQUENCE_CONFIG.on(i2c).read();
+        short sequence_config = reg(SYSTEM_SEQUENCE_CONFIG).read();
 
         return new SequenceStepEnables(
                 ((sequence_config >> 4) & 0x1) != 0,
@@ -542,13 +857,13 @@ public class Vl53l0xI2c implements Vl53l0x {
     SequenceStepTimeouts getSequenceStepTimeouts(SequenceStepEnables enables) {
         short preRangeVcselPeriodPclks = getVcselPulsePeriod(VcselPeriodType.VCSEL_PERIOD_PRE_RANGE);
 
-        int msrcDssTccMclks = MSRC_CONFIG_TIMEOUT_MACROP.on(i2c).read() + 1;
+        int msrcDssTccMclks = reg(MSRC_CONFIG_TIMEOUT_MACROP).read() + 1;
         long msrcDssTccMicroseconds =
                 timeoutMclksToMicroseconds(msrcDssTccMclks,
                         preRangeVcselPeriodPclks);
 
         int preRangeMclks =
-                decodeTimeout(PRE_RANGE_CONFIG_TIMEOUT_MACROP_HI.on(i2c).read16Bit());
+                decodeTimeout(reg(PRE_RANGE_CONFIG_TIMEOUT_MACROP_HI).read16Bit());
         long preRangeMicroseconds =
                 timeoutMclksToMicroseconds(preRangeMclks,
                         preRangeVcselPeriodPclks);
@@ -556,7 +871,7 @@ public class Vl53l0xI2c implements Vl53l0x {
         short finalRangeVcselPeriodPclks = getVcselPulsePeriod(VcselPeriodType.VCSEL_PERIOD_FINAL_RANGE);
 
         int finalRangeMclks =
-                decodeTimeout(FINAL_RANGE_CONFIG_TIMEOUT_MACROP_HI.on(i2c).read16Bit());
+                decodeTimeout(reg(FINAL_RANGE_CONFIG_TIMEOUT_MACROP_HI).read16Bit());
 
         if (enables.preRange) {
             finalRangeMclks -= preRangeMclks;
@@ -574,21 +889,29 @@ public class Vl53l0xI2c implements Vl53l0x {
     }
 
     boolean performSingleRefCalibration(short vhvInitByte) {
-        SYSRANGE_START.on(i2c).write((short) (0x01 | vhvInitByte)); // VL53L0X_REG_SYSRANGE_MODE_START_STOP
-
-        startTimeout();
-        while ((RESULT_INTERRUPT_STATUS.on(i2c).read() & 0x07) == 0) {
-            if (currentlyTimedOut()) {
-                setTimeoutFlag();
-                return false;
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            reg(SYSRANGE_START).write((short) (0x01 | vhvInitByte)); // VL53L0X_REG_SYSRANGE_MODE_START_STOP
+
+            startTimeout();
+            wait.begin();
+            while ((reg(RESULT_INTERRUPT_STATUS).read() & 0x07) == 0) {
+                if (currentlyTimedOut()) {
+                    setTimeoutFlag();
+                    return false;
+                }
+                wait.idle();
             }
-        }
 
-        SYSTEM_INTERRUPT_CLEAR.on(i2c).write((short) 0x01);
+            reg(SYSTEM_INTERRUPT_CLEAR).write((short) 0x01);
 
-        SYSRANGE_START.on(i2c).write((short) 0x00);
+            reg(SYSRANGE_START).write((short) 0x00);
 
-        return true;
+            return true;
+        } finally {
+            tracer.end(span, "Vl53l0x.performSingleRefCalibration");
+        }
     }
 
     static int decodeTimeout(int value) {
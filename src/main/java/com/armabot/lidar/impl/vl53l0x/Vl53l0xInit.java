@@ -23,6 +23,7 @@ package com.armabot.lidar.impl.vl53l0x;
 import com.armabot.lidar.api.Error;
 import com.armabot.lidar.arcompat.PololuI2c;
 import com.armabot.lidar.arcompat.Register;
+import com.armabot.lidar.arcompat.RegisterScript;
 import com.armabot.lidar.impl.errors.IncorrectModelId;
 import com.armabot.lidar.impl.errors.Timeout;
 import com.armabot.lidar.impl.vl53l0x.errors.NoSpadInfo;
@@ -42,6 +43,107 @@ import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.VHV_CONFIG_PAD_SCL_SDA__
 
 class Vl53l0xInit {
     private static final int MODEL_ID = 0xEEAA;
+    // not named in the API, only used by VL53L0X_ref_calibration_io()
+    private static final short REF_CALIBRATION_VHV = 0xCB;
+    private static final short REF_CALIBRATION_PHASE = 0xEE;
+
+    // DefaultTuningSettings from vl53l0x_tuning.h
+    private static final RegisterScript TUNING_SETTINGS = RegisterScript.builder(PololuI2c.Addressing.EIGHT_BIT)
+            .select(0xFF, 0x01)
+            .write(0x00, 0x00)
+
+            .select(0xFF, 0x00)
+            .write(0x09, 0x00)
+            .write(0x10, 0x00)
+            .write(0x11, 0x00)
+
+            .write(0x24, 0x01)
+            .write(0x25, 0xFF)
+            .write(0x75, 0x00)
+
+            .select(0xFF, 0x01)
+            .write(0x4E, 0x2C)
+            .write(0x48, 0x00)
+            .write(0x30, 0x20)
+
+            .select(0xFF, 0x00)
+            .write(0x30, 0x09)
+            .write(0x54, 0x00)
+            .write(0x31, 0x04)
+            .write(0x32, 0x03)
+            .write(0x40, 0x83)
+            .write(0x46, 0x25)
+            .write(0x60, 0x00)
+            .write(0x27, 0x00)
+            .write(0x50, 0x06)
+            .write(0x51, 0x00)
+            .write(0x52, 0x96)
+            .write(0x56, 0x08)
+            .write(0x57, 0x30)
+            .write(0x61, 0x00)
+            .write(0x62, 0x00)
+            .write(0x64, 0x00)
+            .write(0x65, 0x00)
+            .write(0x66, 0xA0)
+
+            .select(0xFF, 0x01)
+            .write(0x22, 0x32)
+            .write(0x47, 0x14)
+            .write(0x49, 0xFF)
+            .write(0x4A, 0x00)
+
+            .select(0xFF, 0x00)
+            .write(0x7A, 0x0A)
+            .write(0x7B, 0x00)
+            .write(0x78, 0x21)
+
+            .select(0xFF, 0x01)
+            .write(0x23, 0x34)
+            .write(0x42, 0x00)
+            .write(0x44, 0xFF)
+            .write(0x45, 0x26)
+            .write(0x46, 0x05)
+            .write(0x40, 0x40)
+            .write(0x0E, 0x06)
+            .write(0x20, 0x1A)
+            .write(0x43, 0x40)
+
+            .select(0xFF, 0x00)
+            .write(0x34, 0x03)
+            .write(0x35, 0x44)
+
+            .select(0xFF, 0x01)
+            .write(0x31, 0x04)
+            .write(0x4B, 0x09)
+            .write(0x4C, 0x05)
+            .write(0x4D, 0x04)
+
+            .select(0xFF, 0x00)
+            .write(0x44, 0x00)
+            .write(0x45, 0x20)
+            .write(0x47, 0x08)
+            .write(0x48, 0x28)
+            .write(0x67, 0x00)
+            .write(0x70, 0x04)
+            .write(0x71, 0x01)
+            .write(0x72, 0xFE)
+            .write(0x76, 0x00)
+            .write(0x77, 0x00)
+
+            .select(0xFF, 0x01)
+            .write(0x0D, 0x01)
+
+            .select(0xFF, 0x00)
+            .select(0x80, 0x01)
+            .write(0x01, 0xF8)
+
+            .select(0xFF, 0x01)
+            .write(0x8E, 0x01)
+            .write(0x00, 0x01)
+            .select(0xFF, 0x00)
+            .select(0x80, 0x00)
+            .build();
+
     private final Vl53l0xI2c target;
     private final PololuI2c i2c;
 
@@ -51,72 +153,94 @@ class Vl53l0xInit {
     }
 
     Optional<Error<?>> initialize() {
+        return initialize(null);
+    }
+
+    /**
+     * Initialize with {@code saved} instead of finding the calibration again,
+     * or find it when {@code saved} is {@code null}.
+     */
+    Optional<Error<?>> initialize(Vl53l0xCalibration saved) {
         // no i2c validation for 0x
 //        int modelId = i2c.readReg16Bit((short) 0xC0);
 //        if (modelId != MODEL_ID) {
 //            return Optional.of(IncorrectModelId.of("VL53L0X", MODEL_ID, modelId));
 //        }
-        Register.Bound hv = VHV_CONFIG_PAD_SCL_SDA__EXTSUP_HV.on(i2c);
+        Register.Bound hv = target.reg(VHV_CONFIG_PAD_SCL_SDA__EXTSUP_HV);
         hv.write((short) (hv.read() | 0x01));
 
         // "Set I2C standard mode"
         i2c.writeReg((short) 0x88, (short) 0x00);
 
-        i2c.writeReg((short) 0x80, (short) 0x01);
-        i2c.writeReg((short) 0xFF, (short) 0x01);
-        i2c.writeReg((short) 0x00, (short) 0x00);
-        target.stopVariable = i2c.readReg((short) 0x91);
-        i2c.writeReg((short) 0x00, (short) 0x01);
-        i2c.writeReg((short) 0xFF, (short) 0x00);
-        i2c.writeReg((short) 0x80, (short) 0x00);
+        if (saved == null) {
+            i2c.writeReg((short) 0x80, (short) 0x01);
+            i2c.writeReg((short) 0xFF, (short) 0x01);
+            i2c.writeReg((short) 0x00, (short) 0x00);
+            target.stopVariable = i2c.readReg((short) 0x91);
+            i2c.writeReg((short) 0x00, (short) 0x01);
+            i2c.writeReg((short) 0xFF, (short) 0x00);
+            i2c.writeReg((short) 0x80, (short) 0x00);
+        } else {
+            target.stopVariable = saved.getStopVariable();
+        }
 
         // disable SIGNAL_RATE_MSRC (bit 1) and SIGNAL_RATE_PRE_RANGE (bit 4) limit checks
-        Register.Bound msrcConfigControl = MSRC_CONFIG_CONTROL.on(i2c);
+        Register.Bound msrcConfigControl = target.reg(MSRC_CONFIG_CONTROL);
         msrcConfigControl.write((short) (msrcConfigControl.read() | 0x12));
 
         // set final range signal rate limit to 0.25 MCPS (million counts per second)
         target.setSignalRateLimit(0.25f);
 
-        SYSTEM_SEQUENCE_CONFIG.on(i2c).write((short) 0xFF);
+        target.reg(SYSTEM_SEQUENCE_CONFIG).write((short) 0xFF);
 
         // VL53L0X_DataInit() end
 
         // VL53L0X_StaticInit() begin
 
-        Optional<SpadInfo> spadInfoOptional = target.getSpadInfo();
-        if (!spadInfoOptional.isPresent()) {
-            return Optional.of(NoSpadInfo.getInstance());
+        SpadInfo spadInfo;
+        byte[] ref_spad_map;
+        if (saved == null) {
+            Optional<SpadInfo> spadInfoOptional = target.getSpadInfo();
+            if (!spadInfoOptional.isPresent()) {
+                return Optional.of(NoSpadInfo.getInstance());
+            }
+            spadInfo = spadInfoOptional.get();
+
+            // The SPAD map (RefGoodSpadMap) is read by VL53L0X_get_info_from_device() in
+            // the API, but the same data seems to be more easily readable from
+            // GLOBAL_CONFIG_SPAD_ENABLES_REF_0 through _6, so read it from there
+            ref_spad_map = new byte[Vl53l0xCalibration.SPAD_MAP_BYTES];
+            target.reg(GLOBAL_CONFIG_SPAD_ENABLES_REF_0).readMulti(ref_spad_map);
+        } else {
+            spadInfo = new SpadInfo(saved.getSpadCount(), saved.isSpadAperture());
+            ref_spad_map = saved.getRefSpadMap();
         }
-        SpadInfo spadInfo = spadInfoOptional.get();
-
-        // The SPAD map (RefGoodSpadMap) is read by VL53L0X_get_info_from_device() in
-        // the API, but the same data seems to be more easily readable from
-        // GLOBAL_CONFIG_SPAD_ENABLES_REF_0 through _6, so read it from there
-        byte[] ref_spad_map = new byte[6];
-        GLOBAL_CONFIG_SPAD_ENABLES_REF_0.on(i2c).readMulti(ref_spad_map);
 
         // -- VL53L0X_set_reference_spads() begin (assume NVM values are valid)
 
         i2c.writeReg((short) 0xFF, (short) 0x01);
-        DYNAMIC_SPAD_REF_EN_START_OFFSET.on(i2c).write((short) 0x00);
-        DYNAMIC_SPAD_NUM_REQUESTED_REF_SPAD.on(i2c).write((short) 0x2C);
+        target.reg(DYNAMIC_SPAD_REF_EN_START_OFFSET).write((short) 0x00);
+        target.reg(DYNAMIC_SPAD_NUM_REQUESTED_REF_SPAD).write((short) 0x2C);
         i2c.writeReg((short) 0xFF, (short) 0x00);
-        GLOBAL_CONFIG_REF_EN_START_SELECT.on(i2c).write((short) 0xB4);
-
-        int first_spad_to_enable = spadInfo.isAperture ? 12 : 0; // 12 is the first aperture spad
-        int spads_enabled = 0;
-
-        for (short i = 0; i < 48; i++) {
-            if (i < first_spad_to_enable || spads_enabled == spadInfo.count) {
-                // This bit is lower than the first one that should be enabled, or
-                // (reference_spad_count) bits have already been enabled, so zero this bit
-                ref_spad_map[i / 8] &= ~(1 << (i % 8));
-            } else if (((ref_spad_map[i / 8] >> (i % 8)) & 0x1) != 0) {
-                spads_enabled++;
+        target.reg(GLOBAL_CONFIG_REF_EN_START_SELECT).write((short) 0xB4);
+
+        // a saved map was already trimmed before it was saved
+        if (saved == null) {
+            int first_spad_to_enable = spadInfo.isAperture ? 12 : 0; // 12 is the first aperture spad
+            int spads_enabled = 0;
+
+            for (short i = 0; i < 48; i++) {
+                if (i < first_spad_to_enable || spads_enabled == spadInfo.count) {
+                    // This bit is lower than the first one that should be enabled, or
+                    // (reference_spad_count) bits have already been enabled, so zero this bit
+                    ref_spad_map[i / 8] &= ~(1 << (i % 8));
+                } else if (((ref_spad_map[i / 8] >> (i % 8)) & 0x1) != 0) {
+                    spads_enabled++;
+                }
             }
         }
 
-        GLOBAL_CONFIG_SPAD_ENABLES_REF_0.on(i2c).writeMulti(ref_spad_map);
+        target.reg(GLOBAL_CONFIG_SPAD_ENABLES_REF_0).writeMulti(ref_spad_map);
 
         // -- VL53L0X_set_reference_spads() end
 
@@ -125,10 +249,10 @@ class Vl53l0xInit {
         // "Set interrupt config to new sample ready"
         // -- VL53L0X_SetGpioConfig() begin
 
-        SYSTEM_INTERRUPT_CONFIG_GPIO.on(i2c).write((short) 0x04);
-        Register.Bound gpioHv = GPIO_HV_MUX_ACTIVE_HIGH.on(i2c);
+        target.reg(SYSTEM_INTERRUPT_CONFIG_GPIO).write((short) 0x04);
+        Register.Bound gpioHv = target.reg(GPIO_HV_MUX_ACTIVE_HIGH);
         gpioHv.write((short) (gpioHv.read() & ~0x10)); // active low
-        SYSTEM_INTERRUPT_CLEAR.on(i2c).write((short) 0x01);
+        target.reg(SYSTEM_INTERRUPT_CLEAR).write((short) 0x01);
 
         // -- VL53L0X_SetGpioConfig() end
 
@@ -139,7 +263,7 @@ class Vl53l0xInit {
         // TCC = Target CentreCheck
         // -- VL53L0X_SetSequenceStepEnable() begin
 
-        SYSTEM_SEQUENCE_CONFIG.on(i2c).write((short) 0xE8);
+        target.reg(SYSTEM_SEQUENCE_CONFIG).write((short) 0xE8);
 
         // -- VL53L0X_SetSequenceStepEnable() end
 
@@ -148,11 +272,18 @@ class Vl53l0xInit {
 
         // VL53L0X_StaticInit() end
 
+        if (saved != null) {
+            // VL53L0X_SetRefCalibration() instead of measuring it again
+            writeRefCalibration(saved.getVhvSettings(), saved.getPhaseCal());
+            target.calibration = saved;
+            return Optional.empty();
+        }
+
         // VL53L0X_PerformRefCalibration() begin (VL53L0X_perform_ref_calibration())
 
         // -- VL53L0X_perform_vhv_calibration() begin
 
-        SYSTEM_SEQUENCE_CONFIG.on(i2c).write((short) 0x01);
+        target.reg(SYSTEM_SEQUENCE_CONFIG).write((short) 0x01);
         if (!target.performSingleRefCalibration((short) 0x40)) {
             return Optional.of(Timeout.waitingFor("VHV calibration"));
         }
@@ -161,7 +292,7 @@ class Vl53l0xInit {
 
         // -- VL53L0X_perform_phase_calibration() begin
 
-        SYSTEM_SEQUENCE_CONFIG.on(i2c).write((short) 0x02);
+        target.reg(SYSTEM_SEQUENCE_CONFIG).write((short) 0x02);
         if (!target.performSingleRefCalibration((short) 0x00)) {
             return Optional.of(Timeout.waitingFor("Phase calibration"));
         }
@@ -169,108 +300,49 @@ class Vl53l0xInit {
         // -- VL53L0X_perform_phase_calibration() end
 
         // "restore the previous Sequence Config"
-        SYSTEM_SEQUENCE_CONFIG.on(i2c).write((short) 0xE8);
+        target.reg(SYSTEM_SEQUENCE_CONFIG).write((short) 0xE8);
 
         // VL53L0X_PerformRefCalibration() end
 
+        short[] refCalibration = readRefCalibration();
+        target.calibration = new Vl53l0xCalibration(target.stopVariable, spadInfo.count, spadInfo.isAperture,
+                ref_spad_map, refCalibration[0], refCalibration[1]);
+
         return Optional.empty();
     }
 
-    private void loadTuningSettings() {
-        // DefaultTuningSettings from vl53l0x_tuning.h
-
+    // VL53L0X_ref_calibration_io() with read_not_write set:
+    // the VHV settings, then the phase calibration
+    private short[] readRefCalibration() {
         i2c.writeReg((short) 0xFF, (short) 0x01);
         i2c.writeReg((short) 0x00, (short) 0x00);
-
         i2c.writeReg((short) 0xFF, (short) 0x00);
-        i2c.writeReg((short) 0x09, (short) 0x00);
-        i2c.writeReg((short) 0x10, (short) 0x00);
-        i2c.writeReg((short) 0x11, (short) 0x00);
 
-        i2c.writeReg((short) 0x24, (short) 0x01);
-        i2c.writeReg((short) 0x25, (short) 0xFF);
-        i2c.writeReg((short) 0x75, (short) 0x00);
+        short vhvSettings = i2c.readReg(REF_CALIBRATION_VHV);
+        short phaseCal = (short) (i2c.readReg(REF_CALIBRATION_PHASE) & 0xEF);
 
         i2c.writeReg((short) 0xFF, (short) 0x01);
-        i2c.writeReg((short) 0x4E, (short) 0x2C);
-        i2c.writeReg((short) 0x48, (short) 0x00);
-        i2c.writeReg((short) 0x30, (short) 0x20);
-
-        i2c.writeReg((short) 0xFF, (short) 0x00);
-        i2c.writeReg((short) 0x30, (short) 0x09);
-        i2c.writeReg((short) 0x54, (short) 0x00);
-        i2c.writeReg((short) 0x31, (short) 0x04);
-        i2c.writeReg((short) 0x32, (short) 0x03);
-        i2c.writeReg((short) 0x40, (short) 0x83);
-        i2c.writeReg((short) 0x46, (short) 0x25);
-        i2c.writeReg((short) 0x60, (short) 0x00);
-        i2c.writeReg((short) 0x27, (short) 0x00);
-        i2c.writeReg((short) 0x50, (short) 0x06);
-        i2c.writeReg((short) 0x51, (short) 0x00);
-        i2c.writeReg((short) 0x52, (short) 0x96);
-        i2c.writeReg((short) 0x56, (short) 0x08);
-        i2c.writeReg((short) 0x57, (short) 0x30);
-        i2c.writeReg((short) 0x61, (short) 0x00);
-        i2c.writeReg((short) 0x62, (short) 0x00);
-        i2c.writeReg((short) 0x64, (short) 0x00);
-        i2c.writeReg((short) 0x65, (short) 0x00);
-        i2c.writeReg((short) 0x66, (short) 0xA0);
-
-        i2c.writeReg((short) 0xFF, (short) 0x01);
-        i2c.writeReg((short) 0x22, (short) 0x32);
-        i2c.writeReg((short) 0x47, (short) 0x14);
-        i2c.writeReg((short) 0x49, (short) 0xFF);
-        i2c.writeReg((short) 0x4A, (short) 0x00);
-
-        i2c.writeReg((short) 0xFF, (short) 0x00);
-        i2c.writeReg((short) 0x7A, (short) 0x0A);
-        i2c.writeReg((short) 0x7B, (short) 0x00);
-        i2c.writeReg((short) 0x78, (short) 0x21);
-
-        i2c.writeReg((short) 0xFF, (short) 0x01);
-        i2c.writeReg((short) 0x23, (short) 0x34);
-        i2c.writeReg((short) 0x42, (short) 0x00);
-        i2c.writeReg((short) 0x44, (short) 0xFF);
-        i2c.writeReg((short) 0x45, (short) 0x26);
-        i2c.writeReg((short) 0x46, (short) 0x05);
-        i2c.writeReg((short) 0x40, (short) 0x40);
-        i2c.writeReg((short) 0x0E, (short) 0x06);
-        i2c.writeReg((short) 0x20, (short) 0x1A);
-        i2c.writeReg((short) 0x43, (short) 0x40);
-
+        i2c.writeReg((short) 0x00, (short) 0x01);
         i2c.writeReg((short) 0xFF, (short) 0x00);
-        i2c.writeReg((short) 0x34, (short) 0x03);
-        i2c.writeReg((short) 0x35, (short) 0x44);
+        return new short[]{vhvSettings, phaseCal};
+    }
 
+    // VL53L0X_ref_calibration_io() with read_not_write clear
+    private void writeRefCalibration(short vhvSettings, short phaseCal) {
         i2c.writeReg((short) 0xFF, (short) 0x01);
-        i2c.writeReg((short) 0x31, (short) 0x04);
-        i2c.writeReg((short) 0x4B, (short) 0x09);
-        i2c.writeReg((short) 0x4C, (short) 0x05);
-        i2c.writeReg((short) 0x4D, (short) 0x04);
-
+        i2c.writeReg((short) 0x00, (short) 0x00);
         i2c.writeReg((short) 0xFF, (short) 0x00);
-        i2c.writeReg((short) 0x44, (short) 0x00);
-        i2c.writeReg((short) 0x45, (short) 0x20);
-        i2c.writeReg((short) 0x47, (short) 0x08);
-        i2c.writeReg((short) 0x48, (short) 0x28);
-        i2c.writeReg((short) 0x67, (short) 0x00);
-        i2c.writeReg((short) 0x70, (short) 0x04);
-        i2c.writeReg((short) 0x71, (short) 0x01);
-        i2c.writeReg((short) 0x72, (short) 0xFE);
-        i2c.writeReg((short) 0x76, (short) 0x00);
-        i2c.writeReg((short) 0x77, (short) 0x00);
-
-        i2c.writeReg((short) 0xFF, (short) 0x01);
-        i2c.writeReg((short) 0x0D, (short) 0x01);
 
-        i2c.writeReg((short) 0xFF, (short) 0x00);
-        i2c.writeReg((short) 0x80, (short) 0x01);
-        i2c.writeReg((short) 0x01, (short) 0xF8);
+        i2c.writeReg(REF_CALIBRATION_VHV, vhvSettings);
+        short phase = i2c.readReg(REF_CALIBRATION_PHASE);
+        i2c.writeReg(REF_CALIBRATION_PHASE, (short) ((phase & 0x80) | phaseCal));
 
         i2c.writeReg((short) 0xFF, (short) 0x01);
-        i2c.writeReg((short) 0x8E, (short) 0x01);
         i2c.writeReg((short) 0x00, (short) 0x01);
         i2c.writeReg((short) 0xFF, (short) 0x00);
-        i2c.writeReg((short) 0x80, (short) 0x00);
+    }
+
+    private void loadTuningSettings() {
+        target.runScript(TUNING_SETTINGS);
     }
 }
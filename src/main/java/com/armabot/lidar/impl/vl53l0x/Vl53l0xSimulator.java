@@ -0,0 +1,293 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl53l0x;
+
+import com.armabot.lidar.arcompat.PololuI2c;
+import com.armabot.lidar.sim.RangeSource;
+import com.armabot.lidar.sim.SimulatedSensor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static com.armabot.lidar.impl.vl53l0x.Calculations.decodeVcselPeriod;
+import static com.armabot.lidar.impl.vl53l0x.Vl53l0xI2c.decodeTimeout;
+import static com.armabot.lidar.impl.vl53l0x.Vl53l0xI2c.timeoutMclksToMicroseconds;
+import static com.armabot.lidar.impl.vl53l0x.Vl53l0xReg.*;
+
+/**
+ * A simulated VL53L0X, at the register level.
+ *
+ * <p>
+ * It models the register pages selected through {@code 0xFF}, the soft reset
+ * and boot, the SPAD info and reference calibration sequences, single-shot,
+ * back-to-back and timed ranging, timed from the programmed sequence step
+ * timeouts, the result block, and the interrupt status, including the
+ * distance threshold modes. Everything else is a plain register.
+ * </p>
+ */
+public final class Vl53l0xSimulator extends SimulatedSensor {
+
+    private static final int MODEL_ID = 0xEE;
+    private static final int PAGE_SELECT = 0xFF;
+    private static final int MAX_RANGE_MILLIMETERS = 2000;
+    // what the device reports when there is no target
+    private static final int OUT_OF_RANGE_MILLIMETERS = 8190;
+    private static final long REF_CALIBRATION_NANOS = TimeUnit.MICROSECONDS.toNanos(1000);
+
+    // RESULT_INTERRUPT_STATUS for a new sample
+    private static final int NEW_SAMPLE_READY = 0x04;
+    // where VL53L0X_ref_calibration_io() finds the calibration results, and what they come out as
+    private static final int VHV_SETTINGS = 0xCB;
+    private static final int PHASE_CAL = 0xEE;
+    private static final int VHV_RESULT = 0x1C;
+    private static final int PHASE_RESULT = 0x0B;
+
+    private final Timer ranging = newTimer(this::completeMeasurement);
+    private final Timer refCalibration = newTimer(this::completeRefCalibration);
+    private byte[][] pages;
+    private boolean continuous;
+    private int interruptStatus;
+    private boolean vhvCalibration;
+    private int stopVariable = 0x3C;
+    private int spadInfo = 0x85;
+
+    public Vl53l0xSimulator(RangeSource rangeSource) {
+        this(rangeSource, System::nanoTime);
+    }
+
+    public Vl53l0xSimulator(RangeSource rangeSource, LongSupplier clock) {
+        super(PololuI2c.Addressing.EIGHT_BIT, rangeSource, clock);
+        powerCycle();
+    }
+
+    /**
+     * Sets the reference SPAD count and type read from NVM during
+     * initialization, in the format of register {@code 0x92} on page 7.
+     */
+    public void setSpadInfo(int count, boolean isAperture) {
+        this.spadInfo = (isAperture ? 0x80 : 0) | (count & 0x7F);
+        page(0x07)[0x92] = (byte) spadInfo;
+    }
+
+    @Override
+    protected void loadDefaults() {
+        continuous = false;
+        interruptStatus = 0;
+        pages = new byte[256][];
+        page(0x01)[0x91] = (byte) stopVariable;
+        page(0x07)[0x92] = (byte) spadInfo;
+
+        set(IDENTIFICATION_MODEL_ID.address(), MODEL_ID);
+        set(IDENTIFICATION_REVISION_ID.address(), 0x10);
+        set(SOFT_RESET_GO2_SOFT_RESET_N.address(), 0x01);
+        set(SYSTEM_SEQUENCE_CONFIG.address(), 0xFF);
+        set(SYSTEM_INTERRUPT_CONFIG_GPIO.address(), NEW_SAMPLE_READY);
+        set(GPIO_HV_MUX_ACTIVE_HIGH.address(), 0x11);
+        set16Bit(OSC_CALIBRATE_VAL.address(), 0x0C);
+        for (int i = 0; i < 6; i++) {
+            set(GLOBAL_CONFIG_SPAD_ENABLES_REF_0.address() + i, 0xFF);
+        }
+        // the timeouts loaded by the tuning settings, for a budget of about 33 ms
+        set(MSRC_CONFIG_TIMEOUT_MACROP.address(), 0x25);
+        set(PRE_RANGE_CONFIG_VCSEL_PERIOD.address(), 0x06);
+        set16Bit(PRE_RANGE_CONFIG_TIMEOUT_MACROP_HI.address(), 0x0096);
+        set(FINAL_RANGE_CONFIG_VCSEL_PERIOD.address(), 0x04);
+        set16Bit(FINAL_RANGE_CONFIG_TIMEOUT_MACROP_HI.address(), 0x01FE);
+    }
+
+    private byte[] page(int page) {
+        byte[] registers = pages[page];
+        if (registers == null) {
+            registers = pages[page] = new byte[256];
+        }
+        return registers;
+    }
+
+    private int selectedPage() {
+        return get(PAGE_SELECT);
+    }
+
+    /**
+     * @return the measurement timing budget programmed into the registers
+     */
+    public long getMeasurementTimingBudget(TimeUnit unit) {
+        int sequenceConfig = get(SYSTEM_SEQUENCE_CONFIG.address());
+        SequenceStepEnables enables = new SequenceStepEnables(
+                ((sequenceConfig >> 4) & 0x1) != 0,
+                ((sequenceConfig >> 3) & 0x1) != 0,
+                ((sequenceConfig >> 2) & 0x1) != 0,
+                ((sequenceConfig >> 6) & 0x1) != 0,
+                ((sequenceConfig >> 7) & 0x1) != 0
+        );
+
+        short preRangeVcselPeriodPclks = decodeVcselPeriod(get(PRE_RANGE_CONFIG_VCSEL_PERIOD.address()));
+        int msrcDssTccMclks = get(MSRC_CONFIG_TIMEOUT_MACROP.address()) + 1;
+        int preRangeMclks = decodeTimeout(get16Bit(PRE_RANGE_CONFIG_TIMEOUT_MACROP_HI.address()));
+        short finalRangeVcselPeriodPclks = decodeVcselPeriod(get(FINAL_RANGE_CONFIG_VCSEL_PERIOD.address()));
+        int finalRangeMclks = decodeTimeout(get16Bit(FINAL_RANGE_CONFIG_TIMEOUT_MACROP_HI.address()));
+        if (enables.preRange) {
+            finalRangeMclks -= preRangeMclks;
+        }
+        SequenceStepTimeouts timeouts = new SequenceStepTimeouts(
+                preRangeVcselPeriodPclks, finalRangeVcselPeriodPclks, msrcDssTccMclks,
+                preRangeMclks, finalRangeMclks,
+                timeoutMclksToMicroseconds(msrcDssTccMclks, preRangeVcselPeriodPclks),
+                timeoutMclksToMicroseconds(preRangeMclks, preRangeVcselPeriodPclks),
+                timeoutMclksToMicroseconds(finalRangeMclks, finalRangeVcselPeriodPclks)
+        );
+
+        long budgetMicrosec = Vl53l0xI2c.initializeBudgetValue(enables, timeouts);
+        if (enables.finalRange) {
+            budgetMicrosec += timeouts.finalRangeMicrosec + Vl53l0xI2c.FinalRangeOverhead;
+        }
+        return unit.convert(budgetMicrosec, TimeUnit.MICROSECONDS);
+    }
+
+    private long intermeasurementPeriodNanos() {
+        int reg = SYSTEM_INTERMEASUREMENT_PERIOD.address();
+        long period = (long) get16Bit(reg) << 16 | get16Bit(reg + 2);
+        int oscCalibrateVal = get16Bit(OSC_CALIBRATE_VAL.address());
+        long periodMillis = oscCalibrateVal == 0 ? period : period / oscCalibrateVal;
+        return TimeUnit.MILLISECONDS.toNanos(periodMillis);
+    }
+
+    @Override
+    protected byte readRegister(int reg) {
+        int page = selectedPage();
+        if (page != 0 && reg != PAGE_SELECT) {
+            return page(page)[reg];
+        }
+        if (reg == RESULT_INTERRUPT_STATUS.address()) {
+            return (byte) interruptStatus;
+        }
+        return super.readRegister(reg);
+    }
+
+    @Override
+    protected void writeRegister(int reg, byte value) {
+        int page = selectedPage();
+        if (page != 0 && reg != PAGE_SELECT) {
+            writePaged(page, reg, value);
+            return;
+        }
+        super.writeRegister(reg, value);
+        if (reg == SOFT_RESET_GO2_SOFT_RESET_N.address()) {
+            if ((value & 0x01) == 0) {
+                enterReset();
+            } else if (isInReset()) {
+                leaveReset();
+            }
+        } else if (reg == SYSTEM_INTERRUPT_CLEAR.address()) {
+            if ((value & 0x07) != 0) {
+                interruptStatus = 0;
+            }
+        } else if (reg == SYSRANGE_START.address()) {
+            // the start bit clears as soon as the measurement starts
+            super.writeRegister(reg, (byte) (value & ~0x01));
+            startMode(value);
+        }
+    }
+
+    private void writePaged(int page, int reg, byte value) {
+        if (page == 0x07 && reg == 0x83 && value == 0) {
+            // the SPAD info is ready as soon as it is asked for
+            value = 0x10;
+        }
+        page(page)[reg] = value;
+        if (page == 0x01 && reg == 0x91) {
+            stopVariable = value & 0xFF;
+        }
+    }
+
+    private void startMode(byte mode) {
+        if ((mode & 0x04) != 0) {
+            continuous = true;
+            ranging.startContinuous(getMeasurementTimingBudget(TimeUnit.NANOSECONDS),
+                    intermeasurementPeriodNanos());
+        } else if ((mode & 0x02) != 0) {
+            continuous = true;
+            ranging.startContinuous(getMeasurementTimingBudget(TimeUnit.NANOSECONDS), 0);
+        } else if ((mode & 0x01) != 0) {
+            if (continuous) {
+                continuous = false;
+                ranging.stop();
+                return;
+            }
+            int sequenceConfig = get(SYSTEM_SEQUENCE_CONFIG.address());
+            if (sequenceConfig == 0x01 || sequenceConfig == 0x02) {
+                // VHV or phase calibration
+                vhvCalibration = sequenceConfig == 0x01;
+                refCalibration.startSingle(REF_CALIBRATION_NANOS);
+            } else {
+                ranging.startSingle(getMeasurementTimingBudget(TimeUnit.NANOSECONDS));
+            }
+        }
+    }
+
+    private void completeRefCalibration(long nanos) {
+        if (vhvCalibration) {
+            set(VHV_SETTINGS, VHV_RESULT);
+        } else {
+            set(PHASE_CAL, (get(PHASE_CAL) & 0x80) | PHASE_RESULT);
+        }
+        interruptStatus = NEW_SAMPLE_READY;
+    }
+
+    private void completeMeasurement(long nanos) {
+        int range = sampleRange(nanos, MAX_RANGE_MILLIMETERS);
+        boolean valid = range < MAX_RANGE_MILLIMETERS;
+        RangeStatus status = valid ? RangeStatus.RANGE_COMPLETE : RangeStatus.MSRC_NO_TARGET;
+        // 9.7 fixed point, falling off with the square of the range
+        int signalRate = (int) Math.min(0xFFFF, (40L << 7) * 1000 * 1000 / Math.max(1L, (long) range * range));
+
+        int result = RESULT_RANGE_STATUS.address();
+        set(result, status.ordinal() << 3);
+        // effective SPAD count, 8.8 fixed point
+        set16Bit(result + 2, (spadInfo & 0x7F) << 8);
+        set16Bit(result + 6, signalRate);
+        // ambient rate, 9.7 fixed point
+        set16Bit(result + 8, 1 << 6);
+        set16Bit(result + 10, valid ? range : OUT_OF_RANGE_MILLIMETERS);
+
+        int config = get(SYSTEM_INTERRUPT_CONFIG_GPIO.address()) & 0x07;
+        if (triggersInterrupt(config, range)) {
+            interruptStatus = config;
+        }
+    }
+
+    private boolean triggersInterrupt(int config, int range) {
+        // in units of 2 mm
+        int low = (get16Bit(SYSTEM_THRESH_LOW.address()) & 0xFFF) << 1;
+        int high = (get16Bit(SYSTEM_THRESH_HIGH.address()) & 0xFFF) << 1;
+        switch (config) {
+            case 0x01:
+                return range < low;
+            case 0x02:
+                return range > high;
+            case 0x03:
+                return range < low || range > high;
+            case NEW_SAMPLE_READY:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl53l1x;
+
+/**
+ * The status of a measurement, as reported in {@link RangingData}.
+ */
+public enum RangeStatus {
+    RANGE_VALID,
+    /**
+     * The sigma estimator check failed: the measurement is too noisy.
+     */
+    SIGMA_FAIL,
+    /**
+     * The return signal is too low to give a reliable range.
+     */
+    SIGNAL_FAIL,
+    /**
+     * The target is below the minimum range, and the range is clipped.
+     */
+    RANGE_VALID_MIN_RANGE_CLIPPED,
+    OUT_OF_BOUNDS_FAIL,
+    HARDWARE_FAIL,
+    /**
+     * Valid, but the first measurement, so the wraparound check was not done.
+     */
+    RANGE_VALID_NO_WRAP_CHECK_FAIL,
+    /**
+     * The target may be beyond the maximum range, wrapping around to a
+     * short range.
+     */
+    WRAP_TARGET_FAIL,
+    XTALK_SIGNAL_FAIL,
+    SYNCHRONIZATION_INT,
+    MIN_RANGE_FAIL,
+    NONE,
+    ;
+
+    /**
+     * @return if the range can be used
+     */
+    public boolean isValid() {
+        return this == RANGE_VALID || this == RANGE_VALID_MIN_RANGE_CLIPPED
+                || this == RANGE_VALID_NO_WRAP_CHECK_FAIL;
+    }
+
+    static RangeStatus fromRaw(int rangeStatus, int streamCount) {
+        switch (rangeStatus) {
+            case 17: // MULTCLIPFAIL
+            case 2: // VCSELWATCHDOGTESTFAILURE
+            case 1: // VCSELCONTINUITYTESTFAILURE
+            case 3: // NOVHVVALUEFOUND
+                // "from SetSimpleData()"
+                return HARDWARE_FAIL;
+            case 13: // USERROICLIP
+                return MIN_RANGE_FAIL;
+            case 18: // GPHSTREAMCOUNT0READY
+                return SYNCHRONIZATION_INT;
+            case 5: // RANGEPHASECHECK
+                return OUT_OF_BOUNDS_FAIL;
+            case 4: // MSRCNOTARGET
+                return SIGNAL_FAIL;
+            case 6: // SIGMATHRESHOLDCHECK
+                return SIGMA_FAIL;
+            case 7: // PHASECONSISTENCY
+                return WRAP_TARGET_FAIL;
+            case 12: // RANGEIGNORETHRESHOLD
+                return XTALK_SIGNAL_FAIL;
+            case 8: // MINCLIP
+                return RANGE_VALID_MIN_RANGE_CLIPPED;
+            case 9: // RANGECOMPLETE
+                // "from VL53L1_copy_sys_and_core_results_to_range_results()"
+                return streamCount == 0 ? RANGE_VALID_NO_WRAP_CHECK_FAIL : RANGE_VALID;
+            default:
+                return NONE;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl53l1x;
+
+/**
+ * A full measurement, filled in place by {@link Vl53l1xI2c#read(RangingData)}.
+ * Reuse one instance to avoid allocating on every read.
+ */
+public final class RangingData {
+
+    int rangeMillimeters;
+    RangeStatus rangeStatus = RangeStatus.NONE;
+    float sigmaMillimeters;
+    float peakSignalCountRateMcps;
+    float ambientCountRateMcps;
+    float effectiveSpadCount;
+    int streamCount;
+    long timestampNanos;
+
+    /**
+     * @return the range, in millimeters
+     */
+    public int getRangeMillimeters() {
+        return rangeMillimeters;
+    }
+
+    public RangeStatus getRangeStatus() {
+        return rangeStatus;
+    }
+
+    /**
+     * @return the estimated standard deviation of the range, in millimeters
+     */
+    public float getSigmaMillimeters() {
+        return sigmaMillimeters;
+    }
+
+    /**
+     * @return the return signal rate, in mega counts per second
+     */
+    public float getPeakSignalCountRateMcps() {
+        return peakSignalCountRateMcps;
+    }
+
+    /**
+     * @return the ambient light rate, in mega counts per second
+     */
+    public float getAmbientCountRateMcps() {
+        return ambientCountRateMcps;
+    }
+
+    /**
+     * @return the number of SPADs used for the measurement
+     */
+    public float getEffectiveSpadCount() {
+        return effectiveSpadCount;
+    }
+
+    /**
+     * @return the measurement counter, which changes with every measurement
+     */
+    public int getStreamCount() {
+        return streamCount;
+    }
+
+    /**
+     * @return when the measurement was read, in {@link System#nanoTime()} time
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RangingData{rangeMillimeters=" + rangeMillimeters
+                + ", rangeStatus=" + rangeStatus
+                + ", sigmaMillimeters=" + sigmaMillimeters
+                + ", peakSignalCountRateMcps=" + peakSignalCountRateMcps
+                + ", ambientCountRateMcps=" + ambientCountRateMcps
+                + ", effectiveSpadCount=" + effectiveSpadCount
+                + ", streamCount=" + streamCount
+                + ", timestampNanos=" + timestampNanos
+                + "}";
+    }
+}
@@ -20,46 +20,17 @@
 
 package com.armabot.lidar.impl.vl53l1x;
 
-import com.google.auto.value.AutoValue;
-
-@AutoValue
-abstract class RawResults {
-
-    static Builder builder() {
-        return new AutoValue_RawResults.Builder();
-    }
-
-    @AutoValue.Builder
-    interface Builder {
-
-        Builder rangeStatus(short rangeStatus);
-
-        Builder streamCount(short streamCount);
-
-        Builder dssActualEffectiveSpadsSd0(int dssActualEffectiveSpadsSd0);
-
-        Builder ambientCountRateMcpsSd0(int ambientCountRateMcpsSd0);
-
-        Builder finalCrosstalkCorrectRangeMmSd0(int finalCrosstalkCorrectRangeMmSd0);
-
-        Builder peakSignalCountRateCrosstalkCorrectedMcpsSd0(int peakSignalCountRateCrosstalkCorrectedMcpsSd0);
-
-        RawResults build();
-    }
-
-    RawResults() {
-    }
-
-    abstract short rangeStatus();
-
-    abstract short streamCount();
-
-    abstract int dssActualEffectiveSpadsSd0();
-
-    abstract int ambientCountRateMcpsSd0();
-
-    abstract int finalCrosstalkCorrectRangeMmSd0();
-
-    abstract int peakSignalCountRateCrosstalkCorrectedMcpsSd0();
-
+/**
+ * Raw result registers. Refilled in place on every read, to avoid allocating
+ * per sample.
+ */
+class RawResults {
+    short rangeStatus;
+    short streamCount;
+    int dssActualEffectiveSpadsSd0;
+    int ambientCountRateMcpsSd0;
+    int sigmaSd0;
+    int finalCrosstalkCorrectRangeMmSd0;
+    int peakSignalCountRateCrosstalkCorrectedMcpsSd0;
+    long timestampNanos;
 }
@@ -21,14 +21,24 @@
 package com.armabot.lidar.impl.vl53l1x;
 
 import com.armabot.lidar.api.Error;
+import com.armabot.lidar.api.InterruptMode;
 import com.armabot.lidar.api.Vl53l1x;
+import com.armabot.lidar.arcompat.BoundRegisters;
+import com.armabot.lidar.arcompat.HalI2cTransport;
+import com.armabot.lidar.arcompat.I2cTransport;
+import com.armabot.lidar.arcompat.InterruptLine;
 import com.armabot.lidar.arcompat.PololuI2c;
 import com.armabot.lidar.arcompat.Port;
 import com.armabot.lidar.arcompat.Register;
+import com.armabot.lidar.arcompat.RegisterScript;
 import com.armabot.lidar.arcompat.Wire;
+import com.armabot.lidar.trace.Tracer;
+import com.armabot.lidar.util.WaitStrategy;
 
+import java.util.EnumSet;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static com.armabot.lidar.impl.vl53l1x.Calculations.calcMacroPeriod;
@@ -47,10 +57,21 @@ import static com.armabot.lidar.util.Preconditions.checkState;
 // The original library is licensed under the terms in LICENSE-vl53l1x.txt
 public class Vl53l1xI2c implements Vl53l1x {
 
-    private static final int TIMING_GUARD = 4528;
+    static final int TIMING_GUARD = 4528;
     static final int TARGET_RATE = 0x0A00;
+    // while predicting, poll this many times per measurement once one is late
+    private static final int READY_POLLS_PER_MEASUREMENT = 16;
+
+    // Configuration registers that only change when we write them
+    private static final Set<Vl53l1xReg> SHADOWED_REGISTERS = EnumSet.of(
+            Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_A,
+            Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_B,
+            Vl53l1xReg.RANGE_CONFIG__TIMEOUT_MACROP_A,
+            Vl53l1xReg.RANGE_CONFIG__TIMEOUT_MACROP_B
+    );
 
     private final PololuI2c i2c;
+    private final BoundRegisters<Vl53l1xReg> registers;
 
     private int fastOscFreq;
     private int oscCalibrateVal;
@@ -59,12 +80,30 @@ public class Vl53l1xI2c implements Vl53l1x {
     private long timeout;
     private long timeoutStart;
     private boolean didTimeout;
+    private long initializationTime;
     private short savedVhvInit;
     private short savedVhvTimeout;
-    private RawResults results;
+    private final RawResults results = new RawResults();
+    private final WaitStrategy wait = WaitStrategy.create();
+    private boolean predictiveReads;
+    private long continuousPeriodNanos;
+    private long measurementIntervalNanos;
+    private long nextReadyNanos;
+    // until the first prediction, nextReadyNanos is when ranging started, not a measurement
+    private boolean firstPredictionPending;
+    private boolean readyConfirmed;
+    private int lastStreamCount = -1;
+    private InterruptMode interruptMode = InterruptMode.NEW_SAMPLE_READY;
+    // null when polling the status register
+    private InterruptLine interruptLine;
 
     public Vl53l1xI2c(Port port) {
-        this.i2c = PololuI2c.create(port, PololuI2c.Addressing.SIXTEEN_BIT);
+        this(port, HalI2cTransport.INSTANCE);
+    }
+
+    public Vl53l1xI2c(Port port, I2cTransport transport) {
+        this.i2c = PololuI2c.create(port, transport, PololuI2c.Addressing.SIXTEEN_BIT);
+        this.registers = BoundRegisters.bind(Vl53l1xReg.class, i2c, SHADOWED_REGISTERS);
         i2c.setAddress(Vl53l1x.DEFAULT_ADDRESS);
     }
 
@@ -83,13 +122,34 @@ public class Vl53l1xI2c implements Vl53l1x {
         if (address == getAddress()) {
             return;
         }
-        Vl53l1xReg.I2C_SLAVE__DEVICE_ADDRESS.on(i2c).write((byte) (address & 0x7F));
+        reg(Vl53l1xReg.I2C_SLAVE__DEVICE_ADDRESS).write((byte) (address & 0x7F));
         i2c.setAddress(address);
     }
 
     @Override
     public Optional<Error<?>> initialize() {
-        return new Vl53l1xInit(this).initialize();
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            long start = System.nanoTime();
+            registers.invalidateShadows();
+            interruptMode = InterruptMode.NEW_SAMPLE_READY;
+            try {
+                return new Vl53l1xInit(this).initialize();
+            } finally {
+                initializationTime = System.nanoTime() - start;
+            }
+        } finally {
+            tracer.end(span, "Vl53l1x.initialize");
+        }
+    }
+
+    /**
+     * Gets how long the last {@link #initialize()} took, in the requested unit.
+     * This is dominated by the time the sensor takes to boot after its reset.
+     */
+    public long getInitializationTime(TimeUnit unit) {
+        return unit.convert(initializationTime, TimeUnit.NANOSECONDS);
     }
 
     @Override
@@ -97,6 +157,68 @@ public class Vl53l1xI2c implements Vl53l1x {
         return i2c;
     }
 
+    Register.Bound reg(Vl53l1xReg register) {
+        return registers.get(register);
+    }
+
+    /**
+     * @return the strategy used to wait for the sensor, and its poll counters
+     */
+    public WaitStrategy getWaitStrategy() {
+        return wait;
+    }
+
+    boolean runScript(RegisterScript script) {
+        return registers.run(script);
+    }
+
+    /**
+     * @return if configuration registers are shadowed in memory
+     */
+    public boolean isShadowingEnabled() {
+        return registers.isShadowingEnabled();
+    }
+
+    /**
+     * Sets whether configuration registers are shadowed in memory. When
+     * enabled, writes to them go through to the sensor, but reading them back
+     * is served from memory. This saves bus reads in methods like
+     * {@link #getMeasurementTimingBudget()} and {@link #setDistanceMode(DistanceMode)}.
+     * The shadows are dropped on {@link #initialize()}.
+     */
+    public void setShadowingEnabled(boolean enabled) {
+        registers.setShadowingEnabled(enabled);
+    }
+
+    /**
+     * @return if data readiness is predicted from the measurement timing
+     */
+    public boolean isPredictiveReads() {
+        return predictiveReads;
+    }
+
+    /**
+     * Sets whether data readiness is predicted from the measurement timing.
+     *
+     * <p>
+     * When enabled during continuous ranging, {@link #dataReady()} does not
+     * touch the bus until the next measurement is expected, based on the
+     * inter-measurement period and the timing budget. Once it has seen the
+     * data, it stays ready without polling until the data is read.
+     * {@link #read()} skips its own status check, and instead confirms the
+     * data is new using the result stream count.
+     * </p>
+     */
+    public void setPredictiveReads(boolean predictiveReads) {
+        this.predictiveReads = predictiveReads;
+        this.measurementIntervalNanos = 0;
+        this.readyConfirmed = false;
+    }
+
+    private boolean isPredicting() {
+        return predictiveReads && continuousPeriodNanos > 0;
+    }
+
     void fastOscFreq(int fastOscFreq) {
         this.fastOscFreq = fastOscFreq;
     }
@@ -156,14 +278,14 @@ public class Vl53l1xI2c implements Vl53l1x {
             default:
                 throw new IllegalArgumentException("Unknown DistanceMode: " + mode);
         }
-        Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_A.on(i2c).write(vcselPeriodA);
-        Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_B.on(i2c).write(vcselPeriodB);
-        Vl53l1xReg.RANGE_CONFIG__VALID_PHASE_HIGH.on(i2c).write(validPhaseHigh);
+        reg(Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_A).write(vcselPeriodA);
+        reg(Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_B).write(vcselPeriodB);
+        reg(Vl53l1xReg.RANGE_CONFIG__VALID_PHASE_HIGH).write(validPhaseHigh);
 
-        Vl53l1xReg.SD_CONFIG__WOI_SD0.on(i2c).write(woiSd0);
-        Vl53l1xReg.SD_CONFIG__WOI_SD1.on(i2c).write(woiSd1);
-        Vl53l1xReg.SD_CONFIG__INITIAL_PHASE_SD0.on(i2c).write(initialPhaseSd0);
-        Vl53l1xReg.SD_CONFIG__INITIAL_PHASE_SD1.on(i2c).write(initialPhaseSd1);
+        reg(Vl53l1xReg.SD_CONFIG__WOI_SD0).write(woiSd0);
+        reg(Vl53l1xReg.SD_CONFIG__WOI_SD1).write(woiSd1);
+        reg(Vl53l1xReg.SD_CONFIG__INITIAL_PHASE_SD0).write(initialPhaseSd0);
+        reg(Vl53l1xReg.SD_CONFIG__INITIAL_PHASE_SD1).write(initialPhaseSd1);
 
         setMeasurementTimingBudget(budget);
 
@@ -171,11 +293,11 @@ public class Vl53l1xI2c implements Vl53l1x {
     }
 
     private int currentMacroPeriodA() {
-        return calcMacroPeriod(fastOscFreq, Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_A.on(i2c).read());
+        return calcMacroPeriod(fastOscFreq, reg(Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_A).read());
     }
 
     private int currentMacroPeriodB() {
-        return calcMacroPeriod(fastOscFreq, Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_B.on(i2c).read());
+        return calcMacroPeriod(fastOscFreq, reg(Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_B).read());
     }
 
     @Override
@@ -183,7 +305,7 @@ public class Vl53l1xI2c implements Vl53l1x {
         int macroPeriodMicrosec = currentMacroPeriodA();
 
         int rangeConfigTimeoutMicrosec = timeoutMclksToMicroseconds(
-                decodeTimeout(Vl53l1xReg.RANGE_CONFIG__TIMEOUT_MACROP_A.on(i2c).read16Bit()),
+                decodeTimeout(reg(Vl53l1xReg.RANGE_CONFIG__TIMEOUT_MACROP_A).read16Bit()),
                 macroPeriodMicrosec);
 
         return 2 * rangeConfigTimeoutMicrosec + TIMING_GUARD;
@@ -203,169 +325,350 @@ public class Vl53l1xI2c implements Vl53l1x {
             phasecalTimeoutMclks = 0xFF;
         }
 
-        Vl53l1xReg.PHASECAL_CONFIG__TIMEOUT_MACROP.on(i2c).write((short) phasecalTimeoutMclks);
+        reg(Vl53l1xReg.PHASECAL_CONFIG__TIMEOUT_MACROP).write((short) phasecalTimeoutMclks);
 
         int timeoutMclks = timeoutMicrosecondsToMclks(1, macroPeriodMicrosec);
         int value = encodeTimeout(
                 timeoutMclks
         );
-        Vl53l1xReg.MM_CONFIG__TIMEOUT_MACROP_A.on(i2c).write16Bit(value);
+        reg(Vl53l1xReg.MM_CONFIG__TIMEOUT_MACROP_A).write16Bit(value);
 
-        Vl53l1xReg.RANGE_CONFIG__TIMEOUT_MACROP_A.on(i2c).write16Bit(encodeTimeout(
+        reg(Vl53l1xReg.RANGE_CONFIG__TIMEOUT_MACROP_A).write16Bit(encodeTimeout(
                 timeoutMicrosecondsToMclks(rangeConfigTimeoutMicrosec, macroPeriodMicrosec)
         ));
 
         macroPeriodMicrosec = currentMacroPeriodB();
 
-        Vl53l1xReg.MM_CONFIG__TIMEOUT_MACROP_B.on(i2c).write16Bit(encodeTimeout(
+        reg(Vl53l1xReg.MM_CONFIG__TIMEOUT_MACROP_B).write16Bit(encodeTimeout(
                 timeoutMicrosecondsToMclks(1, macroPeriodMicrosec)
         ));
 
-        Vl53l1xReg.RANGE_CONFIG__TIMEOUT_MACROP_B.on(i2c).write16Bit(encodeTimeout(
+        reg(Vl53l1xReg.RANGE_CONFIG__TIMEOUT_MACROP_B).write16Bit(encodeTimeout(
                 timeoutMicrosecondsToMclks(rangeConfigTimeoutMicrosec, macroPeriodMicrosec)
         ));
+
+        measurementIntervalNanos = 0;
+        wait.tune(budgetMicro, TimeUnit.MICROSECONDS);
     }
 
     @Override
     public void startContinuous(int periodMillis) {
-        Vl53l1xReg.SYSTEM__INTERMEASUREMENT_PERIOD.on(i2c).write32Bit(periodMillis * oscCalibrateVal);
-        Vl53l1xReg.SYSTEM__INTERRUPT_CLEAR.on(i2c).write((byte) 0x01);
-        Vl53l1xReg.SYSTEM__MODE_START.on(i2c).write((byte) 0x40);
+        reg(Vl53l1xReg.SYSTEM__INTERMEASUREMENT_PERIOD).write32Bit(periodMillis * oscCalibrateVal);
+        reg(Vl53l1xReg.SYSTEM__INTERRUPT_CLEAR).write((byte) 0x01);
+        reg(Vl53l1xReg.SYSTEM__MODE_START).write((byte) 0x40);
+
+        continuousPeriodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        measurementIntervalNanos = 0;
+        nextReadyNanos = System.nanoTime();
+        firstPredictionPending = true;
+        readyConfirmed = false;
+        lastStreamCount = -1;
     }
 
     @Override
     public void stopContinuous() {
-        Vl53l1xReg.SYSTEM__MODE_START.on(i2c).write((byte) 0x80);
-
+        reg(Vl53l1xReg.SYSTEM__MODE_START).write((byte) 0x80);
+        continuousPeriodNanos = 0;
 
         calibrated = false;
 
         // "restore vhv configs"
         if (savedVhvInit != 0) {
-            Vl53l1xReg.VHV_CONFIG__INIT.on(i2c).write(savedVhvInit);
+            reg(Vl53l1xReg.VHV_CONFIG__INIT).write(savedVhvInit);
         }
         if (savedVhvTimeout != 0) {
-            Vl53l1xReg.VHV_CONFIG__TIMEOUT_MACROP_LOOP_BOUND.on(i2c).write(savedVhvTimeout);
+            reg(Vl53l1xReg.VHV_CONFIG__TIMEOUT_MACROP_LOOP_BOUND).write(savedVhvTimeout);
         }
 
         // "remove phasecal override"
-        Vl53l1xReg.PHASECAL_CONFIG__OVERRIDE.on(i2c).write((byte) 0x00);
+        reg(Vl53l1xReg.PHASECAL_CONFIG__OVERRIDE).write((byte) 0x00);
     }
 
     @Override
     public int read() {
-        checkState(dataReady(), "Data not ready, check dataReady() first.");
+        readMeasurement();
 
-        readResults();
+        // just directly calculate for now, no getRangeData
+        return correctRange(results.finalCrosstalkCorrectRangeMmSd0);
+    }
 
-        if (!calibrated) {
-            calibrate();
-            calibrated = true;
-        }
+    @Override
+    public void read(RangingData data) {
+        readMeasurement();
+
+        // VL53L1_copy_sys_and_core_results_to_range_results()
+        data.rangeMillimeters = correctRange(results.finalCrosstalkCorrectRangeMmSd0);
+        data.rangeStatus = RangeStatus.fromRaw(results.rangeStatus, results.streamCount);
+        // "from SetSimpleData()"
+        data.peakSignalCountRateMcps = countRateFixedToFloat(results.peakSignalCountRateCrosstalkCorrectedMcpsSd0);
+        data.ambientCountRateMcps = countRateFixedToFloat(results.ambientCountRateMcpsSd0);
+        // 14.2 and 8.8 fixed point
+        data.sigmaMillimeters = results.sigmaSd0 / (float) (1 << 2);
+        data.effectiveSpadCount = results.dssActualEffectiveSpadsSd0 / (float) (1 << 8);
+        data.streamCount = results.streamCount;
+        data.timestampNanos = results.timestampNanos;
+    }
 
-        updateDss();
+    private static int correctRange(int range) {
+        // "apply correction gain"
+        return (range * 2011 + 0x0400) / 0x0800;
+    }
 
-        Vl53l1xReg.SYSTEM__INTERRUPT_CLEAR.on(i2c).write((byte) 1);
+    private static float countRateFixedToFloat(int countRateFixed) {
+        // 9.7 fixed point
+        return countRateFixed / (float) (1 << 7);
+    }
 
-        // just directly calculate for now, no getRangeData
-        int range = results.finalCrosstalkCorrectRangeMmSd0();
+    private void readMeasurement() {
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            if (isPredicting()) {
+                readResults();
+                checkState(results.streamCount != lastStreamCount, "Data not ready, check dataReady() first.");
+                readyConfirmed = false;
+            } else {
+                checkState(dataReady(), "Data not ready, check dataReady() first.");
+                readResults();
+            }
+            lastStreamCount = results.streamCount;
 
-        return (range * 2011 + 0x0400) / 0x0800;
+            if (!calibrated) {
+                calibrate();
+                calibrated = true;
+            }
+
+            updateDss();
+
+            reg(Vl53l1xReg.SYSTEM__INTERRUPT_CLEAR).write((byte) 1);
+        } finally {
+            tracer.end(span, "Vl53l1x.read");
+        }
     }
 
     private void readResults() {
         Wire wire = i2c.getWire();
 
-        i2c.askForRegValue(Vl53l1xReg.RESULT__RANGE_STATUS.address());
+        i2c.requestRegValue(Vl53l1xReg.RESULT__RANGE_STATUS.address(), 17);
+        results.timestampNanos = System.nanoTime();
 
-        i2c.request(17);
-
-        RawResults.Builder results = RawResults.builder();
-
-        results.rangeStatus(wire.read());
+        // the upper bits hold the gph id, not part of the status
+        results.rangeStatus = (short) (wire.read() & 0x1F);
 
         // report_status unused:
         wire.read();
 
-        results.streamCount(wire.read());
+        results.streamCount = wire.read();
 
-        results.dssActualEffectiveSpadsSd0(wire.readShort());
+        results.dssActualEffectiveSpadsSd0 = wire.readShort();
 
         // peak_signal_count_rate_mcps_sd0: not used
         wire.readShort();
 
-        results.ambientCountRateMcpsSd0(wire.readShort());
+        results.ambientCountRateMcpsSd0 = wire.readShort();
 
-        // sigma_sd0: not used
-        wire.readShort();
+        results.sigmaSd0 = wire.readShort();
 
         // phase_sd0: not used
         wire.readShort();
 
-        results.finalCrosstalkCorrectRangeMmSd0(wire.readShort());
+        results.finalCrosstalkCorrectRangeMmSd0 = wire.readShort();
 
-        results.peakSignalCountRateCrosstalkCorrectedMcpsSd0(wire.readShort());
-
-        this.results = results.build();
+        results.peakSignalCountRateCrosstalkCorrectedMcpsSd0 = wire.readShort();
     }
 
     private void calibrate() {
-        Register.Bound vhvConfigInit = Vl53l1xReg.VHV_CONFIG__INIT.on(i2c);
-        Register.Bound vhvConfigTimeout = Vl53l1xReg.VHV_CONFIG__TIMEOUT_MACROP_LOOP_BOUND.on(i2c);
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            Register.Bound vhvConfigInit = reg(Vl53l1xReg.VHV_CONFIG__INIT);
+            Register.Bound vhvConfigTimeout = reg(Vl53l1xReg.VHV_CONFIG__TIMEOUT_MACROP_LOOP_BOUND);
+
+            savedVhvInit = vhvConfigInit.read();
+            savedVhvTimeout = vhvConfigTimeout.read();
+
+            vhvConfigInit.write((short) (savedVhvInit & 0x7F));
+            vhvConfigTimeout.write((short) ((savedVhvTimeout & 0x03) + (3 << 2)));
+
+            reg(Vl53l1xReg.PHASECAL_CONFIG__OVERRIDE).write((byte) 0x01);
+            reg(Vl53l1xReg.CAL_CONFIG__VCSEL_START).write(
+                    reg(Vl53l1xReg.PHASECAL_RESULT__VCSEL_START).read()
+            );
+        } finally {
+            tracer.end(span, "Vl53l1x.calibrate");
+        }
+    }
 
-        savedVhvInit = vhvConfigInit.read();
-        savedVhvTimeout = vhvConfigTimeout.read();
+    private void updateDss() {
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            int spadCount = results.dssActualEffectiveSpadsSd0;
 
-        vhvConfigInit.write((short) (savedVhvInit & 0x7F));
-        vhvConfigTimeout.write((short) ((savedVhvTimeout & 0x03) + (3 << 2)));
+            if (spadCount != 0) {
+                // "Calc total rate per spad"
 
-        Vl53l1xReg.PHASECAL_CONFIG__OVERRIDE.on(i2c).write((byte) 0x01);
-        Vl53l1xReg.CAL_CONFIG__VCSEL_START.on(i2c).write(
-                Vl53l1xReg.PHASECAL_RESULT__VCSEL_START.on(i2c).read()
-        );
-    }
+                int peakSignal = results.peakSignalCountRateCrosstalkCorrectedMcpsSd0;
+                int ambientCount = results.ambientCountRateMcpsSd0;
+                int totalRatePerSpad = peakSignal + ambientCount;
 
-    private void updateDss() {
-        int spadCount = results.dssActualEffectiveSpadsSd0();
+                // "clip to 16 bits"
+                if (totalRatePerSpad > 0xFFFF) {
+                    totalRatePerSpad = 0xFFFF;
+                }
+
+                // "shift up to take advantage of 32 bits"
+                totalRatePerSpad <<= 16;
+
+                totalRatePerSpad /= spadCount;
 
-        if (spadCount != 0) {
-            // "Calc total rate per spad"
+                if (totalRatePerSpad != 0) {
+                    // "get the target rate and shift up by 16"
+                    int requiredSpads = (TARGET_RATE << 16) / totalRatePerSpad;
 
-            int peakSignal = results.peakSignalCountRateCrosstalkCorrectedMcpsSd0();
-            int ambientCount = results.ambientCountRateMcpsSd0();
-            int totalRatePerSpad = peakSignal + ambientCount;
+                    // "clip to 16 bit"
+                    if (requiredSpads > 0xFFFF) {
+                        requiredSpads = 0xFFFF;
+                    }
 
-            // "clip to 16 bits"
-            if (totalRatePerSpad > 0xFFFF) {
-                totalRatePerSpad = 0xFFFF;
+                    // "override DSS config"
+                    reg(Vl53l1xReg.DSS_CONFIG__MANUAL_EFFECTIVE_SPADS_SELECT).write16Bit(requiredSpads);
+                    return;
+                }
             }
 
-            // "shift up to take advantage of 32 bits"
-            totalRatePerSpad <<= 16;
+            reg(Vl53l1xReg.DSS_CONFIG__MANUAL_EFFECTIVE_SPADS_SELECT).write16Bit(0x8000);
+        } finally {
+            tracer.end(span, "Vl53l1x.updateDss");
+        }
+    }
 
-            totalRatePerSpad /= spadCount;
+    @Override
+    public void setInterruptMode(InterruptMode mode, int lowMillimeters, int highMillimeters) {
+        Register.Bound interruptConfig = reg(Vl53l1xReg.SYSTEM__INTERRUPT_CONFIG_GPIO);
+        if (mode == InterruptMode.NEW_SAMPLE_READY) {
+            interruptConfig.write((short) 0x20);
+        } else {
+            checkArgument(0 <= lowMillimeters && lowMillimeters <= highMillimeters && highMillimeters <= 0xFFFF,
+                    "thresholds out of range");
+
+            // from VL53L1X_SetDistanceThreshold() in ST's ultra lite driver
+            short window;
+            switch (mode) {
+                case LEVEL_LOW:
+                    window = 0;
+                    break;
+                case LEVEL_HIGH:
+                    window = 1;
+                    break;
+                case OUT_OF_WINDOW:
+                    window = 2;
+                    break;
+                case IN_WINDOW:
+                    window = 3;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown mode: " + mode);
+            }
+            // keep only the no target bit; ST masks with 0x47, which keeps the previous window too
+            interruptConfig.write((short) ((interruptConfig.read() & 0x40) | window));
+            reg(Vl53l1xReg.SYSTEM__THRESH_HIGH).write16Bit(highMillimeters);
+            reg(Vl53l1xReg.SYSTEM__THRESH_LOW).write16Bit(lowMillimeters);
+        }
+        // drop an interrupt latched under the old mode, which the new one may not have raised
+        reg(Vl53l1xReg.SYSTEM__INTERRUPT_CLEAR).write((byte) 0x01);
+        readyConfirmed = false;
+        interruptMode = mode;
+    }
 
-            if (totalRatePerSpad != 0) {
-                // "get the target rate and shift up by 16"
-                int requiredSpads = (TARGET_RATE << 16) / totalRatePerSpad;
+    @Override
+    public InterruptMode getInterruptMode() {
+        return interruptMode;
+    }
 
-                // "clip to 16 bit"
-                if (requiredSpads > 0xFFFF) {
-                    requiredSpads = 0xFFFF;
+    @Override
+    public boolean dataReady() {
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            InterruptLine line = interruptLine;
+            if (line != null) {
+                // GPIO1 is active low
+                return !line.get();
+            }
+            if (!isPredicting()) {
+                return statusReady();
+            }
+            if (readyConfirmed) {
+                return true;
+            }
+            if (measurementIntervalNanos == 0) {
+                // a measurement takes at least the timing budget, even if the period is shorter
+                measurementIntervalNanos = Math.max(continuousPeriodNanos,
+                        TimeUnit.MICROSECONDS.toNanos(getMeasurementTimingBudget()));
+                // after a change of timing while streaming, nextReadyNanos already
+                // points at the next measurement, so only offset the first one
+                if (firstPredictionPending) {
+                    nextReadyNanos += measurementIntervalNanos;
+                    firstPredictionPending = false;
                 }
+            }
+            long now = System.nanoTime();
+            if (now - nextReadyNanos < 0) {
+                return false;
+            }
+            long pollNanos = measurementIntervalNanos / READY_POLLS_PER_MEASUREMENT;
+            if (!statusReady()) {
+                // a threshold event stays latched until cleared, so checking once
+                // per measurement cannot miss one
+                nextReadyNanos = now + (interruptMode == InterruptMode.NEW_SAMPLE_READY
+                        ? pollNanos : measurementIntervalNanos);
+                return false;
+            }
+            // expect the next one a poll early, since it may have been ready for up to a poll
+            nextReadyNanos = now + measurementIntervalNanos - pollNanos;
+            readyConfirmed = true;
+            return true;
+        } finally {
+            tracer.end(span, "Vl53l1x.dataReady");
+        }
+    }
 
-                // "override DSS config"
-                Vl53l1xReg.DSS_CONFIG__MANUAL_EFFECTIVE_SPADS_SELECT.on(i2c).write16Bit(requiredSpads);
-                return;
+    @Override
+    public boolean awaitDataReady(long timeout, TimeUnit unit) {
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            InterruptLine line = interruptLine;
+            if (line != null) {
+                return line.await(false, timeout, unit);
+            }
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            wait.begin();
+            while (!dataReady()) {
+                if (System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                wait.idle();
             }
+            return true;
+        } finally {
+            tracer.end(span, "Vl53l1x.awaitDataReady");
         }
+    }
 
-        Vl53l1xReg.DSS_CONFIG__MANUAL_EFFECTIVE_SPADS_SELECT.on(i2c).write16Bit(0x8000);
+    @Override
+    public void setInterruptLine(InterruptLine line) {
+        this.interruptLine = Objects.requireNonNull(line, "line");
     }
 
     @Override
-    public boolean dataReady() {
-        return (Vl53l1xReg.GPIO__TIO_HV_STATUS.on(i2c).read() & 0x01) == 0;
+    public void clearInterruptLine() {
+        this.interruptLine = null;
+    }
+
+    private boolean statusReady() {
+        return (reg(Vl53l1xReg.GPIO__TIO_HV_STATUS).read() & 0x01) == 0;
     }
 
     void startTimeout() {
@@ -23,9 +23,11 @@ package com.armabot.lidar.impl.vl53l1x;
 import com.armabot.lidar.api.Error;
 import com.armabot.lidar.arcompat.PololuI2c;
 import com.armabot.lidar.arcompat.Register;
+import com.armabot.lidar.arcompat.RegisterScript;
 import com.armabot.lidar.impl.errors.IncorrectModelId;
 import com.armabot.lidar.impl.errors.Timeout;
 import com.armabot.lidar.util.SleepEasy;
+import com.armabot.lidar.util.WaitStrategy;
 
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -35,6 +37,37 @@ import java.util.concurrent.TimeUnit;
  */
 class Vl53l1xInit {
     private static final int MODEL_ID = 0xEACC;
+    // VL53L1_FIRMWARE_BOOT_TIME_US in ST's API; status reads are not valid while the firmware copies NVM
+    private static final long FIRMWARE_BOOT_MICROS = 1200;
+    private static final RegisterScript CONFIG = RegisterScript.builder(PololuI2c.Addressing.SIXTEEN_BIT)
+            .write16Bit(Vl53l1xReg.DSS_CONFIG__TARGET_TOTAL_RATE_MCPS, Vl53l1xI2c.TARGET_RATE)
+            .write(Vl53l1xReg.GPIO__TIO_HV_STATUS, 0x02)
+            .write(Vl53l1xReg.SIGMA_ESTIMATOR__EFFECTIVE_PULSE_WIDTH_NS, 8)
+            .write(Vl53l1xReg.SIGMA_ESTIMATOR__EFFECTIVE_AMBIENT_WIDTH_NS, 16)
+            .write(Vl53l1xReg.ALGO__CROSSTALK_COMPENSATION_VALID_HEIGHT_MM, 0x01)
+            .write(Vl53l1xReg.ALGO__RANGE_IGNORE_VALID_HEIGHT_MM, 0xFF)
+            .write(Vl53l1xReg.ALGO__RANGE_MIN_CLIP, 0)
+            .write(Vl53l1xReg.ALGO__CONSISTENCY_CHECK__TOLERANCE, 2)
+
+            .write16Bit(Vl53l1xReg.SYSTEM__THRESH_RATE_HIGH, 0)
+            .write16Bit(Vl53l1xReg.SYSTEM__THRESH_RATE_LOW, 0)
+            .write(Vl53l1xReg.DSS_CONFIG__APERTURE_ATTENUATION, 0x38)
+
+            .write16Bit(Vl53l1xReg.RANGE_CONFIG__SIGMA_THRESH, 360)
+            .write16Bit(Vl53l1xReg.RANGE_CONFIG__MIN_COUNT_RATE_RTN_LIMIT_MCPS, 192)
+
+            .write(Vl53l1xReg.SYSTEM__GROUPED_PARAMETER_HOLD_0, 1)
+            .write(Vl53l1xReg.SYSTEM__GROUPED_PARAMETER_HOLD_1, 1)
+            .write(Vl53l1xReg.SD_CONFIG__QUANTIFIER, 2)
+
+            .write(Vl53l1xReg.SYSTEM__GROUPED_PARAMETER_HOLD, 0)
+            .write(Vl53l1xReg.SYSTEM__SEED_CONFIG, 1)
+
+            .write(Vl53l1xReg.SYSTEM__SEQUENCE_CONFIG, 0x8B)
+            .write16Bit(Vl53l1xReg.DSS_CONFIG__MANUAL_EFFECTIVE_SPADS_SELECT, 200 << 8)
+            .write(Vl53l1xReg.DSS_CONFIG__ROI_MODE_CONTROL, 2)
+            .build();
+
     private final Vl53l1xI2c target;
     private final PololuI2c i2c;
 
@@ -44,47 +77,54 @@ class Vl53l1xInit {
     }
 
     Optional<Error<?>> initialize() {
-        int modelId = Vl53l1xReg.IDENTIFICATION__MODEL_ID.on(i2c).read16Bit();
+        int modelId = target.reg(Vl53l1xReg.IDENTIFICATION__MODEL_ID).read16Bit();
         if (modelId != MODEL_ID) {
             return Optional.of(IncorrectModelId.of("VL53L1X", MODEL_ID, modelId));
         }
 
-        Vl53l1xReg.SOFT_RESET.on(i2c).write((byte) 0);
+        target.reg(Vl53l1xReg.SOFT_RESET).write((byte) 0);
         // wait for reset...
         SleepEasy.forUnit(100, TimeUnit.MICROSECONDS);
-        Vl53l1xReg.SOFT_RESET.on(i2c).write((byte) 1);
-
-        SleepEasy.forUnit(1, TimeUnit.SECONDS);
+        target.reg(Vl53l1xReg.SOFT_RESET).write((byte) 1);
+        SleepEasy.forUnit(FIRMWARE_BOOT_MICROS, TimeUnit.MICROSECONDS);
 
         if (!awaitSystemBooted()) {
             return Optional.of(Timeout.waitingFor("system boot"));
         }
 
         // set io_2v8
-        Register.Bound padI2cHvExtsupConfig = Vl53l1xReg.PAD_I2C_HV__EXTSUP_CONFIG.on(i2c);
+        Register.Bound padI2cHvExtsupConfig = target.reg(Vl53l1xReg.PAD_I2C_HV__EXTSUP_CONFIG);
         padI2cHvExtsupConfig.write(
                 (short) (padI2cHvExtsupConfig.read() | 0x01)
         );
 
-        target.fastOscFreq(Vl53l1xReg.OSC_MEASURED__FAST_OSC__FREQUENCY.on(i2c).read16Bit());
-        target.oscCalibrateVal(Vl53l1xReg.RESULT__OSC_CALIBRATE_VAL.on(i2c).read16Bit());
+        target.fastOscFreq(target.reg(Vl53l1xReg.OSC_MEASURED__FAST_OSC__FREQUENCY).read16Bit());
+        target.oscCalibrateVal(target.reg(Vl53l1xReg.RESULT__OSC_CALIBRATE_VAL).read16Bit());
 
-        writeConfig();
+        target.runScript(CONFIG);
 
         target.setDistanceMode(DistanceMode.LONG);
         target.setMeasurementTimingBudget(50_000);
 
 
-        Vl53l1xReg.ALGO__PART_TO_PART_RANGE_OFFSET_MM.on(i2c).write16Bit(
-                (short) (Vl53l1xReg.MM_CONFIG__OUTER_OFFSET_MM.on(i2c).read16Bit() * 4)
+        target.reg(Vl53l1xReg.ALGO__PART_TO_PART_RANGE_OFFSET_MM).write16Bit(
+                (short) (target.reg(Vl53l1xReg.MM_CONFIG__OUTER_OFFSET_MM).read16Bit() * 4)
         );
 
         return Optional.empty();
     }
 
+    /**
+     * Poll until the firmware reports it has booted, starting once the minimum
+     * boot time has passed. The sensor may NACK while booting, so polls back off through the sensor's
+     * {@linkplain Vl53l1xI2c#getWaitStrategy() wait strategy} rather than
+     * flooding the bus.
+     */
     private boolean awaitSystemBooted() {
         target.startTimeout();
-        Register.Bound sysStatus = Vl53l1xReg.FIRMWARE__SYSTEM_STATUS.on(i2c);
+        Register.Bound sysStatus = target.reg(Vl53l1xReg.FIRMWARE__SYSTEM_STATUS);
+        WaitStrategy wait = target.getWaitStrategy();
+        wait.begin();
         while (true) {
             if ((sysStatus.read() & 0x01) != 0 && i2c.wasLastOpSuccessful()) {
                 return true;
@@ -94,35 +134,8 @@ class Vl53l1xInit {
                 target.setTimeoutFlag();
                 return false;
             }
-        }
-    }
 
-    private void writeConfig() {
-        Vl53l1xReg.DSS_CONFIG__TARGET_TOTAL_RATE_MCPS.on(i2c).write16Bit(Vl53l1xI2c.TARGET_RATE);
-        Vl53l1xReg.GPIO__TIO_HV_STATUS.on(i2c).write((short) 0x02);
-        Vl53l1xReg.SIGMA_ESTIMATOR__EFFECTIVE_PULSE_WIDTH_NS.on(i2c).write((short) 8);
-        Vl53l1xReg.SIGMA_ESTIMATOR__EFFECTIVE_AMBIENT_WIDTH_NS.on(i2c).write((short) 16);
-        Vl53l1xReg.ALGO__CROSSTALK_COMPENSATION_VALID_HEIGHT_MM.on(i2c).write((short) 0x01);
-        Vl53l1xReg.ALGO__RANGE_IGNORE_VALID_HEIGHT_MM.on(i2c).write((short) 0xFF);
-        Vl53l1xReg.ALGO__RANGE_MIN_CLIP.on(i2c).write((short) 0);
-        Vl53l1xReg.ALGO__CONSISTENCY_CHECK__TOLERANCE.on(i2c).write((short) 2);
-
-        Vl53l1xReg.SYSTEM__THRESH_RATE_HIGH.on(i2c).write16Bit(0);
-        Vl53l1xReg.SYSTEM__THRESH_RATE_LOW.on(i2c).write16Bit(0);
-        Vl53l1xReg.DSS_CONFIG__APERTURE_ATTENUATION.on(i2c).write((short) 0x38);
-
-        Vl53l1xReg.RANGE_CONFIG__SIGMA_THRESH.on(i2c).write16Bit(360);
-        Vl53l1xReg.RANGE_CONFIG__MIN_COUNT_RATE_RTN_LIMIT_MCPS.on(i2c).write16Bit((short) 192);
-
-        Vl53l1xReg.SYSTEM__GROUPED_PARAMETER_HOLD_0.on(i2c).write((short) 1);
-        Vl53l1xReg.SYSTEM__GROUPED_PARAMETER_HOLD_1.on(i2c).write((short) 1);
-        Vl53l1xReg.SD_CONFIG__QUANTIFIER.on(i2c).write((short) 2);
-
-        Vl53l1xReg.SYSTEM__GROUPED_PARAMETER_HOLD.on(i2c).write((short) 0);
-        Vl53l1xReg.SYSTEM__SEED_CONFIG.on(i2c).write((short) 1);
-
-        Vl53l1xReg.SYSTEM__SEQUENCE_CONFIG.on(i2c).write((short) 0x8B);
-        Vl53l1xReg.DSS_CONFIG__MANUAL_EFFECTIVE_SPADS_SELECT.on(i2c).write16Bit(200 << 8);
-        Vl53l1xReg.DSS_CONFIG__ROI_MODE_CONTROL.on(i2c).write((short) 2);
+            wait.idle();
+        }
     }
-}
\ No newline at end of file
+}
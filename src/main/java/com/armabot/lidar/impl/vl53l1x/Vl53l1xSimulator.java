@@ -0,0 +1,227 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl53l1x;
+
+import com.armabot.lidar.arcompat.PololuI2c;
+import com.armabot.lidar.sim.RangeSource;
+import com.armabot.lidar.sim.SimulatedSensor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static com.armabot.lidar.impl.vl53l1x.Calculations.calcMacroPeriod;
+import static com.armabot.lidar.impl.vl53l1x.Calculations.decodeTimeout;
+import static com.armabot.lidar.impl.vl53l1x.Calculations.timeoutMclksToMicroseconds;
+
+/**
+ * A simulated VL53L1X, at the register level.
+ *
+ * <p>
+ * It models the soft reset and boot, single-shot and timed continuous
+ * ranging, timed from the programmed timing budget and inter-measurement
+ * period, the result block and stream count, and the GPIO1 interrupt status,
+ * including the distance threshold modes. Everything else is a plain
+ * register. Ranges past the limit of the distance mode come back as a
+ * signal failure.
+ * </p>
+ */
+public final class Vl53l1xSimulator extends SimulatedSensor {
+
+    private static final int MODEL_ID = 0xEACC;
+    // 12 MHz, in 4.12 fixed point
+    private static final int FAST_OSC_FREQUENCY = 0xC000;
+    private static final int OSC_CALIBRATE_VAL = 0x0400;
+
+    // raw range statuses
+    private static final int RANGE_COMPLETE = 9;
+    private static final int MSRC_NO_TARGET = 4;
+
+    private final Timer ranging = newTimer(this::completeMeasurement);
+    private boolean interrupt;
+    private int streamCount;
+
+    public Vl53l1xSimulator(RangeSource rangeSource) {
+        this(rangeSource, System::nanoTime);
+    }
+
+    public Vl53l1xSimulator(RangeSource rangeSource, LongSupplier clock) {
+        super(PololuI2c.Addressing.SIXTEEN_BIT, rangeSource, clock);
+        powerCycle();
+    }
+
+    @Override
+    protected void loadDefaults() {
+        interrupt = false;
+        set16Bit(Vl53l1xReg.IDENTIFICATION__MODEL_ID.address(), MODEL_ID);
+        set(Vl53l1xReg.SOFT_RESET.address(), 0x01);
+        set(Vl53l1xReg.FIRMWARE__SYSTEM_STATUS.address(), 0x01);
+        set16Bit(Vl53l1xReg.OSC_MEASURED__FAST_OSC__FREQUENCY.address(), FAST_OSC_FREQUENCY);
+        set16Bit(Vl53l1xReg.RESULT__OSC_CALIBRATE_VAL.address(), OSC_CALIBRATE_VAL);
+        set(Vl53l1xReg.VHV_CONFIG__TIMEOUT_MACROP_LOOP_BOUND.address(), 0x81);
+        set(Vl53l1xReg.VHV_CONFIG__INIT.address(), 0xA0);
+        set(Vl53l1xReg.PHASECAL_RESULT__VCSEL_START.address(), 0x0B);
+        set(Vl53l1xReg.GPIO_HV_MUX__CTRL.address(), 0x01);
+        set(Vl53l1xReg.GPIO__TIO_HV_STATUS.address(), 0x02);
+        set(Vl53l1xReg.SYSTEM__INTERRUPT_CONFIG_GPIO.address(), 0x20);
+        // medium distance mode, with a budget of about 33 ms
+        set(Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_A.address(), 0x0B);
+        set(Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_B.address(), 0x09);
+        set16Bit(Vl53l1xReg.RANGE_CONFIG__TIMEOUT_MACROP_A.address(), 0x01CC);
+        set16Bit(Vl53l1xReg.RANGE_CONFIG__TIMEOUT_MACROP_B.address(), 0x01F5);
+    }
+
+    /**
+     * @return the measurement timing budget programmed into the registers
+     */
+    public long getMeasurementTimingBudget(TimeUnit unit) {
+        int macroPeriodMicrosec = calcMacroPeriod(get16Bit(Vl53l1xReg.OSC_MEASURED__FAST_OSC__FREQUENCY.address()),
+                get(Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_A.address()));
+        int rangeConfigTimeoutMicrosec = timeoutMclksToMicroseconds(
+                decodeTimeout(get16Bit(Vl53l1xReg.RANGE_CONFIG__TIMEOUT_MACROP_A.address())),
+                macroPeriodMicrosec);
+        return unit.convert(2L * rangeConfigTimeoutMicrosec + Vl53l1xI2c.TIMING_GUARD, TimeUnit.MICROSECONDS);
+    }
+
+    private long intermeasurementPeriodNanos() {
+        long period = (long) get16Bit(Vl53l1xReg.SYSTEM__INTERMEASUREMENT_PERIOD.address()) << 16
+                | get16Bit(Vl53l1xReg.SYSTEM__INTERMEASUREMENT_PERIOD.address() + 2);
+        int oscCalibrateVal = get16Bit(Vl53l1xReg.RESULT__OSC_CALIBRATE_VAL.address());
+        long periodMillis = oscCalibrateVal == 0 ? period : period / oscCalibrateVal;
+        return TimeUnit.MILLISECONDS.toNanos(periodMillis);
+    }
+
+    private int maxRangeMillimeters() {
+        switch (get(Vl53l1xReg.RANGE_CONFIG__VCSEL_PERIOD_A.address())) {
+            case 0x07:
+                return 1300;
+            case 0x0B:
+                return 3000;
+            default:
+                return 4000;
+        }
+    }
+
+    @Override
+    protected byte readRegister(int reg) {
+        if (reg == Vl53l1xReg.GPIO__TIO_HV_STATUS.address()) {
+            // GPIO1 is active low
+            return (byte) ((get(reg) & ~0x01) | (interrupt ? 0 : 1));
+        }
+        if (reg == Vl53l1xReg.RESULT__INTERRUPT_STATUS.address()) {
+            return (byte) (interrupt ? 0x01 : 0);
+        }
+        return super.readRegister(reg);
+    }
+
+    @Override
+    protected void writeRegister(int reg, byte value) {
+        super.writeRegister(reg, value);
+        if (reg == Vl53l1xReg.SOFT_RESET.address()) {
+            if ((value & 0x01) == 0) {
+                enterReset();
+            } else if (isInReset()) {
+                leaveReset();
+            }
+        } else if (reg == Vl53l1xReg.SYSTEM__INTERRUPT_CLEAR.address()) {
+            if ((value & 0x01) != 0) {
+                interrupt = false;
+            }
+        } else if (reg == Vl53l1xReg.SYSTEM__MODE_START.address()) {
+            startMode(value);
+        }
+    }
+
+    private void startMode(byte mode) {
+        switch (mode & 0xFF) {
+            case 0x10:
+                streamCount = 0;
+                ranging.startSingle(getMeasurementTimingBudget(TimeUnit.NANOSECONDS));
+                break;
+            case 0x20:
+                streamCount = 0;
+                ranging.startContinuous(getMeasurementTimingBudget(TimeUnit.NANOSECONDS), 0);
+                break;
+            case 0x40:
+                streamCount = 0;
+                ranging.startContinuous(getMeasurementTimingBudget(TimeUnit.NANOSECONDS),
+                        intermeasurementPeriodNanos());
+                break;
+            case 0x80:
+                ranging.stop();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void completeMeasurement(long nanos) {
+        int maxRange = maxRangeMillimeters();
+        int range = sampleRange(nanos, maxRange);
+        int status = range < maxRange ? RANGE_COMPLETE : MSRC_NO_TARGET;
+        // 9.7 fixed point, falling off with the square of the range
+        int signalRate = (int) Math.min(0xFFFF, (40L << 7) * 1000 * 1000 / Math.max(1L, (long) range * range));
+
+        int result = Vl53l1xReg.RESULT__RANGE_STATUS.address();
+        set(result, status);
+        // report_status
+        set(result + 1, 0);
+        set(result + 2, streamCount);
+        // dss_actual_effective_spads_sd0, 8.8 fixed point
+        set16Bit(result + 3, 16 << 8);
+        // peak_signal_count_rate_mcps_sd0
+        set16Bit(result + 5, signalRate);
+        // ambient_count_rate_mcps_sd0, 9.7 fixed point
+        set16Bit(result + 7, 1 << 6);
+        // sigma_sd0, 14.2 fixed point
+        set16Bit(result + 9, 2 << 2);
+        // phase_sd0
+        set16Bit(result + 11, 0);
+        // final_crosstalk_corrected_range_mm_sd0, before the driver's correction gain
+        set16Bit(result + 13, (range * 0x0800 + 2011 / 2) / 2011);
+        // peak_signal_count_rate_crosstalk_corrected_mcps_sd0
+        set16Bit(result + 15, signalRate);
+
+        // "after 255, wraps to 128"
+        streamCount = streamCount == 255 ? 128 : streamCount + 1;
+        if (triggersInterrupt(range)) {
+            interrupt = true;
+        }
+    }
+
+    private boolean triggersInterrupt(int range) {
+        int config = get(Vl53l1xReg.SYSTEM__INTERRUPT_CONFIG_GPIO.address());
+        if ((config & 0x20) != 0) {
+            return true;
+        }
+        int low = get16Bit(Vl53l1xReg.SYSTEM__THRESH_LOW.address());
+        int high = get16Bit(Vl53l1xReg.SYSTEM__THRESH_HIGH.address());
+        switch (config & 0x03) {
+            case 0:
+                return range < low;
+            case 1:
+                return range > high;
+            case 2:
+                return range < low || range > high;
+            default:
+                return low <= range && range <= high;
+        }
+    }
+}
@@ -21,16 +21,29 @@
 package com.armabot.lidar.impl.vl6180x;
 
 import com.armabot.lidar.api.Error;
+import com.armabot.lidar.api.InterruptMode;
 import com.armabot.lidar.api.Vl6180x;
+import com.armabot.lidar.arcompat.BoundRegisters;
+import com.armabot.lidar.arcompat.HalI2cTransport;
+import com.armabot.lidar.arcompat.I2cTransport;
+import com.armabot.lidar.arcompat.InterruptLine;
 import com.armabot.lidar.arcompat.PololuI2c;
 import com.armabot.lidar.arcompat.Port;
+import com.armabot.lidar.arcompat.Register;
+import com.armabot.lidar.arcompat.RegisterScript;
+import com.armabot.lidar.impl.SingleShot;
 import com.armabot.lidar.impl.errors.IncorrectModelId;
+import com.armabot.lidar.trace.Tracer;
+import com.armabot.lidar.util.WaitStrategy;
 
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.armabot.lidar.impl.vl6180x.Calculations.constrain;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.I2C_SLAVE__DEVICE_ADDRESS;
@@ -39,21 +52,27 @@ import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.INTERLEAVED_MODE__ENABLE
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.RANGE_SCALER;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.READOUT__AVERAGING_SAMPLE_PERIOD;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.RESULT__ALS_VAL;
+import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.RESULT__HISTORY_BUFFER_0;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.RESULT__INTERRUPT_STATUS_GPIO;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.RESULT__RANGE_VAL;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSALS__ANALOGUE_GAIN;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSALS__INTEGRATION_PERIOD;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSALS__INTERMEASUREMENT_PERIOD;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSALS__START;
+import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSALS__THRESH_HIGH;
+import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSALS__THRESH_LOW;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSRANGE__CROSSTALK_VALID_HEIGHT;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSRANGE__INTERMEASUREMENT_PERIOD;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSRANGE__MAX_CONVERGENCE_TIME;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSRANGE__PART_TO_PART_RANGE_OFFSET;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSRANGE__RANGE_CHECK_ENABLES;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSRANGE__START;
+import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSRANGE__THRESH_HIGH;
+import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSRANGE__THRESH_LOW;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSRANGE__VHV_RECALIBRATE;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSRANGE__VHV_REPEAT_RATE;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSTEM__FRESH_OUT_OF_RESET;
+import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSTEM__HISTORY_CTRL;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSTEM__INTERRUPT_CLEAR;
 import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.SYSTEM__INTERRUPT_CONFIG_GPIO;
 import static com.armabot.lidar.util.Preconditions.checkArgument;
@@ -68,15 +87,128 @@ import static com.armabot.lidar.util.Preconditions.checkState;
 public class Vl6180xI2c implements Vl6180x {
     private static final int MODEL_ID = 0xB4;
 
+    // "Mandatory : private registers", from AN4545
+    private static final RegisterScript FRESH_OUT_OF_RESET_SETTINGS = RegisterScript.builder(PololuI2c.Addressing.SIXTEEN_BIT)
+            .write(0x207, 0x01)
+            .write(0x208, 0x01)
+            .write(0x096, 0x00)
+            .write(0x097, 0xFD) // RANGE_SCALER = 253
+            .write(0x0E3, 0x00)
+            .write(0x0E4, 0x04)
+            .write(0x0E5, 0x02)
+            .write(0x0E6, 0x01)
+            .write(0x0E7, 0x03)
+            .write(0x0F5, 0x02)
+            .write(0x0D9, 0x05)
+            .write(0x0DB, 0xCE)
+            .write(0x0DC, 0x03)
+            .write(0x0DD, 0xF8)
+            .write(0x09F, 0x00)
+            .write(0x0A3, 0x3C)
+            .write(0x0B7, 0x00)
+            .write(0x0BB, 0x3C)
+            .write(0x0B2, 0x09)
+            .write(0x0CA, 0x09)
+            .write(0x198, 0x01)
+            .write(0x1B0, 0x17)
+            .write(0x1AD, 0x00)
+            .write(0x0FF, 0x05)
+            .write(0x100, 0x05)
+            .write(0x199, 0x05)
+            .write(0x1A6, 0x1B)
+            .write(0x1AC, 0x3E)
+            .write(0x1A7, 0x1F)
+            .write(0x030, 0x00)
+            .build();
+
+    // the history buffer holds 16 range or 8 ambient results, most recent first
+    private static final int HISTORY_BUFFER_LENGTH = 16;
+    // how long single-shot measurements take with the settings from configureDefault
+    private static final long RANGE_SINGLE_EXPECTED_MICROS = 5_000;
+    private static final long AMBIENT_SINGLE_EXPECTED_MICROS = 100_000;
+
     private final PololuI2c i2c;
+    private final BoundRegisters<Vl6180xReg> registers;
     private long timeout;
     private long timeoutStart;
     private boolean didTimeout;
     private Scaling scaling = Scaling.ONE_TIMES;
     private short ptpOffset;
+    private HistoryMode historyMode = HistoryMode.DISABLED;
+    private InterruptMode rangeInterruptMode = InterruptMode.NEW_SAMPLE_READY;
+    private InterruptMode ambientInterruptMode = InterruptMode.NEW_SAMPLE_READY;
+    // null when polling the status register
+    private InterruptLine interruptLine;
+    private final byte[] history = new byte[HISTORY_BUFFER_LENGTH];
+    private final byte[] previousHistory = new byte[HISTORY_BUFFER_LENGTH];
+    private final WaitStrategy wait = WaitStrategy.create();
+    // range and ambient single shots cannot overlap
+    private final AtomicBoolean singleShotPending = new AtomicBoolean();
+    private final SingleShot<Short> rangeSingle = new SingleShot<Short>(singleShotPending) {
+        @Override
+        protected void start() {
+            startRangeSingle();
+        }
+
+        @Override
+        protected boolean isReady() {
+            return dataReadyRange();
+        }
+
+        @Override
+        protected boolean isTimedOut() {
+            return currentlyTimedOut();
+        }
+
+        @Override
+        protected Short finish() {
+            return readRangeContinuous();
+        }
+
+        @Override
+        protected Short timedOut() {
+            setTimeoutFlag();
+            return 0;
+        }
+    };
+    private final SingleShot<Integer> ambientSingle = new SingleShot<Integer>(singleShotPending) {
+        @Override
+        protected void start() {
+            startAmbientSingle();
+        }
+
+        @Override
+        protected boolean isReady() {
+            return dataReadyAmbient();
+        }
+
+        @Override
+        protected boolean isTimedOut() {
+            return currentlyTimedOut();
+        }
+
+        @Override
+        protected Integer finish() {
+            return readAmbientContinuous();
+        }
+
+        @Override
+        protected Integer timedOut() {
+            setTimeoutFlag();
+            return 0;
+        }
+    };
+    private long historyDrainedNanos;
+    private long rangePeriodNanos;
+    private long ambientPeriodNanos;
 
     public Vl6180xI2c(Port port) {
-        this.i2c = PololuI2c.create(port, PololuI2c.Addressing.SIXTEEN_BIT);
+        this(port, HalI2cTransport.INSTANCE);
+    }
+
+    public Vl6180xI2c(Port port, I2cTransport transport) {
+        this.i2c = PololuI2c.create(port, transport, PololuI2c.Addressing.SIXTEEN_BIT);
+        this.registers = BoundRegisters.bind(Vl6180xReg.class, i2c);
         i2c.setAddress(DEFAULT_ADDRESS);
     }
 
@@ -95,75 +227,52 @@ public class Vl6180xI2c implements Vl6180x {
         if (address == getAddress()) {
             return;
         }
-        I2C_SLAVE__DEVICE_ADDRESS.on(i2c).write((byte) (address & 0x7F));
+        reg(I2C_SLAVE__DEVICE_ADDRESS).write((byte) (address & 0x7F));
         i2c.setAddress(address);
     }
 
     @Override
     public Optional<Error<?>> initialize() {
-        int modelId = IDENTIFICATION__MODEL_ID.on(i2c).read();
-        if (modelId != MODEL_ID) {
-            return Optional.of(IncorrectModelId.of("VL6180X", MODEL_ID, modelId));
-        }
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            int modelId = reg(IDENTIFICATION__MODEL_ID).read();
+            if (modelId != MODEL_ID) {
+                return Optional.of(IncorrectModelId.of("VL6180X", MODEL_ID, modelId));
+            }
+
+            ptpOffset = reg(SYSRANGE__PART_TO_PART_RANGE_OFFSET).read();
 
-        ptpOffset = SYSRANGE__PART_TO_PART_RANGE_OFFSET.on(i2c).read();
-
-        if (SYSTEM__FRESH_OUT_OF_RESET.on(i2c).read() == 1) {
-            scaling = Scaling.ONE_TIMES;
-
-            i2c.writeReg((short) 0x207, (short) 0x01);
-            i2c.writeReg((short) 0x208, (short) 0x01);
-            i2c.writeReg((short) 0x096, (short) 0x00);
-            i2c.writeReg((short) 0x097, (short) 0xFD); // RANGE_SCALER = 253
-            i2c.writeReg((short) 0x0E3, (short) 0x00);
-            i2c.writeReg((short) 0x0E4, (short) 0x04);
-            i2c.writeReg((short) 0x0E5, (short) 0x02);
-            i2c.writeReg((short) 0x0E6, (short) 0x01);
-            i2c.writeReg((short) 0x0E7, (short) 0x03);
-            i2c.writeReg((short) 0x0F5, (short) 0x02);
-            i2c.writeReg((short) 0x0D9, (short) 0x05);
-            i2c.writeReg((short) 0x0DB, (short) 0xCE);
-            i2c.writeReg((short) 0x0DC, (short) 0x03);
-            i2c.writeReg((short) 0x0DD, (short) 0xF8);
-            i2c.writeReg((short) 0x09F, (short) 0x00);
-            i2c.writeReg((short) 0x0A3, (short) 0x3C);
-            i2c.writeReg((short) 0x0B7, (short) 0x00);
-            i2c.writeReg((short) 0x0BB, (short) 0x3C);
-            i2c.writeReg((short) 0x0B2, (short) 0x09);
-            i2c.writeReg((short) 0x0CA, (short) 0x09);
-            i2c.writeReg((short) 0x198, (short) 0x01);
-            i2c.writeReg((short) 0x1B0, (short) 0x17);
-            i2c.writeReg((short) 0x1AD, (short) 0x00);
-            i2c.writeReg((short) 0x0FF, (short) 0x05);
-            i2c.writeReg((short) 0x100, (short) 0x05);
-            i2c.writeReg((short) 0x199, (short) 0x05);
-            i2c.writeReg((short) 0x1A6, (short) 0x1B);
-            i2c.writeReg((short) 0x1AC, (short) 0x3E);
-            i2c.writeReg((short) 0x1A7, (short) 0x1F);
-            i2c.writeReg((short) 0x030, (short) 0x00);
-
-            SYSTEM__FRESH_OUT_OF_RESET.on(i2c).write((short) 0);
-        } else {
-            // Sensor has already been initialized, so try to get scaling settings by
-            // reading registers.
-
-            int s = RANGE_SCALER.on(i2c).read16Bit();
-
-            this.scaling = Scaling.ONE_TIMES;
-            for (Scaling scaling : Scaling.values()) {
-                if (s == SCALING_VALUES.get(scaling)) {
-                    this.scaling = scaling;
+            if (reg(SYSTEM__FRESH_OUT_OF_RESET).read() == 1) {
+                scaling = Scaling.ONE_TIMES;
+
+                FRESH_OUT_OF_RESET_SETTINGS.runOn(i2c);
+
+                reg(SYSTEM__FRESH_OUT_OF_RESET).write((short) 0);
+            } else {
+                // Sensor has already been initialized, so try to get scaling settings by
+                // reading registers.
+
+                int s = reg(RANGE_SCALER).read16Bit();
+
+                this.scaling = Scaling.ONE_TIMES;
+                for (Scaling scaling : Scaling.values()) {
+                    if (s == SCALING_VALUES.get(scaling)) {
+                        this.scaling = scaling;
+                    }
                 }
+
+                // Adjust the part-to-part range offset value read earlier to account for
+                // existing scaling. If the sensor was already in 2x or 3x scaling mode,
+                // precision will be lost calculating the original (1x) offset, but this can
+                // be resolved by resetting the sensor and Arduino again.
+                ptpOffset *= scaling.amount();
             }
 
-            // Adjust the part-to-part range offset value read earlier to account for
-            // existing scaling. If the sensor was already in 2x or 3x scaling mode,
-            // precision will be lost calculating the original (1x) offset, but this can
-            // be resolved by resetting the sensor and Arduino again.
-            ptpOffset *= scaling.amount();
+            return Optional.empty();
+        } finally {
+            tracer.end(span, "Vl6180x.initialize");
         }
-
-        return Optional.empty();
     }
 
     @Override
@@ -171,6 +280,17 @@ public class Vl6180xI2c implements Vl6180x {
         return i2c;
     }
 
+    /**
+     * @return the strategy used to wait for the sensor, and its poll counters
+     */
+    public WaitStrategy getWaitStrategy() {
+        return wait;
+    }
+
+    Register.Bound reg(Vl6180xReg register) {
+        return registers.get(register);
+    }
+
     private static final Map<Scaling, Short> SCALING_VALUES;
 
     static {
@@ -185,20 +305,20 @@ public class Vl6180xI2c implements Vl6180x {
     @Override
     public void setScaling(Scaling scaling) {
         this.scaling = scaling;
-        RANGE_SCALER.on(i2c).write16Bit(SCALING_VALUES.get(scaling));
+        reg(RANGE_SCALER).write16Bit(SCALING_VALUES.get(scaling));
 
         int scalingAmt = scaling.amount();
         // apply scaling on part-to-part offset
-        SYSRANGE__PART_TO_PART_RANGE_OFFSET.on(i2c).write((short) (ptpOffset / scalingAmt));
+        reg(SYSRANGE__PART_TO_PART_RANGE_OFFSET).write((short) (ptpOffset / scalingAmt));
 
         // apply scaling on CrossTalkValidHeight
-        SYSRANGE__CROSSTALK_VALID_HEIGHT.on(i2c).write((short) (DEFAULT_CROSSTALK_VALID_HEIGHT / scalingAmt));
+        reg(SYSRANGE__CROSSTALK_VALID_HEIGHT).write((short) (DEFAULT_CROSSTALK_VALID_HEIGHT / scalingAmt));
 
         // This function does not apply scaling to RANGE_IGNORE_VALID_HEIGHT.
 
         // enable early convergence estimate only at 1x scaling
-        short rce = SYSRANGE__RANGE_CHECK_ENABLES.on(i2c).read();
-        SYSRANGE__RANGE_CHECK_ENABLES.on(i2c).write((short) ((rce & 0xFE) |
+        short rce = reg(SYSRANGE__RANGE_CHECK_ENABLES).read();
+        reg(SYSRANGE__RANGE_CHECK_ENABLES).write((short) ((rce & 0xFE) |
                 (scaling == Scaling.ONE_TIMES ? 1 : 0)));
     }
 
@@ -212,41 +332,43 @@ public class Vl6180xI2c implements Vl6180x {
         // "Recommended : Public registers"
 
         // readout__averaging_sample_period = 48
-        READOUT__AVERAGING_SAMPLE_PERIOD.on(i2c).write((short) 0x30);
+        reg(READOUT__AVERAGING_SAMPLE_PERIOD).write((short) 0x30);
 
         // sysals__analogue_gain_light = 6 (ALS gain = 1 nominal, actually 1.01 according to Table 14 in datasheet)
-        SYSALS__ANALOGUE_GAIN.on(i2c).write((short) 0x46);
+        reg(SYSALS__ANALOGUE_GAIN).write((short) 0x46);
 
         // sysrange__vhv_repeat_rate = 255 (auto Very High Voltage temperature recalibration after every 255 range measurements)
-        SYSRANGE__VHV_REPEAT_RATE.on(i2c).write((short) 0xFF);
+        reg(SYSRANGE__VHV_REPEAT_RATE).write((short) 0xFF);
 
         // sysals__integration_period = 99 (100 ms)
         // AN4545 incorrectly recommends writing to register 0x040; 0x63 should go in the lower byte, which is register 0x041.
-        SYSALS__INTEGRATION_PERIOD.on(i2c).write16Bit(0x0063);
+        reg(SYSALS__INTEGRATION_PERIOD).write16Bit(0x0063);
 
         // sysrange__vhv_recalibrate = 1 (manually trigger a VHV recalibration)
-        SYSRANGE__VHV_RECALIBRATE.on(i2c).write((short) 0x01);
+        reg(SYSRANGE__VHV_RECALIBRATE).write((short) 0x01);
 
 
         // "Optional: Public registers"
 
         // sysrange__intermeasurement_period = 9 (100 ms)
-        SYSRANGE__INTERMEASUREMENT_PERIOD.on(i2c).write((short) 0x09);
+        reg(SYSRANGE__INTERMEASUREMENT_PERIOD).write((short) 0x09);
 
         // sysals__intermeasurement_period = 49 (500 ms)
-        SYSALS__INTERMEASUREMENT_PERIOD.on(i2c).write((short) 0x31);
+        reg(SYSALS__INTERMEASUREMENT_PERIOD).write((short) 0x31);
 
         // als_int_mode = 4 (ALS new sample ready interrupt); range_int_mode = 4 (range new sample ready interrupt)
-        SYSTEM__INTERRUPT_CONFIG_GPIO.on(i2c).write((short) 0x24);
+        reg(SYSTEM__INTERRUPT_CONFIG_GPIO).write((short) 0x24);
+        rangeInterruptMode = InterruptMode.NEW_SAMPLE_READY;
+        ambientInterruptMode = InterruptMode.NEW_SAMPLE_READY;
 
 
         // Reset other settings to power-on defaults
 
         // sysrange__max_convergence_time = 49 (49 ms)
-        SYSRANGE__MAX_CONVERGENCE_TIME.on(i2c).write((short) 0x31);
+        reg(SYSRANGE__MAX_CONVERGENCE_TIME).write((short) 0x31);
 
         // disable interleaved mode
-        INTERLEAVED_MODE__ENABLE.on(i2c).write((short) 0);
+        reg(INTERLEAVED_MODE__ENABLE).write((short) 0);
 
         // reset range scaling factor to 1x
         setScaling(Scaling.ONE_TIMES);
@@ -254,27 +376,70 @@ public class Vl6180xI2c implements Vl6180x {
 
     @Override
     public short readRangeSingle() {
-        SYSRANGE__START.on(i2c).write((short) 0x01);
-        startTimeout();
-        while (!dataReadyRange()) {
-            if (currentlyTimedOut()) {
-                setTimeoutFlag();
-                return 0;
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            startRangeSingle();
+            wait.begin();
+            while (!dataReadyRange()) {
+                if (currentlyTimedOut()) {
+                    setTimeoutFlag();
+                    return 0;
+                }
+                wait.idle();
             }
+            return readRangeContinuous();
+        } finally {
+            tracer.end(span, "Vl6180x.readRangeSingle");
         }
-        return readRangeContinuous();
     }
 
     @Override
     public int readAmbientSingle() {
-        SYSALS__START.on(i2c).write((short) 0x01);
-        while (!dataReadyAmbient()) {
-            if (currentlyTimedOut()) {
-                setTimeoutFlag();
-                return 0;
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            startAmbientSingle();
+            wait.begin();
+            while (!dataReadyAmbient()) {
+                if (currentlyTimedOut()) {
+                    setTimeoutFlag();
+                    return 0;
+                }
+                wait.idle();
             }
+            return readAmbientContinuous();
+        } finally {
+            tracer.end(span, "Vl6180x.readAmbientSingle");
         }
-        return readAmbientContinuous();
+    }
+
+    @Override
+    public CompletableFuture<Short> readRangeSingleAsync() {
+        return rangeSingle.submit(i2c.getWire().getBus().getExecutor(),
+                RANGE_SINGLE_EXPECTED_MICROS, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public CompletableFuture<Integer> readAmbientSingleAsync() {
+        return ambientSingle.submit(i2c.getWire().getBus().getExecutor(),
+                AMBIENT_SINGLE_EXPECTED_MICROS, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Start a single-shot range measurement, and its timeout.
+     */
+    void startRangeSingle() {
+        reg(SYSRANGE__START).write((short) 0x01);
+        startTimeout();
+    }
+
+    /**
+     * Start a single-shot ambient light measurement, and its timeout.
+     */
+    void startAmbientSingle() {
+        reg(SYSALS__START).write((short) 0x01);
+        startTimeout();
     }
 
     @Override
@@ -282,8 +447,9 @@ public class Vl6180xI2c implements Vl6180x {
         short period_reg = (short) (period / 10 - 1);
         period_reg = constrain(period_reg, (short) 0, (short) 254);
 
-        SYSRANGE__INTERMEASUREMENT_PERIOD.on(i2c).write(period_reg);
-        SYSRANGE__START.on(i2c).write((short) 0x03);
+        reg(SYSRANGE__INTERMEASUREMENT_PERIOD).write(period_reg);
+        reg(SYSRANGE__START).write((short) 0x03);
+        rangePeriodNanos = periodRegToNanos(period_reg);
     }
 
     @Override
@@ -291,8 +457,9 @@ public class Vl6180xI2c implements Vl6180x {
         short period_reg = (short) (period / 10 - 1);
         period_reg = constrain(period_reg, (short) 0, (short) 254);
 
-        SYSALS__INTERMEASUREMENT_PERIOD.on(i2c).write(period_reg);
-        SYSALS__START.on(i2c).write((short) 0x03);
+        reg(SYSALS__INTERMEASUREMENT_PERIOD).write(period_reg);
+        reg(SYSALS__START).write((short) 0x03);
+        ambientPeriodNanos = periodRegToNanos(period_reg);
     }
 
     @Override
@@ -300,46 +467,304 @@ public class Vl6180xI2c implements Vl6180x {
         short period_reg = (short) (period / 10 - 1);
         period_reg = constrain(period_reg, (short) 0, (short) 254);
 
-        INTERLEAVED_MODE__ENABLE.on(i2c).write((short) 1);
-        SYSALS__INTERMEASUREMENT_PERIOD.on(i2c).write(period_reg);
-        SYSALS__START.on(i2c).write((short) 0x03);
+        reg(INTERLEAVED_MODE__ENABLE).write((short) 1);
+        reg(SYSALS__INTERMEASUREMENT_PERIOD).write(period_reg);
+        reg(SYSALS__START).write((short) 0x03);
+        rangePeriodNanos = periodRegToNanos(period_reg);
+        ambientPeriodNanos = rangePeriodNanos;
     }
 
     @Override
     public void stopContinuous() {
-        SYSRANGE__START.on(i2c).write((short) 0x01);
-        SYSALS__START.on(i2c).write((short) 0x01);
+        reg(SYSRANGE__START).write((short) 0x01);
+        reg(SYSALS__START).write((short) 0x01);
 
-        INTERLEAVED_MODE__ENABLE.on(i2c).write((short) 0);
+        reg(INTERLEAVED_MODE__ENABLE).write((short) 0);
     }
 
     @Override
     public boolean dataReadyRange() {
-        return (RESULT__INTERRUPT_STATUS_GPIO.on(i2c).read() & 0x04) != 0;
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            if (isInterruptLineIdle()) {
+                return false;
+            }
+            // range_int_gpio in bits [2:0], matching the configured mode
+            return (reg(RESULT__INTERRUPT_STATUS_GPIO).read() & 0x07) == interruptConfig(rangeInterruptMode);
+        } finally {
+            tracer.end(span, "Vl6180x.dataReadyRange");
+        }
     }
 
     @Override
-    public short readRangeContinuous() {
-        checkState(dataReadyRange(), "Data not ready, check dataReadyRange()");
-        short range = RESULT__RANGE_VAL.on(i2c).read();
-        SYSTEM__INTERRUPT_CLEAR.on(i2c).write((short) 0x01);
+    public void setRangeInterruptMode(InterruptMode mode, int lowMillimeters, int highMillimeters) {
+        short config = interruptConfig(mode);
+        if (mode != InterruptMode.NEW_SAMPLE_READY) {
+            int scale = scaling.amount();
+            int low = lowMillimeters / scale;
+            int high = highMillimeters / scale;
+            checkArgument(0 <= low && low <= high && high <= 0xFF, "thresholds out of range");
+            reg(SYSRANGE__THRESH_LOW).write((short) low);
+            reg(SYSRANGE__THRESH_HIGH).write((short) high);
+        }
+        Register.Bound interruptConfig = reg(SYSTEM__INTERRUPT_CONFIG_GPIO);
+        interruptConfig.write((short) ((interruptConfig.read() & ~0x07) | config));
+        // drop an interrupt latched under the old mode, which would hold GPIO1 low
+        reg(SYSTEM__INTERRUPT_CLEAR).write((short) 0x01);
+        rangeInterruptMode = mode;
+    }
 
-        return range;
+    @Override
+    public InterruptMode getRangeInterruptMode() {
+        return rangeInterruptMode;
+    }
+
+    @Override
+    public short readRangeContinuous() {
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            checkState(dataReadyRange(), "Data not ready, check dataReadyRange()");
+            short range = reg(RESULT__RANGE_VAL).read();
+            reg(SYSTEM__INTERRUPT_CLEAR).write((short) 0x01);
+
+            return range;
+        } finally {
+            tracer.end(span, "Vl6180x.readRangeContinuous");
+        }
     }
 
     @Override
     public boolean dataReadyAmbient() {
-        return (RESULT__INTERRUPT_STATUS_GPIO.on(i2c).read() & 0x20) != 0;
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            if (isInterruptLineIdle()) {
+                return false;
+            }
+            // als_int_gpio in bits [5:3], matching the configured mode
+            return ((reg(RESULT__INTERRUPT_STATUS_GPIO).read() >> 3) & 0x07) == interruptConfig(ambientInterruptMode);
+        } finally {
+            tracer.end(span, "Vl6180x.dataReadyAmbient");
+        }
+    }
+
+    @Override
+    public void setAmbientInterruptMode(InterruptMode mode, int low, int high) {
+        short config = interruptConfig(mode);
+        if (mode != InterruptMode.NEW_SAMPLE_READY) {
+            checkArgument(0 <= low && low <= high && high <= 0xFFFF, "thresholds out of range");
+            reg(SYSALS__THRESH_LOW).write16Bit(low);
+            reg(SYSALS__THRESH_HIGH).write16Bit(high);
+        }
+        Register.Bound interruptConfig = reg(SYSTEM__INTERRUPT_CONFIG_GPIO);
+        interruptConfig.write((short) ((interruptConfig.read() & ~0x38) | (config << 3)));
+        reg(SYSTEM__INTERRUPT_CLEAR).write((short) 0x02);
+        ambientInterruptMode = mode;
+    }
+
+    @Override
+    public InterruptMode getAmbientInterruptMode() {
+        return ambientInterruptMode;
+    }
+
+    @Override
+    public boolean awaitDataReadyRange(long timeout, TimeUnit unit) {
+        return awaitDataReady(true, unit.toNanos(timeout));
+    }
+
+    @Override
+    public boolean awaitDataReadyAmbient(long timeout, TimeUnit unit) {
+        return awaitDataReady(false, unit.toNanos(timeout));
+    }
+
+    private boolean awaitDataReady(boolean range, long timeoutNanos) {
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            long deadline = System.nanoTime() + timeoutNanos;
+            InterruptLine line = interruptLine;
+            wait.begin();
+            while (true) {
+                // GPIO1 is shared by range and ambient, so check which is ready once it's low
+                if (line != null && !line.await(false, deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+                if (range ? dataReadyRange() : dataReadyAmbient()) {
+                    return true;
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                wait.idle();
+            }
+        } finally {
+            tracer.end(span, "Vl6180x.awaitDataReady");
+        }
+    }
+
+    /**
+     * @return if there is an interrupt line, and it shows nothing is ready
+     */
+    private boolean isInterruptLineIdle() {
+        InterruptLine line = interruptLine;
+        // GPIO1 is active low
+        return line != null && line.get();
+    }
+
+    @Override
+    public void setInterruptLine(InterruptLine line) {
+        this.interruptLine = Objects.requireNonNull(line, "line");
+    }
+
+    @Override
+    public void clearInterruptLine() {
+        this.interruptLine = null;
+    }
+
+    private static short interruptConfig(InterruptMode mode) {
+        switch (mode) {
+            case NEW_SAMPLE_READY:
+                return 4;
+            case LEVEL_LOW:
+                return 1;
+            case LEVEL_HIGH:
+                return 2;
+            case OUT_OF_WINDOW:
+                return 3;
+            default:
+                throw new IllegalArgumentException("Unsupported mode: " + mode);
+        }
     }
 
     @Override
     public int readAmbientContinuous() {
-        checkState(dataReadyAmbient(), "Data not ready, check dataReadyAmbient()");
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            checkState(dataReadyAmbient(), "Data not ready, check dataReadyAmbient()");
 
-        int ambient = RESULT__ALS_VAL.on(i2c).read16Bit();
-        SYSTEM__INTERRUPT_CLEAR.on(i2c).write((short) 0x02);
+            int ambient = reg(RESULT__ALS_VAL).read16Bit();
+            reg(SYSTEM__INTERRUPT_CLEAR).write((short) 0x02);
+
+            return ambient;
+        } finally {
+            tracer.end(span, "Vl6180x.readAmbientContinuous");
+        }
+    }
+
+    @Override
+    public void setHistoryMode(HistoryMode mode) {
+        short ctrl;
+        switch (mode) {
+            case RANGE:
+                ctrl = 0x01;
+                break;
+            case AMBIENT:
+                ctrl = 0x03;
+                break;
+            default:
+                ctrl = 0x00;
+                break;
+        }
+        // bit 2 clears the buffer, and is cleared by the sensor when done
+        reg(SYSTEM__HISTORY_CTRL).write((short) (ctrl | 0x04));
+        historyMode = mode;
+        Arrays.fill(previousHistory, (byte) 0);
+        historyDrainedNanos = System.nanoTime();
+    }
+
+    @Override
+    public HistoryMode getHistoryMode() {
+        return historyMode;
+    }
+
+    @Override
+    public int readRangeHistory(short[] out) {
+        checkState(historyMode == HistoryMode.RANGE, "Range history not enabled");
+        checkArgument(out.length >= HISTORY_BUFFER_LENGTH, "out must hold %s results", HISTORY_BUFFER_LENGTH);
+        int fresh = drainHistory(Byte.BYTES, rangePeriodNanos);
+        for (int i = 0; i < fresh; i++) {
+            out[i] = (short) Byte.toUnsignedInt(history[fresh - 1 - i]);
+        }
+        return fresh;
+    }
+
+    @Override
+    public int readAmbientHistory(int[] out) {
+        checkState(historyMode == HistoryMode.AMBIENT, "Ambient history not enabled");
+        int entries = HISTORY_BUFFER_LENGTH / Short.BYTES;
+        checkArgument(out.length >= entries, "out must hold %s results", entries);
+        int fresh = drainHistory(Short.BYTES, ambientPeriodNanos);
+        for (int i = 0; i < fresh; i++) {
+            int at = (fresh - 1 - i) * Short.BYTES;
+            out[i] = (Byte.toUnsignedInt(history[at]) << 8) | Byte.toUnsignedInt(history[at + 1]);
+        }
+        return fresh;
+    }
+
+    /**
+     * Read the whole history buffer in one burst, and work out how many
+     * entries are new since the last read.
+     *
+     * <p>
+     * The sensor does not count new entries, so this estimates the count
+     * from the time since the last read, then picks the count closest to
+     * that which is consistent with the last read, shifted by that many
+     * entries.
+     * </p>
+     *
+     * @return the number of new entries, at the start of {@link #history}
+     */
+    private int drainHistory(int entryBytes, long periodNanos) {
+        Tracer tracer = i2c.getTracer();
+        long span = tracer.start();
+        try {
+            i2c.requestRegValue(RESULT__HISTORY_BUFFER_0.address(), HISTORY_BUFFER_LENGTH);
+            i2c.getWire().read(history);
+            long now = System.nanoTime();
+
+            int entries = HISTORY_BUFFER_LENGTH / entryBytes;
+            int expected = 0;
+            if (periodNanos > 0) {
+                expected = (int) Math.min(entries, (now - historyDrainedNanos) / periodNanos);
+            }
+            // if no shift is consistent, every entry is new, and some may have been missed
+            int fresh = entries;
+            boolean matched = false;
+            for (int k = 0; k < entries; k++) {
+                if ((!matched || Math.abs(k - expected) < Math.abs(fresh - expected))
+                        && isHistoryShiftedBy(k * entryBytes)) {
+                    fresh = k;
+                    matched = true;
+                }
+            }
+
+            if (periodNanos > 0 && fresh < entries) {
+                historyDrainedNanos += fresh * periodNanos;
+            } else {
+                historyDrainedNanos = now;
+            }
+            System.arraycopy(history, 0, previousHistory, 0, HISTORY_BUFFER_LENGTH);
+            return fresh;
+        } finally {
+            tracer.end(span, "Vl6180x.drainHistory");
+        }
+    }
+
+    private boolean isHistoryShiftedBy(int shift) {
+        for (int i = 0; i + shift < HISTORY_BUFFER_LENGTH; i++) {
+            if (history[i + shift] != previousHistory[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        return ambient;
+    private static long periodRegToNanos(short periodReg) {
+        // the period register is in units of 10 ms, minus one
+        return TimeUnit.MILLISECONDS.toNanos((periodReg + 1) * 10L);
     }
 
     @Override
@@ -0,0 +1,268 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl6180x;
+
+import com.armabot.lidar.arcompat.PololuI2c;
+import com.armabot.lidar.sim.RangeSource;
+import com.armabot.lidar.sim.SimulatedSensor;
+import com.armabot.lidar.util.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static com.armabot.lidar.impl.vl6180x.Vl6180xReg.*;
+
+/**
+ * A simulated VL6180X, at the register level.
+ *
+ * <p>
+ * It models the boot, single-shot and continuous range and ambient light
+ * measurements, including interleaved mode, timed from the readout
+ * averaging, integration and inter-measurement periods, range scaling, the
+ * history buffer, and the interrupt status, including the threshold modes.
+ * Everything else is a plain register.
+ * </p>
+ */
+public final class Vl6180xSimulator extends SimulatedSensor {
+
+    private static final int MODEL_ID = 0xB4;
+    private static final int HISTORY_BUFFER_LENGTH = 16;
+    private static final int NO_CONVERGENCE = 11;
+
+    private final Timer ranging = newTimer(this::completeRange);
+    private final Timer ambient = newTimer(this::completeAmbient);
+    private boolean rangeContinuous;
+    private boolean ambientContinuous;
+    private int interruptStatus;
+    private int ambientCount = 100;
+
+    public Vl6180xSimulator(RangeSource rangeSource) {
+        this(rangeSource, System::nanoTime);
+    }
+
+    public Vl6180xSimulator(RangeSource rangeSource, LongSupplier clock) {
+        super(PololuI2c.Addressing.SIXTEEN_BIT, rangeSource, clock);
+        powerCycle();
+    }
+
+    public int getAmbientCount() {
+        return ambientCount;
+    }
+
+    /**
+     * Sets the raw count reported by ambient light measurements.
+     */
+    public void setAmbientCount(int ambientCount) {
+        Preconditions.checkArgument(0 <= ambientCount && ambientCount <= 0xFFFF, "ambientCount out of range");
+        this.ambientCount = ambientCount;
+    }
+
+    @Override
+    protected void loadDefaults() {
+        rangeContinuous = false;
+        ambientContinuous = false;
+        interruptStatus = 0;
+        set(IDENTIFICATION__MODEL_ID.address(), MODEL_ID);
+        set(SYSTEM__FRESH_OUT_OF_RESET.address(), 0x01);
+        set(FIRMWARE__BOOTUP.address(), 0x01);
+        set16Bit(RANGE_SCALER.address(), 253);
+        set(READOUT__AVERAGING_SAMPLE_PERIOD.address(), 0x30);
+        set(SYSRANGE__MAX_CONVERGENCE_TIME.address(), 0x31);
+        set(SYSRANGE__INTERMEASUREMENT_PERIOD.address(), 0xFF);
+        set(SYSALS__INTERMEASUREMENT_PERIOD.address(), 0xFF);
+        set16Bit(SYSALS__INTEGRATION_PERIOD.address(), 0x0063);
+    }
+
+    private long readoutAveragingNanos() {
+        // 1.3 ms, plus 64.5 us per sample period
+        return 1_300_000L + get(READOUT__AVERAGING_SAMPLE_PERIOD.address()) * 64_500L;
+    }
+
+    private long rangeDurationNanos() {
+        // and about 1 ms to converge on a nearby target
+        return readoutAveragingNanos() + TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private long ambientDurationNanos() {
+        int integrationPeriod = get16Bit(SYSALS__INTEGRATION_PERIOD.address()) & 0x1FF;
+        return readoutAveragingNanos() + TimeUnit.MILLISECONDS.toNanos(integrationPeriod + 1);
+    }
+
+    private long periodNanos(Vl6180xReg periodReg) {
+        // in units of 10 ms, minus one
+        return TimeUnit.MILLISECONDS.toNanos((get(periodReg.address()) + 1) * 10L);
+    }
+
+    private boolean isInterleaved() {
+        return (get(INTERLEAVED_MODE__ENABLE.address()) & 0x01) != 0;
+    }
+
+    private int scaling() {
+        switch (get16Bit(RANGE_SCALER.address())) {
+            case 84:
+                return 3;
+            case 127:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    @Override
+    protected byte readRegister(int reg) {
+        if (reg == RESULT__INTERRUPT_STATUS_GPIO.address()) {
+            return (byte) interruptStatus;
+        }
+        return super.readRegister(reg);
+    }
+
+    @Override
+    protected void writeRegister(int reg, byte value) {
+        if (reg == SYSRANGE__START.address()) {
+            // the start bit clears as soon as the measurement starts
+            super.writeRegister(reg, (byte) (value & ~0x01));
+            startRange(value);
+        } else if (reg == SYSALS__START.address()) {
+            super.writeRegister(reg, (byte) (value & ~0x01));
+            startAmbient(value);
+        } else if (reg == SYSTEM__INTERRUPT_CLEAR.address()) {
+            if ((value & 0x01) != 0) {
+                interruptStatus &= ~0x07;
+            }
+            if ((value & 0x02) != 0) {
+                interruptStatus &= ~0x38;
+            }
+        } else if (reg == SYSTEM__HISTORY_CTRL.address()) {
+            if ((value & 0x04) != 0) {
+                for (int i = 0; i < HISTORY_BUFFER_LENGTH; i++) {
+                    set(RESULT__HISTORY_BUFFER_0.address() + i, 0);
+                }
+            }
+            super.writeRegister(reg, (byte) (value & ~0x04));
+        } else {
+            super.writeRegister(reg, value);
+        }
+    }
+
+    private void startRange(byte value) {
+        if ((value & 0x01) == 0) {
+            return;
+        }
+        if (rangeContinuous) {
+            rangeContinuous = false;
+            ranging.stop();
+        } else if ((value & 0x02) != 0) {
+            rangeContinuous = true;
+            ranging.startContinuous(rangeDurationNanos(), periodNanos(SYSRANGE__INTERMEASUREMENT_PERIOD));
+        } else {
+            ranging.startSingle(rangeDurationNanos());
+        }
+    }
+
+    private void startAmbient(byte value) {
+        if ((value & 0x01) == 0) {
+            return;
+        }
+        if (ambientContinuous) {
+            ambientContinuous = false;
+            ambient.stop();
+        } else if ((value & 0x02) != 0) {
+            ambientContinuous = true;
+            ambient.startContinuous(ambientDurationNanos(), periodNanos(SYSALS__INTERMEASUREMENT_PERIOD));
+        } else {
+            ambient.startSingle(ambientDurationNanos());
+        }
+    }
+
+    private void completeRange(long nanos) {
+        int scaling = scaling();
+        int maxRange = 0xFF * scaling;
+        int range = sampleRange(nanos, maxRange);
+        int error = range < maxRange ? 0 : NO_CONVERGENCE;
+        int value = range / scaling;
+
+        // device ready, and the error code in bits [7:4]
+        set(RESULT__RANGE_STATUS.address(), (error << 4) | 0x01);
+        set(RESULT__RANGE_VAL.address(), value);
+        set(RESULT__RANGE_RAW.address(), Math.min(0xFF, range));
+        if (isHistoryEnabled(false)) {
+            pushHistory(Byte.BYTES, value);
+        }
+
+        int config = get(SYSTEM__INTERRUPT_CONFIG_GPIO.address()) & 0x07;
+        if (triggersInterrupt(config, value,
+                get(SYSRANGE__THRESH_LOW.address()), get(SYSRANGE__THRESH_HIGH.address()))) {
+            interruptStatus = (interruptStatus & ~0x07) | config;
+        }
+    }
+
+    private void completeAmbient(long nanos) {
+        set(RESULT__ALS_STATUS.address(), 0x01);
+        set16Bit(RESULT__ALS_VAL.address(), ambientCount);
+        if (isHistoryEnabled(true)) {
+            pushHistory(Short.BYTES, ambientCount);
+        }
+
+        int config = (get(SYSTEM__INTERRUPT_CONFIG_GPIO.address()) >> 3) & 0x07;
+        if (triggersInterrupt(config, ambientCount,
+                get16Bit(SYSALS__THRESH_LOW.address()), get16Bit(SYSALS__THRESH_HIGH.address()))) {
+            interruptStatus = (interruptStatus & ~0x38) | (config << 3);
+        }
+
+        if (isInterleaved()) {
+            // a range measurement follows every ambient light one
+            ranging.startSingle(rangeDurationNanos());
+        }
+    }
+
+    private boolean isHistoryEnabled(boolean ambient) {
+        int ctrl = get(SYSTEM__HISTORY_CTRL.address());
+        return (ctrl & 0x01) != 0 && ((ctrl & 0x02) != 0) == ambient;
+    }
+
+    private void pushHistory(int entryBytes, int value) {
+        // the newest entry comes first
+        int start = RESULT__HISTORY_BUFFER_0.address();
+        for (int i = HISTORY_BUFFER_LENGTH - 1; i >= entryBytes; i--) {
+            set(start + i, get(start + i - entryBytes));
+        }
+        if (entryBytes == Short.BYTES) {
+            set16Bit(start, value);
+        } else {
+            set(start, value);
+        }
+    }
+
+    private static boolean triggersInterrupt(int config, int value, int low, int high) {
+        switch (config) {
+            case 1:
+                return value < low;
+            case 2:
+                return value > high;
+            case 3:
+                return value < low || value > high;
+            case 4:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
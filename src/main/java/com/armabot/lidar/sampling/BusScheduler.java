@@ -0,0 +1,177 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sampling;
+
+import com.armabot.lidar.util.Preconditions;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads many sensors sharing one bus from a single thread, in deadline order.
+ *
+ * <p>
+ * For each sensor, the scheduler predicts when its next measurement will be
+ * ready from the time of its last one and its interval (the larger of the
+ * inter-measurement period and the timing budget). Sensors are not polled
+ * before then. Each {@linkplain #runCycle() cycle} reads the sensors that are
+ * due, earliest deadline first, where the deadline is when the sensor will
+ * replace the measurement with the next one. A cycle stops once it used its
+ * bus time budget, leaving the rest for the next cycle, but always reads at
+ * least one sensor.
+ * </p>
+ *
+ * <p>
+ * The caller drives the scheduler, for example from a loop that sleeps for
+ * {@link #nanosUntilNextReady(long)} between cycles. It is not thread-safe.
+ * </p>
+ */
+public final class BusScheduler implements AutoCloseable {
+
+    private final long cycleBudgetNanos;
+    private ScheduledSensor[] sensors = new ScheduledSensor[0];
+    // reused each cycle, ordered by deadline
+    private ScheduledSensor[] due = new ScheduledSensor[0];
+    private boolean started;
+
+    /**
+     * @param cycleBudget the most bus time one cycle may use
+     */
+    public BusScheduler(long cycleBudget, TimeUnit unit) {
+        Preconditions.checkArgument(cycleBudget > 0, "cycleBudget must be positive");
+        this.cycleBudgetNanos = unit.toNanos(cycleBudget);
+    }
+
+    /**
+     * Add a sensor, with a ring of {@link SamplingEngine#DEFAULT_CAPACITY} samples.
+     *
+     * @param name the name of the sensor
+     * @param sampler the sensor
+     * @param periodMillis the inter-measurement period
+     * @return the scheduled sensor
+     */
+    public ScheduledSensor add(String name, RangeSampler sampler, int periodMillis) {
+        Preconditions.checkState(!started, "Scheduler already started");
+        Preconditions.checkArgument(periodMillis > 0, "periodMillis must be positive");
+        long intervalNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(periodMillis),
+                TimeUnit.MICROSECONDS.toNanos(sampler.getTimingBudgetMicros()));
+        ScheduledSensor sensor = new ScheduledSensor(name, sampler, intervalNanos,
+                PollTiming.pollNanos(intervalNanos), new SampleRing(SamplingEngine.DEFAULT_CAPACITY));
+        sensors = Arrays.copyOf(sensors, sensors.length + 1);
+        sensors[sensors.length - 1] = sensor;
+        due = new ScheduledSensor[sensors.length];
+        return sensor;
+    }
+
+    public List<ScheduledSensor> getSensors() {
+        return Collections.unmodifiableList(Arrays.asList(sensors));
+    }
+
+    /**
+     * Start continuous ranging on every sensor.
+     */
+    public void start() {
+        Preconditions.checkState(!started, "Scheduler already started");
+        started = true;
+        for (ScheduledSensor sensor : sensors) {
+            sensor.sampler.startContinuous((int) TimeUnit.NANOSECONDS.toMillis(sensor.intervalNanos));
+            sensor.nextReadyNanos = System.nanoTime() + sensor.intervalNanos;
+        }
+    }
+
+    /**
+     * Read every sensor that is predicted to have data, in deadline order,
+     * until the cycle budget is used.
+     *
+     * @return the number of samples read
+     */
+    public int runCycle() {
+        Preconditions.checkState(started, "Scheduler not started");
+        long start = System.nanoTime();
+        int dueCount = 0;
+        for (ScheduledSensor sensor : sensors) {
+            if (sensor.nextReadyNanos - start <= 0) {
+                dueCount = insertByDeadline(sensor, dueCount);
+            }
+        }
+        int samples = 0;
+        for (int i = 0; i < dueCount; i++) {
+            long now = System.nanoTime();
+            // always read the first, so a budget shorter than one read does not starve every sensor
+            if (i > 0 && now - start >= cycleBudgetNanos) {
+                break;
+            }
+            ScheduledSensor sensor = due[i];
+            boolean ready = sensor.sampler.dataReady();
+            sensor.recordPoll(ready);
+            if (!ready) {
+                sensor.nextReadyNanos = PollTiming.nextAfterMiss(now, sensor.pollNanos);
+                continue;
+            }
+            int range = sensor.sampler.readMillimeters();
+            sensor.getRing().publish(now, range, sensor.sampler.timeoutOccurred());
+            sensor.recordSample(now);
+            sensor.nextReadyNanos = PollTiming.nextAfterSample(now, sensor.intervalNanos, sensor.pollNanos);
+            samples++;
+        }
+        Arrays.fill(due, 0, dueCount, null);
+        return samples;
+    }
+
+    private int insertByDeadline(ScheduledSensor sensor, int count) {
+        long deadline = sensor.deadlineNanos();
+        int i = count;
+        while (i > 0 && due[i - 1].deadlineNanos() - deadline > 0) {
+            due[i] = due[i - 1];
+            i--;
+        }
+        due[i] = sensor;
+        return count + 1;
+    }
+
+    /**
+     * @return the time from {@code nowNanos} until the next sensor is
+     * predicted to have data, or {@code 0} if one already should
+     */
+    public long nanosUntilNextReady(long nowNanos) {
+        long wait = Long.MAX_VALUE;
+        for (ScheduledSensor sensor : sensors) {
+            wait = Math.min(wait, Math.max(0, sensor.nextReadyNanos - nowNanos));
+        }
+        return wait;
+    }
+
+    /**
+     * Stop continuous ranging on every sensor.
+     */
+    @Override
+    public void close() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        for (ScheduledSensor sensor : sensors) {
+            sensor.sampler.stopContinuous();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sampling;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When to poll a sensor ranging continuously, shared by the
+ * {@link SamplingEngine} and the {@link BusScheduler} so both read sensors
+ * the same way.
+ */
+final class PollTiming {
+
+    // poll this many times per interval while waiting for a late measurement
+    private static final int POLLS_PER_INTERVAL = 16;
+    private static final long MIN_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    /**
+     * @return the time between polls while waiting for a measurement that is
+     * due every {@code intervalNanos}
+     */
+    static long pollNanos(long intervalNanos) {
+        return Math.max(intervalNanos / POLLS_PER_INTERVAL, MIN_POLL_NANOS);
+    }
+
+    /**
+     * @return when to poll next, after reading a measurement at {@code sampleNanos}
+     */
+    static long nextAfterSample(long sampleNanos, long intervalNanos, long pollNanos) {
+        // wake up a poll early, so a slightly fast sensor isn't read an interval late
+        return sampleNanos + intervalNanos - pollNanos;
+    }
+
+    /**
+     * @return when to poll next, after a poll at {@code pollStartNanos} found no data
+     */
+    static long nextAfterMiss(long pollStartNanos, long pollNanos) {
+        return pollStartNanos + pollNanos;
+    }
+
+    private PollTiming() {
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sampling;
+
+import com.armabot.lidar.api.Vl53l0x;
+import com.armabot.lidar.api.Vl53l1x;
+import com.armabot.lidar.api.Vl6180x;
+
+/**
+ * The continuous ranging operations of a sensor, as used by a {@link SamplingEngine}.
+ */
+public interface RangeSampler {
+
+    static RangeSampler of(Vl53l0x sensor) {
+        return new Vl53l0xSampler(sensor);
+    }
+
+    static RangeSampler of(Vl53l1x sensor) {
+        return new Vl53l1xSampler(sensor);
+    }
+
+    static RangeSampler of(Vl6180x sensor) {
+        return new Vl6180xSampler(sensor);
+    }
+
+    /**
+     * Starts continuous ranging, with a new measurement every {@code periodMillis}.
+     */
+    void startContinuous(int periodMillis);
+
+    void stopContinuous();
+
+    /**
+     * @return if a new measurement is available
+     */
+    boolean dataReady();
+
+    /**
+     * Reads the available measurement. Only called after {@link #dataReady()}
+     * returned {@code true}.
+     *
+     * @return the range, in millimeters
+     */
+    int readMillimeters();
+
+    /**
+     * @return if a timeout occurred since the last call
+     */
+    boolean timeoutOccurred();
+
+    /**
+     * @return the time a single measurement takes, in microseconds, or
+     * {@code 0} if the sensor does not say
+     */
+    long getTimingBudgetMicros();
+}
@@ -0,0 +1,66 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sampling;
+
+/**
+ * A mutable holder for one sample from a {@link SampleRing}. Reuse one
+ * instance per reader to avoid allocating on every read.
+ */
+public final class Sample {
+
+    long sequence;
+    long timestampNanos;
+    int rangeMillimeters;
+    boolean timeout;
+
+    /**
+     * @return the sequence number of this sample, starting at {@code 1}.
+     * {@code 0} if nothing was read into this holder yet.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return when this sample was read, in {@link System#nanoTime()} time
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getRangeMillimeters() {
+        return rangeMillimeters;
+    }
+
+    /**
+     * @return if a timeout occurred while reading this sample, making the
+     * range unreliable
+     */
+    public boolean isTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        return "Sample{sequence=" + sequence + ", timestampNanos=" + timestampNanos
+                + ", rangeMillimeters=" + rangeMillimeters + ", timeout=" + timeout + "}";
+    }
+}
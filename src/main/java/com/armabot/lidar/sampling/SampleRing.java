@@ -0,0 +1,149 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sampling;
+
+import com.armabot.lidar.util.Preconditions;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A fixed-size ring of the most recent samples from one sensor, with a single
+ * writer and any number of readers. Neither side ever blocks: the writer
+ * overwrites the oldest sample, and readers retry if a sample changed under
+ * them.
+ *
+ * <p>
+ * Each slot is guarded by its own sequence number, which the writer clears
+ * before changing the slot and sets once the slot is complete (a seqlock).
+ * Readers copy the slot and then check that its sequence did not change.
+ * </p>
+ */
+public final class SampleRing {
+
+    private static final VarHandle SEQUENCES = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle PUBLISHED;
+
+    static {
+        try {
+            PUBLISHED = MethodHandles.lookup().findVarHandle(SampleRing.class, "published", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int mask;
+    private final long[] sequences;
+    private final long[] timestamps;
+    private final int[] ranges;
+    private final boolean[] timeouts;
+    @SuppressWarnings("unused") // accessed through PUBLISHED
+    private volatile long published;
+
+    /**
+     * @param capacity the number of samples kept, a power of two
+     */
+    public SampleRing(int capacity) {
+        Preconditions.checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1,
+                "capacity must be a positive power of two: %s", capacity);
+        this.mask = capacity - 1;
+        this.sequences = new long[capacity];
+        this.timestamps = new long[capacity];
+        this.ranges = new int[capacity];
+        this.timeouts = new boolean[capacity];
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the sequence number of the latest sample, or {@code 0} if none
+     */
+    public long latestSequence() {
+        return (long) PUBLISHED.getAcquire(this);
+    }
+
+    /**
+     * Add a sample, replacing the oldest one. Must only be called from the
+     * single writer thread.
+     *
+     * @return the sequence number of the new sample
+     */
+    long publish(long timestampNanos, int rangeMillimeters, boolean timeout) {
+        long sequence = (long) PUBLISHED.getOpaque(this) + 1;
+        int slot = (int) (sequence - 1) & mask;
+        SEQUENCES.setOpaque(sequences, slot, 0L);
+        VarHandle.storeStoreFence();
+        timestamps[slot] = timestampNanos;
+        ranges[slot] = rangeMillimeters;
+        timeouts[slot] = timeout;
+        SEQUENCES.setRelease(sequences, slot, sequence);
+        PUBLISHED.setRelease(this, sequence);
+        return sequence;
+    }
+
+    /**
+     * Copy the latest sample into {@code out}.
+     *
+     * @return {@code false} if there are no samples yet
+     */
+    public boolean readLatest(Sample out) {
+        while (true) {
+            long sequence = latestSequence();
+            if (sequence == 0) {
+                return false;
+            }
+            if (read(sequence, out)) {
+                return true;
+            }
+            // overwritten while reading, which means a newer one is available
+        }
+    }
+
+    /**
+     * Copy the sample with the given sequence number into {@code out}.
+     *
+     * @return {@code false} if that sample was not published yet, or was
+     * already overwritten
+     */
+    public boolean read(long sequence, Sample out) {
+        if (sequence <= 0) {
+            return false;
+        }
+        int slot = (int) (sequence - 1) & mask;
+        if ((long) SEQUENCES.getAcquire(sequences, slot) != sequence) {
+            return false;
+        }
+        long timestamp = timestamps[slot];
+        int range = ranges[slot];
+        boolean timeout = timeouts[slot];
+        VarHandle.loadLoadFence();
+        if ((long) SEQUENCES.getOpaque(sequences, slot) != sequence) {
+            return false;
+        }
+        out.sequence = sequence;
+        out.timestampNanos = timestamp;
+        out.rangeMillimeters = range;
+        out.timeout = timeout;
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sampling;
+
+import com.armabot.lidar.util.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Owns sensors on dedicated threads, and publishes their measurements to
+ * {@link SampleRing}s.
+ *
+ * <p>
+ * Each registered sensor gets a daemon thread, which starts continuous
+ * ranging, sleeps until the next measurement is due, polls until it is ready,
+ * and publishes it with its timestamp. Control loops call
+ * {@link SampleRing#readLatest(Sample)}, which never touches the bus or blocks.
+ * </p>
+ *
+ * <p>
+ * Once registered, a sensor must not be used by anything else until the
+ * engine is {@linkplain #close() closed}. If a sensor throws, its thread ends,
+ * and its ring stops receiving samples. Check the sample timestamps to detect
+ * stale data.
+ * </p>
+ */
+public final class SamplingEngine implements AutoCloseable {
+
+    /**
+     * The default number of samples kept per sensor.
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final List<Worker> workers = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * Register a sensor with the {@linkplain #DEFAULT_CAPACITY default capacity}.
+     *
+     * @see #register(String, RangeSampler, int, int)
+     */
+    public SampleRing register(String name, RangeSampler sampler, int periodMillis) {
+        return register(name, sampler, periodMillis, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Start sampling a sensor on its own thread.
+     *
+     * @param name the name of the sensor, used for the thread name
+     * @param sampler the sensor
+     * @param periodMillis the inter-measurement period
+     * @param capacity the number of samples to keep
+     * @return the ring that samples are published to
+     */
+    public synchronized SampleRing register(String name, RangeSampler sampler, int periodMillis, int capacity) {
+        Preconditions.checkState(!closed, "Engine is closed");
+        Preconditions.checkArgument(periodMillis > 0, "periodMillis must be positive");
+        SampleRing ring = new SampleRing(capacity);
+        Worker worker = new Worker(sampler, periodMillis, ring);
+        Thread thread = new Thread(worker, "lidar-sampler-" + name);
+        thread.setDaemon(true);
+        worker.thread = thread;
+        workers.add(worker);
+        thread.start();
+        return ring;
+    }
+
+    /**
+     * Stop every sampling thread, and wait for them to stop their sensors.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Worker worker : workers) {
+            worker.running = false;
+            LockSupport.unpark(worker.thread);
+        }
+        try {
+            for (Worker worker : workers) {
+                worker.thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.clear();
+    }
+
+    private static final class Worker implements Runnable {
+
+        private final RangeSampler sampler;
+        private final int periodMillis;
+        private final SampleRing ring;
+        private volatile boolean running = true;
+        private Thread thread;
+
+        private Worker(RangeSampler sampler, int periodMillis, SampleRing ring) {
+            this.sampler = sampler;
+            this.periodMillis = periodMillis;
+            this.ring = ring;
+        }
+
+        @Override
+        public void run() {
+            long periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+            long pollNanos = PollTiming.pollNanos(periodNanos);
+            sampler.startContinuous(periodMillis);
+            try {
+                long next = System.nanoTime() + periodNanos;
+                while (running) {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(this, wait);
+                        continue;
+                    }
+                    if (!sampler.dataReady()) {
+                        next = PollTiming.nextAfterMiss(System.nanoTime(), pollNanos);
+                        continue;
+                    }
+                    long timestamp = System.nanoTime();
+                    int range = sampler.readMillimeters();
+                    ring.publish(timestamp, range, sampler.timeoutOccurred());
+                    next = PollTiming.nextAfterSample(timestamp, periodNanos, pollNanos);
+                }
+            } finally {
+                sampler.stopContinuous();
+            }
+        }
+    }
+}
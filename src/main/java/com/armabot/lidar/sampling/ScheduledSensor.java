@@ -0,0 +1,145 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sampling;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sensor driven by a {@link BusScheduler}, and its statistics.
+ *
+ * <p>
+ * Statistics are updated by the thread running the scheduler, and may be
+ * read from any thread.
+ * </p>
+ */
+public final class ScheduledSensor {
+
+    // weight of a new interval in the achieved interval average, as a shift
+    private static final int AVERAGE_SHIFT = 3;
+
+    final RangeSampler sampler;
+    final long intervalNanos;
+    final long pollNanos;
+    private final String name;
+    private final SampleRing ring;
+    // scheduler thread only
+    long nextReadyNanos;
+    private volatile long lastSampleNanos;
+    private volatile long averageIntervalNanos;
+    private volatile long sampleCount;
+    private volatile long pollCount;
+    private volatile long notReadyCount;
+
+    ScheduledSensor(String name, RangeSampler sampler, long intervalNanos, long pollNanos, SampleRing ring) {
+        this.name = name;
+        this.sampler = sampler;
+        this.intervalNanos = intervalNanos;
+        this.pollNanos = pollNanos;
+        this.ring = ring;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the ring that samples are published to
+     */
+    public SampleRing getRing() {
+        return ring;
+    }
+
+    /**
+     * @return the expected time between measurements
+     */
+    public long getInterval(TimeUnit unit) {
+        return unit.convert(intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The deadline of the pending measurement: after this, the sensor will
+     * have replaced it with the next one.
+     */
+    long deadlineNanos() {
+        return nextReadyNanos + intervalNanos;
+    }
+
+    void recordPoll(boolean ready) {
+        pollCount++;
+        if (!ready) {
+            notReadyCount++;
+        }
+    }
+
+    void recordSample(long timestampNanos) {
+        long last = lastSampleNanos;
+        long count = sampleCount;
+        if (count == 1) {
+            averageIntervalNanos = timestampNanos - last;
+        } else if (count > 1) {
+            long average = averageIntervalNanos;
+            averageIntervalNanos = average + ((timestampNanos - last - average) >> AVERAGE_SHIFT);
+        }
+        lastSampleNanos = timestampNanos;
+        sampleCount = count + 1;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return the number of times the sensor was asked if it had data
+     */
+    public long getPollCount() {
+        return pollCount;
+    }
+
+    /**
+     * @return the number of polls that found no data, each wasting bus time
+     */
+    public long getNotReadyCount() {
+        return notReadyCount;
+    }
+
+    /**
+     * @return the recent number of samples per second, or {@code 0} if there
+     * are not enough samples yet
+     */
+    public double getAchievedRate() {
+        long average = averageIntervalNanos;
+        return average <= 0 ? 0 : (double) TimeUnit.SECONDS.toNanos(1) / average;
+    }
+
+    /**
+     * @return the age of the latest sample at {@code nowNanos}, or
+     * {@link Long#MAX_VALUE} if there is none
+     */
+    public long getStalenessNanos(long nowNanos) {
+        return sampleCount == 0 ? Long.MAX_VALUE : nowNanos - lastSampleNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ScheduledSensor{name=" + name + ", samples=" + sampleCount + ", polls=" + pollCount
+                + ", notReady=" + notReadyCount + ", rate=" + getAchievedRate() + "}";
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sampling;
+
+import com.armabot.lidar.api.Vl53l0x;
+
+class Vl53l0xSampler implements RangeSampler {
+
+    private final Vl53l0x sensor;
+
+    Vl53l0xSampler(Vl53l0x sensor) {
+        this.sensor = sensor;
+    }
+
+    @Override
+    public void startContinuous(int periodMillis) {
+        sensor.startContinuous(periodMillis);
+    }
+
+    @Override
+    public void stopContinuous() {
+        sensor.stopContinuous();
+    }
+
+    @Override
+    public boolean dataReady() {
+        return sensor.dataReady();
+    }
+
+    @Override
+    public int readMillimeters() {
+        return sensor.readRangeContinuousMillimeters();
+    }
+
+    @Override
+    public boolean timeoutOccurred() {
+        return sensor.timeoutOccurred();
+    }
+
+    @Override
+    public long getTimingBudgetMicros() {
+        return sensor.getMeasurementTimingBudget();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sim;
+
+import com.armabot.lidar.util.Preconditions;
+
+import java.util.Random;
+
+/**
+ * The distance to the target a simulated sensor sees over time.
+ */
+@FunctionalInterface
+public interface RangeSource {
+
+    /**
+     * The range for when there is no target in view.
+     */
+    int NO_TARGET = Integer.MAX_VALUE;
+
+    static RangeSource constant(int rangeMillimeters) {
+        Preconditions.checkArgument(rangeMillimeters >= 0, "rangeMillimeters must not be negative");
+        return nanos -> rangeMillimeters;
+    }
+
+    /**
+     * @param nanos the time of the measurement, from the simulator's clock
+     * @return the range in millimeters, or {@link #NO_TARGET}
+     */
+    int rangeMillimeters(long nanos);
+
+    /**
+     * Add gaussian noise to this source. Ranges never go below zero, and
+     * {@link #NO_TARGET} stays as is.
+     *
+     * @param sigmaMillimeters the standard deviation of the noise
+     * @param seed the seed, so runs can be repeated
+     */
+    default RangeSource withNoise(double sigmaMillimeters, long seed) {
+        Preconditions.checkArgument(sigmaMillimeters >= 0, "sigmaMillimeters must not be negative");
+        Random random = new Random(seed);
+        return nanos -> {
+            int range = rangeMillimeters(nanos);
+            if (range == NO_TARGET) {
+                return range;
+            }
+            return Math.max(0, (int) Math.round(range + random.nextGaussian() * sigmaMillimeters));
+        };
+    }
+}
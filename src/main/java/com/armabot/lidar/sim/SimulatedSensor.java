@@ -0,0 +1,268 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sim;
+
+import com.armabot.lidar.arcompat.PololuI2c;
+import com.armabot.lidar.arcompat.RegisterFile;
+import com.armabot.lidar.util.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link RegisterFile} that models a sensor: it boots, takes measurements
+ * on {@linkplain Timer timers}, and updates its registers as they complete.
+ *
+ * <p>
+ * Time only moves on when the device is accessed, or {@link #update()} is
+ * called: every transaction first completes any measurements that finished
+ * since the last one, in order. While booting, the device does not
+ * acknowledge any transaction.
+ * </p>
+ *
+ * <p>
+ * Attach it to a {@link com.armabot.lidar.arcompat.MemoryI2cTransport}, and
+ * the driver runs unmodified. Like the rest of the bus, it must only be
+ * accessed by one thread at a time.
+ * </p>
+ */
+public abstract class SimulatedSensor extends RegisterFile {
+
+    private static final long DEFAULT_BOOT_NANOS = TimeUnit.MICROSECONDS.toNanos(1200);
+    // at most this many missed measurements per timer are replayed after a long gap
+    private static final int MAX_CATCH_UP = 16;
+
+    /**
+     * Takes measurements, once or periodically, and calls back as each one
+     * completes.
+     */
+    protected final class Timer {
+        private final LongConsumer onComplete;
+        private boolean running;
+        private boolean continuous;
+        private long nextNanos;
+        private long periodNanos;
+
+        private Timer(LongConsumer onComplete) {
+            this.onComplete = onComplete;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        /**
+         * Take one measurement, finishing {@code durationNanos} from now.
+         */
+        public void startSingle(long durationNanos) {
+            running = true;
+            continuous = false;
+            nextNanos = nowNanos + durationNanos;
+        }
+
+        /**
+         * Take a measurement every {@code periodNanos}, or back to back if
+         * that is shorter than {@code durationNanos}.
+         */
+        public void startContinuous(long durationNanos, long periodNanos) {
+            running = true;
+            continuous = true;
+            this.periodNanos = Math.max(durationNanos, periodNanos);
+            nextNanos = nowNanos + durationNanos;
+        }
+
+        public void stop() {
+            running = false;
+        }
+
+        private void complete() {
+            long at = nextNanos;
+            if (continuous) {
+                long missed = (nowNanos - at) / periodNanos;
+                if (missed > MAX_CATCH_UP) {
+                    long skipped = missed - MAX_CATCH_UP;
+                    at += skipped * periodNanos;
+                    measurementCount += skipped;
+                }
+                nextNanos = at + periodNanos;
+            } else {
+                running = false;
+            }
+            measurementCount++;
+            onComplete.accept(at);
+        }
+    }
+
+    private final LongSupplier clock;
+    private final List<Timer> timers = new ArrayList<>();
+    private RangeSource rangeSource;
+    private long bootNanos = DEFAULT_BOOT_NANOS;
+    private long nowNanos;
+    private boolean inReset;
+    private boolean booting;
+    private long bootedNanos;
+    private long measurementCount;
+
+    /**
+     * @param clock the time source, in nanoseconds, such as {@link System#nanoTime()}
+     */
+    protected SimulatedSensor(PololuI2c.Addressing addressing, RangeSource rangeSource, LongSupplier clock) {
+        super(addressing);
+        this.rangeSource = Objects.requireNonNull(rangeSource, "rangeSource");
+        this.clock = Objects.requireNonNull(clock, "clock");
+        this.nowNanos = clock.getAsLong();
+    }
+
+    /**
+     * Set every register to its power-on value.
+     */
+    protected abstract void loadDefaults();
+
+    protected final Timer newTimer(LongConsumer onComplete) {
+        Timer timer = new Timer(onComplete);
+        timers.add(timer);
+        return timer;
+    }
+
+    /**
+     * @return the time of the current transaction or update
+     */
+    protected final long now() {
+        return nowNanos;
+    }
+
+    public RangeSource getRangeSource() {
+        return rangeSource;
+    }
+
+    public void setRangeSource(RangeSource rangeSource) {
+        this.rangeSource = Objects.requireNonNull(rangeSource, "rangeSource");
+    }
+
+    /**
+     * @return the range to the target at {@code nanos}, clamped to {@code maxRangeMillimeters}
+     */
+    protected final int sampleRange(long nanos, int maxRangeMillimeters) {
+        return Math.min(rangeSource.rangeMillimeters(nanos), maxRangeMillimeters);
+    }
+
+    /**
+     * Sets how long the device takes to boot after a reset.
+     */
+    public void setBootTime(long bootTime, TimeUnit unit) {
+        Preconditions.checkArgument(bootTime >= 0, "bootTime must not be negative");
+        this.bootNanos = unit.toNanos(bootTime);
+    }
+
+    /**
+     * @return the number of measurements completed so far, including ones
+     * replayed or skipped after a long gap
+     */
+    public long getMeasurementCount() {
+        return measurementCount;
+    }
+
+    public boolean isBooted() {
+        update();
+        return !inReset && !booting;
+    }
+
+    /**
+     * @return {@code true} if the device is {@linkplain #enterReset() held in reset}
+     */
+    protected final boolean isInReset() {
+        return inReset;
+    }
+
+    /**
+     * Power the device off and on again, losing every register value.
+     */
+    public void powerCycle() {
+        enterReset();
+        leaveReset();
+    }
+
+    /**
+     * Hold the device in reset, stopping any measurement.
+     */
+    protected final void enterReset() {
+        inReset = true;
+        booting = false;
+        for (Timer timer : timers) {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Let the device out of reset, restoring its power-on values, and start
+     * booting.
+     */
+    protected final void leaveReset() {
+        inReset = false;
+        clear();
+        loadDefaults();
+        booting = bootNanos > 0;
+        bootedNanos = nowNanos + bootNanos;
+    }
+
+    /**
+     * Bring the device up to the current time, completing every measurement
+     * that finished since the last update, in order.
+     */
+    public final void update() {
+        nowNanos = clock.getAsLong();
+        if (booting && nowNanos - bootedNanos >= 0) {
+            booting = false;
+        }
+        while (true) {
+            Timer next = null;
+            // by index, so every transaction does not allocate an iterator
+            for (int i = 0; i < timers.size(); i++) {
+                Timer timer = timers.get(i);
+                if (timer.running && nowNanos - timer.nextNanos >= 0
+                        && (next == null || timer.nextNanos - next.nextNanos < 0)) {
+                    next = timer;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            next.complete();
+        }
+    }
+
+    @Override
+    public boolean write(ByteBuffer data, int size) {
+        update();
+        return !booting && super.write(data, size);
+    }
+
+    @Override
+    public boolean read(ByteBuffer out, int size) {
+        update();
+        return !booting && super.read(out, size);
+    }
+}
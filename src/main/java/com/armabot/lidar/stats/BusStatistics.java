@@ -0,0 +1,121 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.stats;
+
+import com.armabot.lidar.arcompat.I2cInstrumentation;
+import com.armabot.lidar.arcompat.Port;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link I2cInstrumentation} that keeps {@link DeviceStats} for every
+ * device, and each of its registers.
+ *
+ * <p>
+ * One instance can be shared by every sensor, on every port:
+ * </p>
+ * <pre>
+ * BusStatistics stats = new BusStatistics();
+ * sensor.getI2c().setInstrumentation(stats);
+ * // ...
+ * System.out.println(stats.report(10));
+ * </pre>
+ * <p>
+ * Recording is lock-free, and only allocates the first time a device or
+ * register is seen.
+ * </p>
+ */
+public final class BusStatistics implements I2cInstrumentation {
+
+    private static final int ADDRESS_COUNT = 128;
+
+    private final Map<Integer, AtomicReferenceArray<DeviceStats>> ports = new ConcurrentHashMap<>();
+
+    @Override
+    public void operationCompleted(Port port, byte address, int register, int transactions,
+                                   int bytesWritten, int bytesRead, boolean success, long durationNanos) {
+        device(port.value(), address).record(register, transactions, bytesWritten, bytesRead, success,
+                durationNanos);
+    }
+
+    private DeviceStats device(int port, byte address) {
+        AtomicReferenceArray<DeviceStats> devices = ports.get(port);
+        if (devices == null) {
+            devices = ports.computeIfAbsent(port, k -> new AtomicReferenceArray<>(ADDRESS_COUNT));
+        }
+        int index = address & (ADDRESS_COUNT - 1);
+        DeviceStats stats = devices.get(index);
+        if (stats == null) {
+            devices.compareAndSet(index, null, new DeviceStats(port, address));
+            stats = devices.get(index);
+        }
+        return stats;
+    }
+
+    /**
+     * @return the stats of every device used so far
+     */
+    public List<DeviceStats> getDevices() {
+        List<DeviceStats> devices = new ArrayList<>();
+        ports.values().forEach(port -> {
+            for (int i = 0; i < ADDRESS_COUNT; i++) {
+                DeviceStats stats = port.get(i);
+                if (stats != null) {
+                    devices.add(stats);
+                }
+            }
+        });
+        devices.sort(Comparator.comparingInt(DeviceStats::getPort).thenComparingInt(DeviceStats::getAddress));
+        return devices;
+    }
+
+    public void reset() {
+        getDevices().forEach(DeviceStats::reset);
+    }
+
+    /**
+     * Describe every device, followed by the {@code registersPerDevice}
+     * registers it spent the most time on.
+     */
+    public String report(int registersPerDevice) {
+        StringBuilder report = new StringBuilder();
+        Comparator<OperationStats> byTime = Comparator.comparingLong(
+                (OperationStats stats) -> stats.getLatency().getTotal(TimeUnit.NANOSECONDS)).reversed();
+        for (DeviceStats device : getDevices()) {
+            report.append(String.format("port %d, 0x%02X: %s%n", device.getPort(), device.getAddress(),
+                    device.getTotal()));
+            device.getRegisters().entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue(byTime))
+                    .limit(registersPerDevice)
+                    .forEach(e -> report.append(String.format("  0x%04X: %s%n", e.getKey(), e.getValue())));
+            if (device.getNoRegister().getOperations() > 0) {
+                report.append(String.format("  no register: %s%n", device.getNoRegister()));
+            }
+        }
+        return report.toString();
+    }
+}
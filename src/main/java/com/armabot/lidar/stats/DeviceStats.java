@@ -0,0 +1,120 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.stats;
+
+import com.armabot.lidar.arcompat.I2cInstrumentation;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The {@link OperationStats} of one device, in total and per register.
+ */
+public final class DeviceStats {
+
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final int port;
+    private final byte address;
+    private final OperationStats total = new OperationStats();
+    private final OperationStats noRegister = new OperationStats();
+    // registers are 16 bits, so look them up in pages of 256, allocated on first use
+    private final AtomicReferenceArray<AtomicReferenceArray<OperationStats>> pages =
+            new AtomicReferenceArray<>(PAGE_SIZE);
+
+    DeviceStats(int port, byte address) {
+        this.port = port;
+        this.address = address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public byte getAddress() {
+        return address;
+    }
+
+    public OperationStats getTotal() {
+        return total;
+    }
+
+    /**
+     * @return the stats of operations that did not address a register
+     */
+    public OperationStats getNoRegister() {
+        return noRegister;
+    }
+
+    void record(int register, int transactions, int bytesWritten, int bytesRead, boolean success,
+                long durationNanos) {
+        total.record(transactions, bytesWritten, bytesRead, success, durationNanos);
+        register(register).record(transactions, bytesWritten, bytesRead, success, durationNanos);
+    }
+
+    private OperationStats register(int register) {
+        if (register == I2cInstrumentation.NO_REGISTER) {
+            return noRegister;
+        }
+        int pageIndex = (register >>> PAGE_BITS) & (PAGE_SIZE - 1);
+        AtomicReferenceArray<OperationStats> page = pages.get(pageIndex);
+        if (page == null) {
+            pages.compareAndSet(pageIndex, null, new AtomicReferenceArray<>(PAGE_SIZE));
+            page = pages.get(pageIndex);
+        }
+        int index = register & (PAGE_SIZE - 1);
+        OperationStats stats = page.get(index);
+        if (stats == null) {
+            page.compareAndSet(index, null, new OperationStats());
+            stats = page.get(index);
+        }
+        return stats;
+    }
+
+    /**
+     * @return the stats of every register used so far, by register
+     */
+    public SortedMap<Integer, OperationStats> getRegisters() {
+        SortedMap<Integer, OperationStats> registers = new TreeMap<>();
+        for (int p = 0; p < PAGE_SIZE; p++) {
+            AtomicReferenceArray<OperationStats> page = pages.get(p);
+            if (page == null) {
+                continue;
+            }
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                OperationStats stats = page.get(i);
+                if (stats != null) {
+                    registers.put(p << PAGE_BITS | i, stats);
+                }
+            }
+        }
+        return Collections.unmodifiableSortedMap(registers);
+    }
+
+    public void reset() {
+        total.reset();
+        noRegister.reset();
+        getRegisters().values().forEach(OperationStats::reset);
+    }
+}
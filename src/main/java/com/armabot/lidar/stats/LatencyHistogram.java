@@ -0,0 +1,121 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.stats;
+
+import com.armabot.lidar.util.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies, in power-of-two buckets of
+ * nanoseconds. Bucket {@code i} counts latencies below {@code 2^i} ns, and
+ * at least {@code 2^(i - 1)} ns, so percentiles are accurate to within a
+ * factor of two.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The number of buckets. The last one also counts anything longer.
+     */
+    public static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long latency = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(latency));
+        count.incrementAndGet();
+        totalNanos.addAndGet(latency);
+        maxNanos.accumulateAndGet(latency, Math::max);
+    }
+
+    private static int bucketOf(long nanos) {
+        return Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(nanos));
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotal(TimeUnit unit) {
+        return unit.convert(totalNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getMax(TimeUnit unit) {
+        return unit.convert(maxNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    public long getMean(TimeUnit unit) {
+        long count = getCount();
+        return count == 0 ? 0 : unit.convert(totalNanos.get() / count, TimeUnit.NANOSECONDS);
+    }
+
+    public long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * @return the exclusive upper bound of {@code bucket}
+     */
+    public static long getBucketUpperBound(int bucket, TimeUnit unit) {
+        Preconditions.checkArgument(0 <= bucket && bucket < BUCKETS, "bucket out of range");
+        return unit.convert(1L << bucket, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return an upper bound for the latency at {@code percentile}, no more
+     * than twice the real value
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        Preconditions.checkArgument(0 <= percentile && percentile <= 100, "percentile out of range");
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return unit.convert(Math.min(1L << i, maxNanos.get()), TimeUnit.NANOSECONDS);
+            }
+        }
+        return getMax(unit);
+    }
+
+    /**
+     * Reset every bucket. Latencies recorded at the same time may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+}
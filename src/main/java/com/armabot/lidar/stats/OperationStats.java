@@ -0,0 +1,98 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free counters for the bus operations of one device, or one of its
+ * registers.
+ */
+public final class OperationStats {
+
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    void record(int transactions, int bytesWritten, int bytesRead, boolean success, long durationNanos) {
+        operations.incrementAndGet();
+        this.transactions.addAndGet(transactions);
+        if (!success) {
+            failures.incrementAndGet();
+        }
+        this.bytesWritten.addAndGet(bytesWritten);
+        this.bytesRead.addAndGet(bytesRead);
+        latency.record(durationNanos);
+    }
+
+    public long getOperations() {
+        return operations.get();
+    }
+
+    public long getTransactions() {
+        return transactions.get();
+    }
+
+    /**
+     * @return the number of operations with a transaction that was not acknowledged
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public void reset() {
+        operations.set(0);
+        transactions.set(0);
+        failures.set(0);
+        bytesWritten.set(0);
+        bytesRead.set(0);
+        latency.reset();
+    }
+
+    @Override
+    public String toString() {
+        return getOperations() + " ops, "
+                + getTransactions() + " transactions, "
+                + getFailures() + " failures, "
+                + getBytesWritten() + " B written, "
+                + getBytesRead() + " B read, "
+                + "total " + latency.getTotal(TimeUnit.MICROSECONDS) + " us, "
+                + "p50 " + latency.getPercentile(50, TimeUnit.MICROSECONDS) + " us, "
+                + "p99 " + latency.getPercentile(99, TimeUnit.MICROSECONDS) + " us, "
+                + "max " + latency.getMax(TimeUnit.MICROSECONDS) + " us";
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.trace;
+
+import com.armabot.lidar.util.Preconditions;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records timed spans, such as driver methods, register operations and bus
+ * transactions, into a ring buffer allocated up front, and writes them out
+ * as Chrome trace-event JSON, for {@code chrome://tracing} or Perfetto.
+ *
+ * <p>
+ * A span is recorded when it ends, so nesting is shown by time: a span
+ * inside another one on the same thread is drawn below it. When the buffer
+ * is full, the oldest spans are overwritten.
+ * </p>
+ *
+ * <pre>
+ * Tracer tracer = new Tracer(1 &lt;&lt; 16);
+ * sensor.getI2c().setTracer(tracer);
+ * // ...
+ * tracer.writeJson(writer);
+ * </pre>
+ *
+ * <p>
+ * Recording is lock-free and does not allocate, so one tracer can be shared
+ * by every sensor. Spans recorded while the trace is being written, or by
+ * threads racing to fill the same slot after the buffer wraps, may come out
+ * garbled.
+ * </p>
+ */
+public final class Tracer {
+
+    public static final String CATEGORY_DRIVER = "driver";
+    public static final String CATEGORY_REGISTER = "register";
+    public static final String CATEGORY_BUS = "bus";
+
+    /**
+     * The value of an argument that does not apply.
+     */
+    public static final int NO_VALUE = -1;
+
+    /**
+     * A tracer that never records anything.
+     */
+    public static final Tracer NONE = new Tracer(1, false);
+
+    // the start time of a span that is not being traced
+    private static final long NOT_TRACED = Long.MIN_VALUE;
+
+    private final int mask;
+    private final long originNanos = System.nanoTime();
+    private final long[] starts;
+    private final long[] durations;
+    private final long[] threadIds;
+    private final String[] threadNames;
+    private final String[] categories;
+    private final String[] names;
+    private final int[] addresses;
+    private final int[] registers;
+    private final AtomicLong next = new AtomicLong();
+    private volatile boolean enabled;
+
+    /**
+     * @param capacity the most spans to keep, rounded up to a power of two
+     */
+    public Tracer(int capacity) {
+        this(capacity, true);
+    }
+
+    private Tracer(int capacity, boolean enabled) {
+        Preconditions.checkArgument(0 < capacity && capacity <= 1 << 30, "capacity out of range");
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        size = Math.max(1, size);
+        this.mask = size - 1;
+        this.starts = new long[size];
+        this.durations = new long[size];
+        this.threadIds = new long[size];
+        this.threadNames = new String[size];
+        this.categories = new String[size];
+        this.names = new String[size];
+        this.addresses = new int[size];
+        this.registers = new int[size];
+        this.enabled = enabled;
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets whether spans are recorded. Tracers start enabled, except for
+     * {@link #NONE}, which can not be enabled.
+     */
+    public void setEnabled(boolean enabled) {
+        Preconditions.checkState(this != NONE, "Tracer.NONE can not be enabled");
+        this.enabled = enabled;
+    }
+
+    /**
+     * Start a span, to be passed to one of the {@code end} methods.
+     *
+     * @return the start time, or a marker if tracing is disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : NOT_TRACED;
+    }
+
+    /**
+     * End a driver span.
+     *
+     * @param name the name of the span, which should be a constant
+     */
+    public void end(long start, String name) {
+        end(start, CATEGORY_DRIVER, name, NO_VALUE, NO_VALUE);
+    }
+
+    /**
+     * End a span of any category. {@code start} may be any
+     * {@link System#nanoTime()} value.
+     *
+     * @param name the name of the span, which should be a constant
+     * @param address the device address, or {@link #NO_VALUE}
+     * @param register the register, or {@link #NO_VALUE}
+     */
+    public void end(long start, String category, String name, int address, int register) {
+        if (start == NOT_TRACED || !enabled) {
+            return;
+        }
+        long end = System.nanoTime();
+        Thread thread = Thread.currentThread();
+        int slot = (int) (next.getAndIncrement() & mask);
+        starts[slot] = start;
+        durations[slot] = end - start;
+        threadIds[slot] = thread.getId();
+        threadNames[slot] = thread.getName();
+        categories[slot] = category;
+        names[slot] = name;
+        addresses[slot] = address;
+        registers[slot] = register;
+    }
+
+    /**
+     * @return the number of spans recorded since the last clear
+     */
+    public long getRecordedCount() {
+        return next.get();
+    }
+
+    /**
+     * @return the number of spans overwritten since the last clear
+     */
+    public long getDroppedCount() {
+        return Math.max(0, next.get() - getCapacity());
+    }
+
+    /**
+     * Forget every recorded span.
+     */
+    public void clear() {
+        next.set(0);
+    }
+
+    /**
+     * Write the recorded spans, oldest first, as a Chrome trace-event JSON
+     * object. Times are in microseconds since the tracer was created.
+     */
+    public void writeJson(Appendable out) throws IOException {
+        long end = next.get();
+        long begin = Math.max(0, end - getCapacity());
+        Map<Long, String> threads = new HashMap<>();
+        out.append("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[");
+        boolean first = true;
+        for (long i = begin; i < end; i++) {
+            int slot = (int) (i & mask);
+            threads.putIfAbsent(threadIds[slot], threadNames[slot]);
+            out.append(first ? "\n" : ",\n");
+            first = false;
+            out.append("{\"ph\":\"X\",\"pid\":1,\"tid\":").append(Long.toString(threadIds[slot]))
+                    .append(",\"cat\":\"").append(categories[slot])
+                    .append("\",\"name\":\"").append(names[slot])
+                    .append("\",\"ts\":").append(micros(starts[slot] - originNanos))
+                    .append(",\"dur\":").append(micros(durations[slot]));
+            if (addresses[slot] != NO_VALUE || registers[slot] != NO_VALUE) {
+                out.append(",\"args\":{");
+                if (addresses[slot] != NO_VALUE) {
+                    out.append(String.format("\"address\":\"0x%02X\"", addresses[slot]));
+                }
+                if (registers[slot] != NO_VALUE) {
+                    out.append(addresses[slot] != NO_VALUE ? "," : "")
+                            .append(String.format("\"register\":\"0x%04X\"", registers[slot]));
+                }
+                out.append('}');
+            }
+            out.append('}');
+        }
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            out.append(first ? "\n" : ",\n");
+            first = false;
+            out.append("{\"ph\":\"M\",\"pid\":1,\"tid\":").append(Long.toString(thread.getKey()))
+                    .append(",\"name\":\"thread_name\",\"args\":{\"name\":\"")
+                    .append(escape(thread.getValue())).append("\"}}");
+        }
+        out.append("\n]}\n");
+    }
+
+    private static String micros(long nanos) {
+        // with nanosecond precision, without going through floating point
+        long whole = Math.floorDiv(nanos, 1000);
+        return whole + "." + String.format("%03d", Math.floorMod(nanos, 1000));
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How to pause between polls of a device, when waiting for it to finish
+ * something. Each poll is usually a bus transaction, so polling without a
+ * pause saturates the bus and a core.
+ *
+ * <p>
+ * A wait first polls back to back a few times, for things that finish
+ * almost immediately, then yields a few times, then parks for a time that
+ * doubles after each poll, up to a maximum. Use it as:
+ * </p>
+ * <pre>{@code
+ * wait.begin();
+ * while (!done()) {
+ *     if (timedOut()) {
+ *         break;
+ *     }
+ *     wait.idle();
+ * }
+ * }</pre>
+ *
+ * <p>
+ * It also counts waits and polls, to show how much bus traffic waiting
+ * causes. An instance is meant to be used by one thread at a time, but the
+ * counters can be read from any thread.
+ * </p>
+ */
+public final class WaitStrategy {
+
+    private static final int DEFAULT_SPINS = 2;
+    private static final int DEFAULT_YIELDS = 2;
+    private static final long DEFAULT_MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long DEFAULT_MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // for tuned strategies, park between these fractions of the expected wait
+    private static final int MIN_PARK_DIVISOR = 64;
+    private static final int MAX_PARK_DIVISOR = 8;
+
+    /**
+     * @return a strategy for waits of unknown length
+     */
+    public static WaitStrategy create() {
+        return new WaitStrategy(DEFAULT_SPINS, DEFAULT_YIELDS, DEFAULT_MIN_PARK_NANOS, DEFAULT_MAX_PARK_NANOS);
+    }
+
+    /**
+     * @param spins the number of polls without a pause
+     * @param yields the number of polls after a {@link Thread#yield()}
+     * @param minPark the first park time
+     * @param maxPark the longest park time
+     */
+    public static WaitStrategy create(int spins, int yields, long minPark, long maxPark, TimeUnit unit) {
+        Preconditions.checkArgument(spins >= 0 && yields >= 0, "spins and yields must not be negative");
+        Preconditions.checkArgument(0 < minPark && minPark <= maxPark, "park times out of order");
+        return new WaitStrategy(spins, yields, unit.toNanos(minPark), unit.toNanos(maxPark));
+    }
+
+    private final int spins;
+    private final int yields;
+    private long minParkNanos;
+    private long maxParkNanos;
+
+    private int attempt;
+    private long parkNanos;
+
+    private volatile long waitCount;
+    private volatile long pollCount;
+    private volatile long maxPolls;
+    private long currentPolls;
+
+    private WaitStrategy(int spins, int yields, long minParkNanos, long maxParkNanos) {
+        this.spins = spins;
+        this.yields = yields;
+        this.minParkNanos = minParkNanos;
+        this.maxParkNanos = maxParkNanos;
+    }
+
+    /**
+     * Tune the park times for waits expected to take about {@code expected},
+     * such as a measurement timing budget. Parks start at a small fraction of
+     * it, so a wait is not overshot by much, and grow to a larger fraction,
+     * so a long wait does not poll often.
+     */
+    public void tune(long expected, TimeUnit unit) {
+        long expectedNanos = unit.toNanos(expected);
+        if (expectedNanos <= 0) {
+            minParkNanos = DEFAULT_MIN_PARK_NANOS;
+            maxParkNanos = DEFAULT_MAX_PARK_NANOS;
+            return;
+        }
+        minParkNanos = Math.max(DEFAULT_MIN_PARK_NANOS, expectedNanos / MIN_PARK_DIVISOR);
+        maxParkNanos = Math.max(minParkNanos, expectedNanos / MAX_PARK_DIVISOR);
+    }
+
+    /**
+     * Start a wait, before the first poll.
+     */
+    public void begin() {
+        attempt = 0;
+        parkNanos = minParkNanos;
+        currentPolls = 1;
+        waitCount++;
+        pollCount++;
+        if (maxPolls < 1) {
+            maxPolls = 1;
+        }
+    }
+
+    /**
+     * Pause after a poll that found the device not done yet.
+     */
+    public void idle() {
+        if (attempt < spins) {
+            Thread.onSpinWait();
+        } else if (attempt < spins + yields) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(this, parkNanos);
+            parkNanos = Math.min(parkNanos * 2, maxParkNanos);
+        }
+        attempt++;
+        currentPolls++;
+        pollCount++;
+        if (currentPolls > maxPolls) {
+            maxPolls = currentPolls;
+        }
+    }
+
+    /**
+     * @return the number of waits started
+     */
+    public long getWaitCount() {
+        return waitCount;
+    }
+
+    /**
+     * @return the number of polls made in all waits
+     */
+    public long getPollCount() {
+        return pollCount;
+    }
+
+    /**
+     * @return the most polls made in one wait
+     */
+    public long getMaxPollsPerWait() {
+        return maxPolls;
+    }
+
+    public double getAveragePollsPerWait() {
+        long waits = waitCount;
+        return waits == 0 ? 0 : (double) pollCount / waits;
+    }
+
+    public void resetCounters() {
+        waitCount = 0;
+        pollCount = 0;
+        maxPolls = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "WaitStrategy{waits=" + waitCount + ", polls=" + pollCount
+                + ", maxPollsPerWait=" + maxPolls + "}";
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class I2cBusTest {
+
+    private static final byte ADDRESS = 0x29;
+
+    private static final class CountingTransport extends MemoryI2cTransport {
+        int initialized;
+        int closed;
+
+        @Override
+        public void initialize(Port port) {
+            initialized++;
+        }
+
+        @Override
+        public void close(Port port) {
+            closed++;
+        }
+    }
+
+    private CountingTransport transport;
+
+    @BeforeEach
+    void setUp() {
+        transport = new CountingTransport();
+    }
+
+    @Test
+    void sharesOneBusPerTransportAndPort() {
+        I2cBus first = I2cBus.acquire(transport, RoboRioPort.ONBOARD);
+        I2cBus second = I2cBus.acquire(transport, RoboRioPort.ONBOARD);
+        I2cBus otherPort = I2cBus.acquire(transport, RoboRioPort.MXP);
+        CountingTransport otherTransport = new CountingTransport();
+        I2cBus otherTransportBus = I2cBus.acquire(otherTransport, RoboRioPort.ONBOARD);
+        try {
+            assertSame(first, second);
+            assertNotSame(first, otherPort);
+            assertNotSame(first, otherTransportBus);
+            assertEquals(2, first.getUsers());
+            assertEquals(1, otherPort.getUsers());
+            // once per port
+            assertEquals(2, transport.initialized);
+            assertEquals(1, otherTransport.initialized);
+        } finally {
+            first.release();
+            second.release();
+            otherPort.release();
+            otherTransportBus.release();
+        }
+    }
+
+    @Test
+    void closesThePortWithTheLastUser() {
+        I2cBus first = I2cBus.acquire(transport, RoboRioPort.ONBOARD);
+        I2cBus second = I2cBus.acquire(transport, RoboRioPort.ONBOARD);
+
+        first.release();
+        assertEquals(1, second.getUsers());
+        assertEquals(0, transport.closed);
+
+        second.release();
+        assertEquals(0, second.getUsers());
+        assertEquals(1, transport.closed);
+        assertThrows(IllegalStateException.class, second::release);
+
+        // the next user starts a new bus, and initializes the port again
+        I2cBus reopened = I2cBus.acquire(transport, RoboRioPort.ONBOARD);
+        try {
+            assertNotSame(first, reopened);
+            assertEquals(1, reopened.getUsers());
+            assertEquals(2, transport.initialized);
+        } finally {
+            reopened.release();
+        }
+    }
+
+    @Test
+    void closingOneSensorKeepsThePortOpenForOthers() {
+        RegisterFile device = new RegisterFile(PololuI2c.Addressing.EIGHT_BIT);
+        transport.attach(RoboRioPort.ONBOARD, ADDRESS, device);
+        PololuI2c first = PololuI2c.create(RoboRioPort.ONBOARD, transport, PololuI2c.Addressing.EIGHT_BIT);
+        PololuI2c second = PololuI2c.create(RoboRioPort.ONBOARD, transport, PololuI2c.Addressing.EIGHT_BIT);
+        first.setAddress(ADDRESS);
+        second.setAddress(ADDRESS);
+        assertSame(first.getWire().getBus(), second.getWire().getBus());
+
+        first.close();
+        // closing twice releases only once
+        first.close();
+        assertEquals(0, transport.closed);
+        assertTrue(second.writeReg((short) 0x10, (short) 0x42));
+        assertEquals(0x42, device.get(0x10));
+
+        I2cBus bus = second.getWire().getBus();
+        second.close();
+        assertEquals(1, transport.closed);
+        assertEquals(0, bus.getUsers());
+        assertThrows(IllegalStateException.class, () -> second.getWire().getBus());
+    }
+
+    @Test
+    void sharesOneExecutorAndShutsItDownWithTheLastUser() throws Exception {
+        I2cBus first = I2cBus.acquire(transport, RoboRioPort.ONBOARD);
+        I2cBus second = I2cBus.acquire(transport, RoboRioPort.ONBOARD);
+        ScheduledExecutorService executor = first.getExecutor();
+        assertSame(executor, second.getExecutor());
+        assertEquals(ADDRESS, (byte) executor.submit(() -> ADDRESS).get(1, TimeUnit.SECONDS));
+
+        first.release();
+        assertFalse(executor.isShutdown());
+        second.release();
+        assertTrue(executor.isShutdown());
+        assertThrows(IllegalStateException.class, second::getExecutor);
+
+        I2cBus reopened = I2cBus.acquire(transport, RoboRioPort.ONBOARD);
+        try {
+            assertNotSame(executor, reopened.getExecutor());
+        } finally {
+            reopened.release();
+        }
+    }
+}
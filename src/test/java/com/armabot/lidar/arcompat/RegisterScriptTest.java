@@ -0,0 +1,196 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegisterScriptTest {
+
+    private static final byte ADDRESS = 0x29;
+
+    /**
+     * Logs every register write the device sees, in order, as {@code reg << 8 | value}.
+     */
+    private static final class LoggingRegisterFile extends RegisterFile {
+        final List<Integer> writes = new ArrayList<>();
+
+        LoggingRegisterFile(PololuI2c.Addressing addressing) {
+            super(addressing);
+        }
+
+        @Override
+        protected void writeRegister(int reg, byte value) {
+            writes.add(reg << 8 | (value & 0xFF));
+            super.writeRegister(reg, value);
+        }
+    }
+
+    private MemoryI2cTransport transport;
+    private LoggingRegisterFile device;
+    private PololuI2c i2c;
+
+    @BeforeEach
+    void setUp() {
+        open(PololuI2c.Addressing.EIGHT_BIT);
+    }
+
+    private void open(PololuI2c.Addressing addressing) {
+        transport = new MemoryI2cTransport();
+        device = new LoggingRegisterFile(addressing);
+        transport.attach(RoboRioPort.ONBOARD, ADDRESS, device);
+        i2c = PololuI2c.create(RoboRioPort.ONBOARD, transport, addressing);
+        i2c.setAddress(ADDRESS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        i2c.close();
+    }
+
+    /**
+     * The writes a script makes, sent one register at a time.
+     */
+    private List<Integer> uncoalesced(int[][] writes) {
+        List<Integer> expected = new ArrayList<>();
+        for (int[] write : writes) {
+            expected.add(write[0] << 8 | (write[1] & 0xFF));
+        }
+        return expected;
+    }
+
+    @Test
+    void mergesConsecutiveWrites() {
+        RegisterScript script = RegisterScript.builder(PololuI2c.Addressing.EIGHT_BIT)
+                .write(0x10, 0x01)
+                .write(0x11, 0x02)
+                .write(0x12, 0x03)
+                .write16Bit(0x13, 0x0405)
+                .build();
+
+        assertEquals(5, script.writeCount());
+        assertEquals(1, script.transactionCount());
+        assertTrue(script.runOn(i2c));
+        assertEquals(1, transport.getTransactionCount());
+        assertEquals(uncoalesced(new int[][]{{0x10, 1}, {0x11, 2}, {0x12, 3}, {0x13, 4}, {0x14, 5}}), device.writes);
+    }
+
+    @Test
+    void keepsOrderAcrossGapsAndRepeats() {
+        int[][] writes = {{0x20, 1}, {0x21, 2}, {0x30, 3}, {0x31, 4}, {0x31, 5}, {0x20, 6}, {0x1F, 7}};
+        RegisterScript.Builder builder = RegisterScript.builder(PololuI2c.Addressing.EIGHT_BIT);
+        for (int[] write : writes) {
+            builder.write(write[0], write[1]);
+        }
+        RegisterScript script = builder.build();
+
+        // 0x20-0x21, 0x30-0x31, then each of the rest on its own
+        assertEquals(5, script.transactionCount());
+        assertTrue(script.runOn(i2c));
+        assertEquals(uncoalesced(writes), device.writes);
+        assertEquals(6, device.get(0x20));
+        assertEquals(5, device.get(0x31));
+    }
+
+    @Test
+    void neverMergesSelects() {
+        RegisterScript script = RegisterScript.builder(PololuI2c.Addressing.EIGHT_BIT)
+                .write(0xFD, 0x01)
+                .write(0xFE, 0x02)
+                .select(0xFF, 0x01)
+                .write(0x00, 0x03)
+                .select(0xFF, 0x00)
+                .select(0xFF, 0x00)
+                .build();
+
+        // 0xFD-0xFE, then the select, the write after it, and both selects apart
+        assertEquals(5, script.transactionCount());
+        assertTrue(script.runOn(i2c));
+        assertEquals(5, transport.getTransactionCount());
+        assertEquals(uncoalesced(new int[][]{{0xFD, 1}, {0xFE, 2}, {0xFF, 1}, {0x00, 3}, {0xFF, 0}, {0xFF, 0}}),
+                device.writes);
+    }
+
+    @Test
+    void splitsRunsAtTheBufferLength() {
+        int length = 2 * (Wire.BUFFER_LENGTH - 1) + 5;
+        int[][] writes = new int[length][];
+        RegisterScript.Builder builder = RegisterScript.builder(PololuI2c.Addressing.EIGHT_BIT);
+        for (int i = 0; i < length; i++) {
+            writes[i] = new int[]{0x40 + i, i};
+            builder.write(0x40 + i, i);
+        }
+        RegisterScript script = builder.build();
+
+        assertEquals(3, script.transactionCount());
+        assertTrue(script.runOn(i2c));
+        assertEquals(uncoalesced(writes), device.writes);
+    }
+
+    @Test
+    void sixteenBitAddresses() {
+        i2c.close();
+        open(PololuI2c.Addressing.SIXTEEN_BIT);
+        int length = Wire.BUFFER_LENGTH;
+        int[][] writes = new int[length][];
+        RegisterScript.Builder builder = RegisterScript.builder(PololuI2c.Addressing.SIXTEEN_BIT);
+        for (int i = 0; i < length; i++) {
+            writes[i] = new int[]{0x0100 + i, 0x80 + i};
+            builder.write(0x0100 + i, 0x80 + i);
+        }
+        RegisterScript script = builder.build();
+
+        // two address bytes leave BUFFER_LENGTH - 2 for data
+        assertEquals(2, script.transactionCount());
+        assertTrue(script.runOn(i2c));
+        assertEquals(uncoalesced(writes), device.writes);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> RegisterScript.builder(PololuI2c.Addressing.SIXTEEN_BIT).write(0x10000, 0));
+    }
+
+    @Test
+    void rejectsRegistersOutOfRange() {
+        assertThrows(IllegalArgumentException.class,
+                () -> RegisterScript.builder(PololuI2c.Addressing.EIGHT_BIT).write(0x100, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> RegisterScript.builder(PololuI2c.Addressing.EIGHT_BIT).select(-1, 0));
+    }
+
+    @Test
+    void reportsFailedWrites() {
+        RegisterScript script = RegisterScript.builder(PololuI2c.Addressing.EIGHT_BIT)
+                .write(0x10, 0x01)
+                .build();
+        transport.detach(RoboRioPort.ONBOARD, ADDRESS);
+
+        assertFalse(script.runOn(i2c));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimulatedInterruptLineTest {
+
+    private final SimulatedInterruptLine line = new SimulatedInterruptLine();
+
+    @AfterEach
+    void clearInterrupt() {
+        Thread.interrupted();
+    }
+
+    @Test
+    void returnsAtOnceWhenAlreadyAtLevel() {
+        assertTrue(line.get());
+        assertTrue(line.await(true, 0, TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    void timesOut() {
+        assertFalse(line.await(false, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void wakesOnChange() throws Exception {
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> line.await(false, 5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+        line.set(false);
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void interruptionReturnsFalseAndKeepsTheStatus() {
+        Thread.currentThread().interrupt();
+        assertFalse(line.await(false, 5, TimeUnit.SECONDS));
+        assertTrue(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    void interruptionWhileWaiting() throws Exception {
+        CompletableFuture<Boolean> interrupted = new CompletableFuture<>();
+        Thread waiter = new Thread(() -> {
+            boolean reached = line.await(false, 5, TimeUnit.SECONDS);
+            interrupted.complete(!reached && Thread.currentThread().isInterrupted());
+        });
+        waiter.start();
+        Thread.sleep(20);
+        waiter.interrupt();
+        assertTrue(interrupted.get(5, TimeUnit.SECONDS));
+    }
+}
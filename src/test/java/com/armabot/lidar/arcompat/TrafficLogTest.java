@@ -0,0 +1,131 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.arcompat;
+
+import com.armabot.lidar.impl.vl53l0x.Vl53l0xI2c;
+import com.armabot.lidar.impl.vl53l0x.Vl53l0xSimulator;
+import com.armabot.lidar.sim.RangeSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static com.armabot.lidar.sim.SteppingClock.bootedNow;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A recording replays through the same driver calls, and fails loudly once
+ * they stop matching it.
+ */
+class TrafficLogTest {
+
+    private static final byte ADDRESS = 0x29;
+    private static final int READINGS = 5;
+
+    @TempDir
+    Path dir;
+
+    private Path log;
+    private int[] recordedRanges;
+    private long recorded;
+
+    @BeforeEach
+    void record() throws IOException {
+        log = dir.resolve("traffic.log");
+        MemoryI2cTransport memory = new MemoryI2cTransport();
+        // noisy, so the replayed ranges can only match by coming from the log
+        memory.attach(RoboRioPort.ONBOARD, ADDRESS,
+                bootedNow(new Vl53l0xSimulator(RangeSource.constant(500).withNoise(50, 1))));
+        try (RecordingI2cTransport recording = RecordingI2cTransport.create(memory, log)) {
+            Vl53l0xI2c sensor = new Vl53l0xI2c(RoboRioPort.ONBOARD, recording);
+            try {
+                assertFalse(sensor.initialize().isPresent());
+                recordedRanges = readRanges(sensor);
+            } finally {
+                sensor.close();
+            }
+            recorded = recording.getRecordCount();
+        }
+    }
+
+    private static int[] readRanges(Vl53l0xI2c sensor) {
+        int[] ranges = new int[READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            ranges[i] = sensor.readRangeSingleMillimeters();
+        }
+        assertFalse(sensor.timeoutOccurred());
+        return ranges;
+    }
+
+    @Test
+    void replaysTheSameReadings() throws IOException {
+        ReplayI2cTransport replay = ReplayI2cTransport.open(log);
+        Vl53l0xI2c sensor = new Vl53l0xI2c(RoboRioPort.ONBOARD, replay);
+        try {
+            assertFalse(sensor.initialize().isPresent());
+            assertArrayEquals(recordedRanges, readRanges(sensor));
+        } finally {
+            sensor.close();
+        }
+        assertFalse(replay.hasRemaining());
+        assertEquals(recorded, replay.getReplayCount());
+        assertTrue(recorded > 0);
+    }
+
+    @Test
+    void failsOnceTheDriverDiverges() throws IOException {
+        ReplayI2cTransport replay = ReplayI2cTransport.open(log);
+        Vl53l0xI2c sensor = new Vl53l0xI2c(RoboRioPort.ONBOARD, replay);
+        try {
+            assertFalse(sensor.initialize().isPresent());
+            // the recording went on to a single shot, not to continuous mode
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> sensor.startContinuous(0));
+            assertTrue(e.getMessage().contains("diverged"), e::getMessage);
+        } finally {
+            sensor.close();
+        }
+    }
+
+    @Test
+    void failsAtTheEndOfTheLog() throws IOException {
+        ReplayI2cTransport replay = ReplayI2cTransport.open(log);
+        Vl53l0xI2c sensor = new Vl53l0xI2c(RoboRioPort.ONBOARD, replay);
+        try {
+            assertFalse(sensor.initialize().isPresent());
+            readRanges(sensor);
+            IllegalStateException e = assertThrows(IllegalStateException.class, sensor::readRangeSingleMillimeters);
+            assertTrue(e.getMessage().contains("Log ended"), e::getMessage);
+
+            // and starts over once rewound
+            replay.rewind();
+            assertFalse(sensor.initialize().isPresent());
+            assertArrayEquals(recordedRanges, readRanges(sensor));
+        } finally {
+            sensor.close();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl;
+
+import com.armabot.lidar.arcompat.MemoryI2cTransport;
+import com.armabot.lidar.arcompat.RoboRioPort;
+import com.armabot.lidar.impl.vl53l0x.Vl53l0xI2c;
+import com.armabot.lidar.impl.vl53l0x.Vl53l0xSimulator;
+import com.armabot.lidar.impl.vl53l1x.RangingData;
+import com.armabot.lidar.impl.vl53l1x.Vl53l1xI2c;
+import com.armabot.lidar.impl.vl53l1x.Vl53l1xSimulator;
+import com.armabot.lidar.sim.RangeSource;
+import com.armabot.lidar.sim.SteppingClock;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.armabot.lidar.sim.SteppingClock.bootedNow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The continuous read paths must not allocate once warmed up.
+ */
+class ReadAllocationTest {
+
+    private static final int WARMUP_CALLS = 50_000;
+    private static final int MEASURED_CALLS = 2_000;
+
+    private static void assertNoAllocation(String name, Runnable call) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "allocation counting not supported");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call.run();
+        }
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            call.run();
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            if (allocated != 0) {
+                fail(name + " allocated " + allocated + " bytes on call " + i);
+            }
+        }
+    }
+
+    @Test
+    void vl53l1xRead() {
+        MemoryI2cTransport transport = new MemoryI2cTransport();
+        transport.attach(RoboRioPort.ONBOARD, (byte) 0x29, bootedNow(
+                new Vl53l1xSimulator(RangeSource.constant(800), new SteppingClock(10, TimeUnit.MILLISECONDS))));
+        Vl53l1xI2c sensor = new Vl53l1xI2c(RoboRioPort.ONBOARD, transport);
+        assertFalse(sensor.initialize().isPresent());
+        sensor.startContinuous(50);
+        RangingData data = new RangingData();
+
+        assertNoAllocation("read()", () -> {
+            assertTrue(sensor.awaitDataReady(1, TimeUnit.SECONDS));
+            sensor.read();
+        });
+        assertNoAllocation("read(RangingData)", () -> {
+            assertTrue(sensor.awaitDataReady(1, TimeUnit.SECONDS));
+            sensor.read(data);
+        });
+        assertEquals(800, data.getRangeMillimeters(), 5);
+    }
+
+    @Test
+    void vl53l0xReadRangeContinuous() {
+        MemoryI2cTransport transport = new MemoryI2cTransport();
+        transport.attach(RoboRioPort.ONBOARD, (byte) 0x29, bootedNow(
+                new Vl53l0xSimulator(RangeSource.constant(800), new SteppingClock(10, TimeUnit.MILLISECONDS))));
+        Vl53l0xI2c sensor = new Vl53l0xI2c(RoboRioPort.ONBOARD, transport);
+        assertFalse(sensor.initialize().isPresent());
+        sensor.setTimeout(1, TimeUnit.SECONDS);
+        sensor.startContinuous(0);
+        com.armabot.lidar.impl.vl53l0x.RangingData data = new com.armabot.lidar.impl.vl53l0x.RangingData();
+
+        assertNoAllocation("readRangeContinuousMillimeters()", () -> {
+            assertTrue(sensor.awaitDataReady(1, TimeUnit.SECONDS));
+            sensor.readRangeContinuousMillimeters();
+        });
+        assertNoAllocation("readRangeContinuous(RangingData)", () -> {
+            assertTrue(sensor.awaitDataReady(1, TimeUnit.SECONDS));
+            sensor.readRangeContinuous(data);
+        });
+        assertFalse(sensor.timeoutOccurred());
+        assertEquals(800, data.getRangeMillimeters());
+        assertTrue(data.getTimestampNanos() > 0);
+    }
+}
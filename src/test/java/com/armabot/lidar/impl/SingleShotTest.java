@@ -0,0 +1,121 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl;
+
+import com.armabot.lidar.arcompat.MemoryI2cTransport;
+import com.armabot.lidar.arcompat.RoboRioPort;
+import com.armabot.lidar.impl.vl53l0x.Vl53l0xI2c;
+import com.armabot.lidar.impl.vl53l0x.Vl53l0xSimulator;
+import com.armabot.lidar.impl.vl6180x.Vl6180xI2c;
+import com.armabot.lidar.impl.vl6180x.Vl6180xSimulator;
+import com.armabot.lidar.sim.RangeSource;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.armabot.lidar.sim.SteppingClock.bootedNow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Only one asynchronous single shot per sensor may be pending.
+ */
+class SingleShotTest {
+
+    private static final byte ADDRESS = 0x29;
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        return future.get(1, TimeUnit.SECONDS);
+    }
+
+    private static void assertRejected(CompletableFuture<?> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertTrue(e.getCause() instanceof IllegalStateException, e::toString);
+    }
+
+    private static Vl53l0xI2c vl53l0x() {
+        MemoryI2cTransport transport = new MemoryI2cTransport();
+        transport.attach(RoboRioPort.ONBOARD, ADDRESS, bootedNow(new Vl53l0xSimulator(RangeSource.constant(800))));
+        Vl53l0xI2c sensor = new Vl53l0xI2c(RoboRioPort.ONBOARD, transport);
+        assertFalse(sensor.initialize().isPresent());
+        sensor.setTimeout(1, TimeUnit.SECONDS);
+        return sensor;
+    }
+
+    private static Vl6180xI2c vl6180x() {
+        MemoryI2cTransport transport = new MemoryI2cTransport();
+        transport.attach(RoboRioPort.ONBOARD, ADDRESS, bootedNow(new Vl6180xSimulator(RangeSource.constant(100))));
+        Vl6180xI2c sensor = new Vl6180xI2c(RoboRioPort.ONBOARD, transport);
+        assertFalse(sensor.initialize().isPresent());
+        sensor.configureDefault();
+        sensor.setTimeout(1, TimeUnit.SECONDS);
+        return sensor;
+    }
+
+    @Test
+    void rejectsASecondMeasurementWhileOneIsPending() throws Exception {
+        Vl53l0xI2c sensor = vl53l0x();
+        try {
+            CompletableFuture<Integer> first = sensor.readRangeSingleMillimetersAsync();
+            assertRejected(sensor.readRangeSingleMillimetersAsync());
+            assertEquals(800, await(first));
+            // no longer pending
+            assertEquals(800, await(sensor.readRangeSingleMillimetersAsync()));
+            assertFalse(sensor.timeoutOccurred());
+        } finally {
+            sensor.close();
+        }
+    }
+
+    @Test
+    void chainsFromACallback() throws Exception {
+        Vl53l0xI2c sensor = vl53l0x();
+        try {
+            CompletableFuture<Integer> sum = sensor.readRangeSingleMillimetersAsync()
+                    .thenCompose(first -> sensor.readRangeSingleMillimetersAsync().thenApply(second -> first + second));
+            assertEquals(1600, await(sum));
+        } finally {
+            sensor.close();
+        }
+    }
+
+    @Test
+    void rangeAndAmbientDoNotOverlap() throws Exception {
+        Vl6180xI2c sensor = vl6180x();
+        try {
+            CompletableFuture<Short> range = sensor.readRangeSingleAsync();
+            assertRejected(sensor.readAmbientSingleAsync());
+            assertEquals((short) 100, await(range));
+
+            CompletableFuture<Integer> ambient = sensor.readAmbientSingleAsync();
+            assertRejected(sensor.readRangeSingleAsync());
+            await(ambient);
+            assertEquals((short) 100, await(sensor.readRangeSingleAsync()));
+            assertFalse(sensor.timeoutOccurred());
+        } finally {
+            sensor.close();
+        }
+    }
+}
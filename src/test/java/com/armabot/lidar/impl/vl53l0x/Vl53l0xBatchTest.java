@@ -0,0 +1,93 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl53l0x;
+
+import com.armabot.lidar.arcompat.MemoryI2cTransport;
+import com.armabot.lidar.arcompat.RoboRioPort;
+import com.armabot.lidar.sim.RangeSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.armabot.lidar.sim.SteppingClock.bootedNow;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class Vl53l0xBatchTest {
+
+    private static final byte ADDRESS = 0x29;
+
+    private final List<Vl53l0xI2c> opened = new ArrayList<>();
+    private MemoryI2cTransport transport;
+
+    @BeforeEach
+    void setUp() {
+        transport = new MemoryI2cTransport();
+        transport.attach(RoboRioPort.ONBOARD, ADDRESS, bootedNow(new Vl53l0xSimulator(RangeSource.constant(300))));
+        transport.attach(RoboRioPort.MXP, ADDRESS, bootedNow(new Vl53l0xSimulator(RangeSource.constant(600))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(Vl53l0xI2c::close);
+    }
+
+    private Vl53l0xI2c open(RoboRioPort port) {
+        Vl53l0xI2c sensor = new Vl53l0xI2c(port, transport);
+        opened.add(sensor);
+        return sensor;
+    }
+
+    @Test
+    void readsSensorsWithTheSameAddressOnDifferentPorts() {
+        Vl53l0xI2c onboard = open(RoboRioPort.ONBOARD);
+        Vl53l0xI2c mxp = open(RoboRioPort.MXP);
+        for (Vl53l0xI2c sensor : opened) {
+            assertFalse(sensor.initialize().isPresent());
+            sensor.setTimeout(1, TimeUnit.SECONDS);
+        }
+        int[] ranges = new int[2];
+        new Vl53l0xBatch(Arrays.asList(onboard, mxp)).readRangeSingleMillimeters(ranges);
+        assertArrayEquals(new int[]{300, 600}, ranges);
+        assertFalse(onboard.timeoutOccurred());
+        assertFalse(mxp.timeoutOccurred());
+    }
+
+    @Test
+    void rejectsNullSensors() {
+        Vl53l0xI2c sensor = open(RoboRioPort.ONBOARD);
+        assertThrows(IllegalArgumentException.class, () -> new Vl53l0xBatch(Arrays.asList(sensor, null)));
+    }
+
+    @Test
+    void rejectsTheSameDeviceTwice() {
+        Vl53l0xI2c sensor = open(RoboRioPort.ONBOARD);
+        Vl53l0xI2c sameDevice = open(RoboRioPort.ONBOARD);
+        assertThrows(IllegalArgumentException.class, () -> new Vl53l0xBatch(Arrays.asList(sensor, sensor)));
+        assertThrows(IllegalArgumentException.class, () -> new Vl53l0xBatch(Arrays.asList(sensor, sameDevice)));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl53l0x;
+
+import com.armabot.lidar.arcompat.MemoryI2cTransport;
+import com.armabot.lidar.arcompat.RoboRioPort;
+import com.armabot.lidar.sim.RangeSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.armabot.lidar.sim.SteppingClock.bootedNow;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A saved calibration survives serialization, and restoring it after a
+ * power cycle leaves the sensor as a full initialization did.
+ */
+class Vl53l0xCalibrationTest {
+
+    private static final byte ADDRESS = 0x29;
+
+    private MemoryI2cTransport transport;
+    private Vl53l0xSimulator simulator;
+    private Vl53l0xI2c sensor;
+
+    @BeforeEach
+    void setUp() {
+        transport = new MemoryI2cTransport();
+        simulator = bootedNow(new Vl53l0xSimulator(RangeSource.constant(800)));
+        // not the defaults, so a restore that ignores the saved SPADs shows up
+        simulator.setSpadInfo(3, false);
+        transport.attach(RoboRioPort.ONBOARD, ADDRESS, simulator);
+        sensor = new Vl53l0xI2c(RoboRioPort.ONBOARD, transport);
+        sensor.setTimeout(1, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sensor.close();
+    }
+
+    private int[] page0() {
+        int[] registers = new int[256];
+        for (int i = 0; i < registers.length; i++) {
+            registers[i] = simulator.get(i);
+        }
+        return registers;
+    }
+
+    private Vl53l0xCalibration fullInitialize() {
+        assertFalse(sensor.initialize().isPresent());
+        return sensor.getCalibration().orElseThrow(AssertionError::new);
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        Vl53l0xCalibration calibration = fullInitialize();
+        byte[] bytes = calibration.toBytes();
+        assertEquals(Vl53l0xCalibration.BYTES, bytes.length);
+        Vl53l0xCalibration read = Vl53l0xCalibration.fromBytes(bytes);
+        assertEquals(calibration, read);
+        assertEquals(calibration.hashCode(), read.hashCode());
+        assertEquals(3, read.getSpadCount());
+        assertFalse(read.isSpadAperture());
+    }
+
+    @Test
+    void rejectsACorruptedByte() {
+        byte[] bytes = fullInitialize().toBytes();
+        for (int i = 0; i < bytes.length; i++) {
+            byte[] corrupted = bytes.clone();
+            corrupted[i] ^= 0x10;
+            assertThrows(IllegalArgumentException.class, () -> Vl53l0xCalibration.fromBytes(corrupted),
+                    "byte " + i);
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> Vl53l0xCalibration.fromBytes(new byte[Vl53l0xCalibration.BYTES - 1]));
+    }
+
+    @Test
+    void restoresTheSameStateAfterAPowerCycle() {
+        Vl53l0xCalibration saved = Vl53l0xCalibration.fromBytes(fullInitialize().toBytes());
+        int[] initialized = page0();
+        long fullTransactions = transport.getTransactionCount();
+
+        bootedNow(simulator);
+        long before = transport.getTransactionCount();
+        assertFalse(sensor.initialize(saved).isPresent());
+        long restoreTransactions = transport.getTransactionCount() - before;
+
+        assertArrayEquals(initialized, page0());
+        assertEquals(saved, sensor.getCalibration().orElseThrow(AssertionError::new));
+        assertTrue(restoreTransactions < fullTransactions,
+                () -> restoreTransactions + " transactions to restore, " + fullTransactions + " to initialize");
+        assertEquals(800, sensor.readRangeSingleMillimeters());
+        assertFalse(sensor.timeoutOccurred());
+    }
+}
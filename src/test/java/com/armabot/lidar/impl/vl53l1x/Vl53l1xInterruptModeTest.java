@@ -0,0 +1,91 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl53l1x;
+
+import com.armabot.lidar.api.InterruptMode;
+import com.armabot.lidar.arcompat.MemoryI2cTransport;
+import com.armabot.lidar.arcompat.RoboRioPort;
+import com.armabot.lidar.sim.RangeSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.armabot.lidar.sim.SteppingClock.bootedNow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Vl53l1xInterruptModeTest {
+
+    private static final int PERIOD_MILLIS = 20;
+
+    private Vl53l1xSimulator simulator;
+    private Vl53l1xI2c sensor;
+
+    @BeforeEach
+    void setUp() {
+        MemoryI2cTransport transport = new MemoryI2cTransport();
+        simulator = bootedNow(new Vl53l1xSimulator(RangeSource.constant(800)));
+        transport.attach(RoboRioPort.ONBOARD, (byte) 0x29, simulator);
+        sensor = new Vl53l1xI2c(RoboRioPort.ONBOARD, transport);
+        assertFalse(sensor.initialize().isPresent());
+        sensor.setMeasurementTimingBudget(PERIOD_MILLIS * 1000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sensor.stopContinuous();
+        sensor.close();
+    }
+
+    @ParameterizedTest(name = "predictive reads: {0}")
+    @ValueSource(booleans = {false, true})
+    void dropsTheSampleLatchedBeforeTheSwitch(boolean predictiveReads) {
+        sensor.setPredictiveReads(predictiveReads);
+        sensor.startContinuous(PERIOD_MILLIS);
+        // leave a new sample latched, without reading it
+        assertTrue(sensor.awaitDataReady(1, TimeUnit.SECONDS));
+
+        sensor.setInterruptMode(InterruptMode.LEVEL_LOW, 100, 100);
+        assertFalse(sensor.dataReady());
+        assertFalse(sensor.awaitDataReady(5 * PERIOD_MILLIS, TimeUnit.MILLISECONDS));
+
+        simulator.setRangeSource(RangeSource.constant(50));
+        assertTrue(sensor.awaitDataReady(1, TimeUnit.SECONDS));
+        assertEquals(50, sensor.read(), 5);
+    }
+
+    @Test
+    void replacesTheWindowOfThePreviousThresholdMode() {
+        sensor.startContinuous(PERIOD_MILLIS);
+        sensor.setInterruptMode(InterruptMode.IN_WINDOW, 900, 1000);
+        assertFalse(sensor.awaitDataReady(5 * PERIOD_MILLIS, TimeUnit.MILLISECONDS));
+
+        sensor.setInterruptMode(InterruptMode.LEVEL_HIGH, 0, 200);
+        assertEquals(0x01, simulator.get(Vl53l1xReg.SYSTEM__INTERRUPT_CONFIG_GPIO.address()));
+        assertTrue(sensor.awaitDataReady(1, TimeUnit.SECONDS));
+        assertEquals(800, sensor.read(), 5);
+    }
+}
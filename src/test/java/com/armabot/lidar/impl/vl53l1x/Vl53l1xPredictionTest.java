@@ -0,0 +1,89 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl53l1x;
+
+import com.armabot.lidar.arcompat.MemoryI2cTransport;
+import com.armabot.lidar.arcompat.RoboRioPort;
+import com.armabot.lidar.sim.RangeSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.armabot.lidar.sim.SteppingClock.bootedNow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Predictive reads must not lose a period when the timing changes while
+ * streaming.
+ */
+class Vl53l1xPredictionTest {
+
+    private static final int PERIOD_MILLIS = 100;
+    // well under the two periods a lost prediction would take
+    private static final long MAX_WAIT_MILLIS = PERIOD_MILLIS * 3 / 2;
+
+    private Vl53l1xI2c sensor;
+
+    @BeforeEach
+    void setUp() {
+        MemoryI2cTransport transport = new MemoryI2cTransport();
+        transport.attach(RoboRioPort.ONBOARD, (byte) 0x29, bootedNow(new Vl53l1xSimulator(RangeSource.constant(800))));
+        sensor = new Vl53l1xI2c(RoboRioPort.ONBOARD, transport);
+        assertFalse(sensor.initialize().isPresent());
+        sensor.setPredictiveReads(true);
+        sensor.startContinuous(PERIOD_MILLIS);
+        assertTrue(sensor.awaitDataReady(1, TimeUnit.SECONDS));
+        sensor.read();
+    }
+
+    @AfterEach
+    void tearDown() {
+        sensor.stopContinuous();
+        sensor.close();
+    }
+
+    private long millisToNextSample() {
+        long start = System.nanoTime();
+        assertTrue(sensor.awaitDataReady(1, TimeUnit.SECONDS));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(800, sensor.read(), 5);
+        return waited;
+    }
+
+    @Test
+    void keepsThePeriodAfterATimingChange() {
+        sensor.setMeasurementTimingBudget(sensor.getMeasurementTimingBudget());
+        long waited = millisToNextSample();
+        assertTrue(waited < MAX_WAIT_MILLIS, () -> "waited " + waited + "ms for the next sample");
+    }
+
+    @Test
+    void keepsThePeriodAfterTurningPredictionBackOn() {
+        sensor.setPredictiveReads(false);
+        sensor.setPredictiveReads(true);
+        long waited = millisToNextSample();
+        assertTrue(waited < MAX_WAIT_MILLIS, () -> "waited " + waited + "ms for the next sample");
+    }
+}
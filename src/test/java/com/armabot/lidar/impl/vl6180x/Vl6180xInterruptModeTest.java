@@ -0,0 +1,140 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.impl.vl6180x;
+
+import com.armabot.lidar.api.InterruptMode;
+import com.armabot.lidar.arcompat.InterruptLine;
+import com.armabot.lidar.arcompat.MemoryI2cTransport;
+import com.armabot.lidar.arcompat.RoboRioPort;
+import com.armabot.lidar.sim.RangeSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.armabot.lidar.sim.SteppingClock.bootedNow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Switching the interrupt mode must release GPIO1 from an interrupt latched
+ * under the old mode.
+ */
+class Vl6180xInterruptModeTest {
+
+    private static final byte ADDRESS = 0x29;
+    private static final int PERIOD_MILLIS = 20;
+    private static final long WAIT_MILLIS = 5 * PERIOD_MILLIS;
+
+    /**
+     * GPIO1 of the simulator, low while any interrupt is latched.
+     */
+    private final class Gpio1 implements InterruptLine {
+        @Override
+        public boolean get() {
+            simulator.update();
+            return simulator.readRegister(Vl6180xReg.RESULT__INTERRUPT_STATUS_GPIO.address()) == 0;
+        }
+
+        @Override
+        public boolean await(boolean level, long timeout, TimeUnit unit) {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (get() != level) {
+                if (System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private MemoryI2cTransport transport;
+    private Vl6180xSimulator simulator;
+    private Vl6180xI2c sensor;
+
+    @BeforeEach
+    void setUp() {
+        transport = new MemoryI2cTransport();
+        simulator = bootedNow(new Vl6180xSimulator(RangeSource.constant(100)));
+        transport.attach(RoboRioPort.ONBOARD, ADDRESS, simulator);
+        sensor = new Vl6180xI2c(RoboRioPort.ONBOARD, transport);
+        assertFalse(sensor.initialize().isPresent());
+        sensor.configureDefault();
+        sensor.setInterruptLine(new Gpio1());
+    }
+
+    @AfterEach
+    void tearDown() {
+        sensor.stopContinuous();
+        sensor.close();
+    }
+
+    /**
+     * Wait out a period in which nothing should be ready, and check it was
+     * spent on the line rather than polling the sensor.
+     */
+    private void assertIdleWithoutPolling(boolean range) {
+        long transactions = transport.getTransactionCount();
+        assertFalse(range
+                ? sensor.awaitDataReadyRange(WAIT_MILLIS, TimeUnit.MILLISECONDS)
+                : sensor.awaitDataReadyAmbient(WAIT_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(transactions, transport.getTransactionCount());
+    }
+
+    @Test
+    void rangeSwitchReleasesTheLine() {
+        sensor.startRangeContinuous(PERIOD_MILLIS);
+        // leave a new sample latched, without reading it
+        assertTrue(sensor.awaitDataReadyRange(1, TimeUnit.SECONDS));
+
+        sensor.setRangeInterruptMode(InterruptMode.LEVEL_LOW, 50, 50);
+        assertIdleWithoutPolling(true);
+
+        simulator.setRangeSource(RangeSource.constant(20));
+        assertTrue(sensor.awaitDataReadyRange(1, TimeUnit.SECONDS));
+        assertEquals(20, sensor.readRangeContinuous());
+    }
+
+    @Test
+    void ambientSwitchReleasesTheLine() {
+        simulator.setAmbientCount(100);
+        sensor.startAmbientContinuous(PERIOD_MILLIS);
+        assertTrue(sensor.awaitDataReadyAmbient(1, TimeUnit.SECONDS));
+
+        sensor.setAmbientInterruptMode(InterruptMode.LEVEL_HIGH, 0, 1000);
+        assertIdleWithoutPolling(false);
+
+        simulator.setAmbientCount(2000);
+        assertTrue(sensor.awaitDataReadyAmbient(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sampling;
+
+import com.armabot.lidar.arcompat.MemoryI2cTransport;
+import com.armabot.lidar.arcompat.RoboRioPort;
+import com.armabot.lidar.impl.vl53l0x.Vl53l0xI2c;
+import com.armabot.lidar.impl.vl53l0x.Vl53l0xSimulator;
+import com.armabot.lidar.impl.vl53l1x.Vl53l1xI2c;
+import com.armabot.lidar.impl.vl53l1x.Vl53l1xSimulator;
+import com.armabot.lidar.sim.RangeSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.armabot.lidar.sim.SteppingClock.bootedNow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BusSchedulerTest {
+
+    private static final byte ADDRESS = 0x29;
+    private static final int FAST_PERIOD_MILLIS = 40;
+    private static final int SLOW_PERIOD_MILLIS = 100;
+    // far less than one read, so every cycle stops after its first
+    private static final long TINY_BUDGET_NANOS = 1;
+
+    private MemoryI2cTransport transport;
+    private Vl53l0xI2c fast;
+    private Vl53l1xI2c slow;
+
+    @BeforeEach
+    void setUp() {
+        transport = new MemoryI2cTransport();
+        transport.attach(RoboRioPort.ONBOARD, ADDRESS, bootedNow(new Vl53l0xSimulator(RangeSource.constant(300))));
+        transport.attach(RoboRioPort.MXP, ADDRESS, bootedNow(new Vl53l1xSimulator(RangeSource.constant(900))));
+        fast = new Vl53l0xI2c(RoboRioPort.ONBOARD, transport);
+        slow = new Vl53l1xI2c(RoboRioPort.MXP, transport);
+        assertFalse(fast.initialize().isPresent());
+        assertFalse(slow.initialize().isPresent());
+    }
+
+    @AfterEach
+    void tearDown() {
+        fast.close();
+        slow.close();
+    }
+
+    @Test
+    void readsEachSensorAtItsInterval() {
+        try (BusScheduler scheduler = new BusScheduler(5, TimeUnit.MILLISECONDS)) {
+            ScheduledSensor fastSensor = scheduler.add("fast", RangeSampler.of(fast), FAST_PERIOD_MILLIS);
+            ScheduledSensor slowSensor = scheduler.add("slow", RangeSampler.of(slow), SLOW_PERIOD_MILLIS);
+            scheduler.start();
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            long now;
+            while ((now = System.nanoTime()) - end < 0) {
+                scheduler.runCycle();
+                LockSupport.parkNanos(scheduler.nanosUntilNextReady(System.nanoTime()));
+            }
+
+            for (ScheduledSensor sensor : scheduler.getSensors()) {
+                long intervalNanos = sensor.getInterval(TimeUnit.NANOSECONDS);
+                double expectedRate = (double) TimeUnit.SECONDS.toNanos(1) / intervalNanos;
+                assertEquals(expectedRate, sensor.getAchievedRate(), expectedRate / 4, sensor::toString);
+                assertTrue(sensor.getStalenessNanos(now) < 2 * intervalNanos, sensor::toString);
+                // polls are not wasted much before measurements are ready
+                assertTrue(sensor.getNotReadyCount() <= sensor.getSampleCount(), sensor::toString);
+            }
+            assertEquals(FAST_PERIOD_MILLIS, fastSensor.getInterval(TimeUnit.MILLISECONDS));
+            assertEquals(SLOW_PERIOD_MILLIS, slowSensor.getInterval(TimeUnit.MILLISECONDS));
+            assertLatest(fastSensor, 300);
+            assertLatest(slowSensor, 900);
+        }
+    }
+
+    private static void assertLatest(ScheduledSensor sensor, int rangeMillimeters) {
+        Sample sample = new Sample();
+        assertTrue(sensor.getRing().readLatest(sample));
+        assertEquals(rangeMillimeters, sample.getRangeMillimeters(), 5);
+        assertFalse(sample.isTimeout());
+    }
+
+    @Test
+    void readsTheEarliestDeadlineFirstWithinTheBudget() {
+        try (BusScheduler scheduler = new BusScheduler(TINY_BUDGET_NANOS, TimeUnit.NANOSECONDS)) {
+            // added first, so only the deadline puts the fast sensor ahead
+            ScheduledSensor slowSensor = scheduler.add("slow", RangeSampler.of(slow), SLOW_PERIOD_MILLIS);
+            ScheduledSensor fastSensor = scheduler.add("fast", RangeSampler.of(fast), FAST_PERIOD_MILLIS);
+            scheduler.start();
+            // until both have data
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(SLOW_PERIOD_MILLIS * 3 / 2));
+            assertEquals(0, scheduler.nanosUntilNextReady(System.nanoTime()));
+
+            assertEquals(1, scheduler.runCycle());
+            assertEquals(1, fastSensor.getSampleCount());
+            assertEquals(0, slowSensor.getPollCount());
+
+            // the rest is left for the next cycle
+            assertEquals(1, scheduler.runCycle());
+            assertEquals(1, slowSensor.getSampleCount());
+            assertEquals(1, fastSensor.getSampleCount());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sampling;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampleRingTest {
+
+    private static final int READERS = 4;
+    private static final long PUBLISHES = 2_000_000;
+
+    // every field of a sample is derived from its sequence, so a torn copy is detectable
+    private static long publish(SampleRing ring, long sequence) {
+        return ring.publish(sequence * 1000, (int) sequence, sequence % 3 == 0);
+    }
+
+    private static String checkConsistent(Sample sample) {
+        long sequence = sample.getSequence();
+        if (sample.getTimestampNanos() != sequence * 1000
+                || sample.getRangeMillimeters() != (int) sequence
+                || sample.isTimeout() != (sequence % 3 == 0)) {
+            return "torn read: " + sample;
+        }
+        return null;
+    }
+
+    @Test
+    void rejectsCapacitiesThatAreNotPowersOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new SampleRing(0));
+        assertThrows(IllegalArgumentException.class, () -> new SampleRing(6));
+        assertEquals(8, new SampleRing(8).capacity());
+    }
+
+    @Test
+    void readsLatestAndRecentSamples() {
+        SampleRing ring = new SampleRing(4);
+        Sample sample = new Sample();
+        assertFalse(ring.readLatest(sample));
+        assertEquals(0, ring.latestSequence());
+
+        for (long sequence = 1; sequence <= 6; sequence++) {
+            assertEquals(sequence, publish(ring, sequence));
+        }
+        assertEquals(6, ring.latestSequence());
+        assertTrue(ring.readLatest(sample));
+        assertEquals(6, sample.getSequence());
+        assertNull(checkConsistent(sample));
+
+        // 3 through 6 are kept, older ones were overwritten
+        assertTrue(ring.read(3, sample));
+        assertEquals(3, sample.getSequence());
+        assertNull(checkConsistent(sample));
+        assertFalse(ring.read(2, sample));
+        assertFalse(ring.read(7, sample));
+        assertFalse(ring.read(0, sample));
+        // a failed read leaves the holder alone
+        assertEquals(3, sample.getSequence());
+    }
+
+    @Test
+    void readersNeverSeeTornOrStaleSamples() throws InterruptedException {
+        // a small ring, so the writer laps readers often
+        SampleRing ring = new SampleRing(2);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        AtomicLong reads = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            Thread reader = new Thread(() -> {
+                Sample sample = new Sample();
+                long last = 0;
+                long count = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                while (!done.get() && failure.get() == null) {
+                    long published = ring.latestSequence();
+                    if (!ring.readLatest(sample)) {
+                        if (published != 0) {
+                            failure.compareAndSet(null, "no sample after " + published + " was published");
+                        }
+                        continue;
+                    }
+                    String error = checkConsistent(sample);
+                    if (error == null && sample.getSequence() < published) {
+                        error = "read " + sample.getSequence() + " after " + published + " was published";
+                    }
+                    if (error == null && sample.getSequence() < last) {
+                        error = "went back from " + last + " to " + sample.getSequence();
+                    }
+                    last = sample.getSequence();
+                    // an older sample may be overwritten at any time, but never torn
+                    long older = last - ThreadLocalRandom.current().nextInt(2);
+                    if (error == null && ring.read(older, sample)) {
+                        error = checkConsistent(sample);
+                    }
+                    if (error != null) {
+                        failure.compareAndSet(null, error);
+                    }
+                    count++;
+                }
+                reads.addAndGet(count);
+            }, "reader " + i);
+            readers.add(reader);
+            reader.start();
+        }
+
+        start.countDown();
+        for (long sequence = 1; sequence <= PUBLISHES && failure.get() == null; sequence++) {
+            publish(ring, sequence);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertTrue(reads.get() > 0);
+        Sample sample = new Sample();
+        assertTrue(ring.readLatest(sample));
+        assertEquals(PUBLISHES, sample.getSequence());
+        assertNull(checkConsistent(sample));
+    }
+}
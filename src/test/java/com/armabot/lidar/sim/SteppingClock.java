@@ -0,0 +1,53 @@
+/*
+ * This file is part of lidar-contrib, licensed under the GNU General Public License (GPLv3).
+ *
+ * Copyright (c) Armabot <https://www.armabot.com>
+ * Copyright (c) contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.armabot.lidar.sim;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A clock for simulators that moves on by a fixed step every time it is
+ * read, so measurements finish without the test waiting for them.
+ */
+public final class SteppingClock implements LongSupplier {
+
+    /**
+     * @return {@code sensor}, booted as soon as it is powered on
+     */
+    public static <S extends SimulatedSensor> S bootedNow(S sensor) {
+        sensor.setBootTime(0, TimeUnit.NANOSECONDS);
+        sensor.powerCycle();
+        return sensor;
+    }
+
+    private final long stepNanos;
+    private long nanos;
+
+    public SteppingClock(long step, TimeUnit unit) {
+        this.stepNanos = unit.toNanos(step);
+    }
+
+    @Override
+    public long getAsLong() {
+        nanos += stepNanos;
+        return nanos;
+    }
+}